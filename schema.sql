@@ -9,16 +9,19 @@ CREATE TABLE IF NOT EXISTS users (
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
 
+-- Tables below are keyed on users.id and conversations.id; the DAOs map emails and
+-- conversation keys to them through IdCache. Older databases are converted by KeyMigration.
 CREATE TABLE IF NOT EXISTS conversations (
-    id VARCHAR(255) PRIMARY KEY, -- Using your existing ID format
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    conversation_key VARCHAR(255) NOT NULL UNIQUE, -- Protocol id: "a@x_b@y", "group_<name>" or "broadcast"
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     is_group BOOLEAN DEFAULT FALSE
 );
 
 CREATE TABLE IF NOT EXISTS messages (
     id VARCHAR(255) PRIMARY KEY, -- Using your existing ID format
-    sender_email VARCHAR(255) NOT NULL,
-    conversation_id VARCHAR(255) NOT NULL,
+    sender_id INT NOT NULL,
+    conversation_id INT NOT NULL,
     content TEXT NOT NULL,
     type VARCHAR(20) NOT NULL, -- private, broadcast, etc.
     status VARCHAR(20) NOT NULL, -- SENT, DELIVERED, READ
@@ -26,26 +29,28 @@ CREATE TABLE IF NOT EXISTS messages (
     delivered BOOLEAN DEFAULT FALSE,
     read_status BOOLEAN DEFAULT FALSE,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    INDEX idx_messages_conversation_ts (conversation_id, timestamp),
     FOREIGN KEY (conversation_id) REFERENCES conversations(id),
-    FOREIGN KEY (sender_email) REFERENCES users(email)
+    FOREIGN KEY (sender_id) REFERENCES users(id)
 );
 
 CREATE TABLE IF NOT EXISTS conversation_participants (
-    conversation_id VARCHAR(255) NOT NULL,
-    user_email VARCHAR(255) NOT NULL,
+    conversation_id INT NOT NULL,
+    user_id INT NOT NULL,
     joined_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    PRIMARY KEY (conversation_id, user_email),
+    PRIMARY KEY (conversation_id, user_id),
+    INDEX idx_participants_user (user_id),
     FOREIGN KEY (conversation_id) REFERENCES conversations(id),
-    FOREIGN KEY (user_email) REFERENCES users(email)
+    FOREIGN KEY (user_id) REFERENCES users(id)
 );
 
 CREATE TABLE IF NOT EXISTS contacts (
-    user_email VARCHAR(255) NOT NULL,
-    contact_email VARCHAR(255) NOT NULL,
+    user_id INT NOT NULL,
+    contact_id INT NOT NULL,
     added_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    PRIMARY KEY (user_email, contact_email),
-    FOREIGN KEY (user_email) REFERENCES users(email),
-    FOREIGN KEY (contact_email) REFERENCES users(email)
+    PRIMARY KEY (user_id, contact_id),
+    FOREIGN KEY (user_id) REFERENCES users(id),
+    FOREIGN KEY (contact_id) REFERENCES users(id)
 );
 
 -- Add these to your schema.sql file if not already there
@@ -57,18 +62,19 @@ CREATE TABLE IF NOT EXISTS user_groups (
 
 CREATE TABLE IF NOT EXISTS group_members (
     group_id INT NOT NULL,
-    user_email VARCHAR(255) NOT NULL,
+    user_id INT NOT NULL,
     joined_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    PRIMARY KEY (group_id, user_email),
+    PRIMARY KEY (group_id, user_id),
+    INDEX idx_group_members_user (user_id),
     FOREIGN KEY (group_id) REFERENCES user_groups(id),
-    FOREIGN KEY (user_email) REFERENCES users(email)
+    FOREIGN KEY (user_id) REFERENCES users(id)
 );
 
 -- Table to store file metadata
 CREATE TABLE IF NOT EXISTS files (
     id VARCHAR(36) PRIMARY KEY,  -- UUID for the file
-    sender_email VARCHAR(255) NOT NULL,
-    conversation_id VARCHAR(255) NOT NULL,
+    sender_id INT NOT NULL,
+    conversation_id INT NOT NULL,
     original_filename VARCHAR(255) NOT NULL,  -- Original name of the file
     stored_path VARCHAR(255) NOT NULL,        -- Server-side storage path
     mime_type VARCHAR(100) NOT NULL,          -- File type (image/jpeg, application/pdf, etc.)
@@ -77,6 +83,26 @@ CREATE TABLE IF NOT EXISTS files (
     delivered BOOLEAN DEFAULT FALSE,
     viewed BOOLEAN DEFAULT FALSE,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    INDEX idx_files_conversation (conversation_id),
     FOREIGN KEY (conversation_id) REFERENCES conversations(id),
-    FOREIGN KEY (sender_email) REFERENCES users(email)
-);
\ No newline at end of file
+    FOREIGN KEY (sender_id) REFERENCES users(id)
+);
+
+-- Per-(user, conversation) delivery/read positions, replaces per-message flag scans
+CREATE TABLE IF NOT EXISTS read_cursors (
+    user_id INT NOT NULL,
+    conversation_id INT NOT NULL,
+    delivered_ts BIGINT NOT NULL DEFAULT 0,   -- Timestamp of the last message delivered to the user
+    delivered_id VARCHAR(255) NULL,           -- Its id, for messages sharing that millisecond; NULL covers the whole millisecond
+    read_ts BIGINT NOT NULL DEFAULT 0,        -- Timestamp of the last message read by the user
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    PRIMARY KEY (user_id, conversation_id),
+    FOREIGN KEY (user_id) REFERENCES users(id),
+    FOREIGN KEY (conversation_id) REFERENCES conversations(id)
+);
+
+-- Written by the primary every few hundred ms; its value on a read replica shows how far that replica has caught up
+CREATE TABLE IF NOT EXISTS replica_heartbeat (
+    id TINYINT PRIMARY KEY,
+    beat BIGINT NOT NULL                      -- Server time (ms) of the last heartbeat
+);
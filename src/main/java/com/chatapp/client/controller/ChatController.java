@@ -1,5 +1,6 @@
 package com.chatapp.client.controller;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -10,6 +11,7 @@ import javafx.scene.control.*;
 import javafx.scene.layout.*;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 
@@ -24,8 +26,6 @@ import java.nio.file.Files;
 import java.util.*;
 
 import com.chatapp.common.model.User;
-import com.chatapp.data.dao.ContactDAO;
-import com.chatapp.data.dao.impl.ContactDAOImpl;
 import com.chatapp.client.network.ClientNetworkService;
 
 // Import du contrôleur de profil pour accéder à la méthode initData()
@@ -63,14 +63,44 @@ public class ChatController {
     private HashSet<String> contacts = new HashSet<>();
     // conversationMap keys: for one-to-one, use sender email; for groups, use group name
     private Map<String, List<MessageData>> conversationMap = new HashMap<>();
-    private Map<String, String> pendingDownloads = new HashMap<>();
+    // Keyed by request id (or file id when the request had none)
+    private final Map<String, String> pendingDownloads = Collections.synchronizedMap(new HashMap<>());
+    // Request id -> conversation (email or group name) of a history request in flight
+    private final Map<String, String> pendingHistory = Collections.synchronizedMap(new HashMap<>());
+    private long lastRequestId;
     private ClientNetworkService networkService;
+    // Profile window waiting for PROFILE_RESPONSE, the last one opened
+    private ProfileController profileController;
     private static final String CONTACTS_FILE_PREFIX = "contacts_";
     
     // Gestion des onglets
     private Map<String, Tab> contactTabs = new HashMap<>();
     private Map<String, VBox> contactMessageContainers = new HashMap<>();
 
+    // Cumulative read acks: newest message timestamp per conversation, sent once per window
+    private final Map<String, Long> pendingReadAcks = new HashMap<>();
+    private final PauseTransition readAckWindow = new PauseTransition(Duration.millis(300));
+    // Unread counters from the server inbox, keyed like contacts (email or group name)
+    private final Map<String, Integer> unreadCounts = new HashMap<>();
+    // First history page of recent conversations received in the login bootstrap
+    private final Map<String, List<JSONObject>> bootstrapPages = new HashMap<>();
+    private long contactsVersion = 0;   // Version of the contact list held locally, 0 for none
+    private boolean bootstrapped = false;
+    // Resume token and last frame sequence, used to reconnect without logging in again
+    private String sessionToken;
+    private volatile long lastSeq = 0;
+    private static final int MAX_RESUME_ATTEMPTS = 5;
+    // Contacts currently online, from presence frames
+    private final Set<String> onlineContacts = new HashSet<>();
+    // Typing indicators: last event sent per conversation, and timers hiding received ones
+    private static final long TYPING_INTERVAL_MS = 2000;
+    private final Map<String, Long> typingSentAt = new HashMap<>();
+    private final Map<String, PauseTransition> typingIndicators = new HashMap<>();
+    // Member list of the open "Create Group" dialog, filled by server user search
+    private ListView<String> memberPicker;
+    // Outgoing message ids per conversation key, waiting for a read receipt
+    private final Map<String, List<String>> unreadOutgoing = new HashMap<>();
+
     private static class MessageData {
         String sender;
         String content;
@@ -127,11 +157,13 @@ public class ChatController {
                     setGraphic(null);
                 } else {
                     // Check if this is a contact (has @) or a group (no @)
+                    int unread = unreadCounts.getOrDefault(item, 0);
+                    String badge = unread > 0 ? " (" + unread + ")" : "";
                     if (item.contains("@")) {
-                        setText(item);
+                        setText((onlineContacts.contains(item) ? "● " : "") + item + badge);
                         setStyle("-fx-font-weight: normal;");
                     } else {
-                        setText("👥 " + item); // Group icon
+                        setText("👥 " + item + badge); // Group icon
                         setStyle("-fx-font-weight: bold;");
                     }
                 }
@@ -178,7 +210,7 @@ public class ChatController {
             }
             
             System.out.println("Initializing profile data with email: " + userEmail);
-            profileController.initData(userEmail);
+            profileController.initData(userEmail, this);
             
             Scene profileScene = new Scene(profileRoot);
             Stage profileStage = new Stage();
@@ -201,7 +233,16 @@ public class ChatController {
      * Initialise la session de chat et configure la connexion.
      */
     public void initChatSession(String email, Socket socket, BufferedReader in, PrintWriter out) {
+        initChatSession(email, socket, in, out, false);
+    }
+
+    /**
+     * @param bootstrapped true if the login asked for a BOOTSTRAP frame, which then
+     *                     replaces the separate contacts, groups and inbox requests
+     */
+    public void initChatSession(String email, Socket socket, BufferedReader in, PrintWriter out, boolean bootstrapped) {
         this.userEmail = email;
+        this.bootstrapped = bootstrapped;
         this.socket = socket;
         this.in = in;
         this.out = out;
@@ -219,56 +260,127 @@ public class ChatController {
         // Load message history from disk first
         
     
-        // Load contacts first (this has to work before loadGroups)
-        loadContacts();
-        
-        // Add this explicit call to load groups after the socket is initialized
-        System.out.println("Loading groups for user: " + email);
-        loadGroups();
+        if (!bootstrapped) {
+            // Load contacts first (this has to work before loadGroups)
+            loadContacts();
+            
+            // Add this explicit call to load groups after the socket is initialized
+            System.out.println("Loading groups for user: " + email);
+            loadGroups();
+            requestInbox();
+        }
         
         // Refresh UI
         refreshContactsList();
         addSystemMessage("Connected as " + userEmail);
-        startMessageListener();
+        startMessageListener(true);
     }
 
-    private void startMessageListener() {
+    /**
+     * @param initial false after a resumed reconnect: state is already loaded
+     */
+    private void startMessageListener(boolean initial) {
         new Thread(() -> {
             try {
                 // Load groups again after a short delay to ensure connection is ready
-                Thread.sleep(1000);
-                Platform.runLater(() -> {
-                    try {
-                        System.out.println("Requesting groups list after connection startup");
-                        JSONObject request = new JSONObject();
-                        request.put("type", "get_groups");
-                        out.println(request.toString());
-                    } catch (JSONException e) {
-                        e.printStackTrace();
-                    }
-                });
+                Thread.sleep(initial ? 1000 : 0);
+                // Groups already came with the bootstrap frame
+                if (initial && !bootstrapped) {
+                    Platform.runLater(() -> {
+                        try {
+                            System.out.println("Requesting groups list after connection startup");
+                            JSONObject request = new JSONObject();
+                            request.put("type", "get_groups");
+                            out.println(request.toString());
+                        } catch (JSONException e) {
+                            e.printStackTrace();
+                        }
+                    });
+                }
                 
                 String line;
                 while (connected && (line = in.readLine()) != null) {
                     final String receivedMsg = line;
                     Platform.runLater(() -> handleIncomingMessage(receivedMsg));
                 }
+                // Closed by the server (e.g. this client fell too far behind): resume from lastSeq
+                if (connected) {
+                    Platform.runLater(() -> {
+                        addSystemMessage("Connection closed by the server, reconnecting");
+                        resumeSession();
+                    });
+                }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             } catch (IOException e) {
                 if (connected) {
-                    Platform.runLater(() -> addSystemMessage("Connection lost: " + e.getMessage()));
+                    Platform.runLater(() -> {
+                        addSystemMessage("Connection lost: " + e.getMessage());
+                        resumeSession();
+                    });
+                }
+            }
+        }).start();
+    }
+
+    /**
+     * Reconnect with the resume token: the server replays only the frames after lastSeq.
+     * Runs after the frames already read were handled, so lastSeq is up to date.
+     */
+    private void resumeSession() {
+        if (sessionToken == null) {
+            return;
+        }
+        final String token = sessionToken;
+        final long seq = lastSeq;
+        new Thread(() -> {
+            for (int attempt = 1; attempt <= MAX_RESUME_ATTEMPTS && connected; attempt++) {
+                try {
+                    Thread.sleep(1000L * attempt);
+                    Socket newSocket = networkService.resume(token, seq);
+                    BufferedReader newIn = new BufferedReader(new InputStreamReader(newSocket.getInputStream()));
+                    PrintWriter newOut = new PrintWriter(newSocket.getOutputStream(), true);
+                    String response = newIn.readLine();
+                    if ("AUTH_SUCCESS".equals(response)) {
+                        Platform.runLater(() -> {
+                            socket = newSocket;
+                            in = newIn;
+                            out = newOut;
+                            addSystemMessage("Reconnected");
+                            startMessageListener(false);
+                        });
+                        return;
+                    }
+                    newSocket.close();
+                    Platform.runLater(() -> addSystemMessage("Session expired, please log in again"));
+                    return;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (IOException e) {
+                    System.err.println("Resume attempt " + attempt + " failed: " + e.getMessage());
                 }
             }
         }).start();
     }
     
+    /**
+     * Correlation id for a request whose response is matched by "requestId"
+     */
+    private synchronized String nextRequestId() {
+        return "req-" + (++lastRequestId);
+    }
+
     private void requestConversationHistory(String contactEmail) {
         try {
             System.out.println("Requesting history for: " + contactEmail);
             JSONObject request = new JSONObject();
             request.put("type", "GET_HISTORY");
             request.put("otherUser", contactEmail);
+            // Responses may come back in any order; the id tells which conversation this one is for
+            String requestId = nextRequestId();
+            request.put("requestId", requestId);
+            pendingHistory.put(requestId, contactEmail);
             out.println(request.toString());
         } catch (JSONException e) {
             addSystemMessage("Error requesting chat history: " + e.getMessage());
@@ -310,6 +422,118 @@ public class ChatController {
         });
     }
 
+    /**
+     * Ask the server for the profile shown by the profile window
+     *
+     * @return false if the request could not be sent
+     */
+    public boolean requestProfile(ProfileController controller) {
+        if (out == null || !connected) {
+            return false;
+        }
+        profileController = controller;
+        networkService.requestProfile(out);
+        return true;
+    }
+
+    /**
+     * Ask the server to change the username and password of the current user
+     *
+     * @return false if the request could not be sent
+     */
+    public boolean sendProfileUpdate(String username, String password) {
+        if (out == null || !connected) {
+            return false;
+        }
+        try {
+            JSONObject request = new JSONObject();
+            request.put("type", "update_profile");
+            request.put("username", username);
+            request.put("password", password);
+            out.println(request.toString());
+            return true;
+        } catch (JSONException e) {
+            System.err.println("Error sending profile update: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Error from the server; one answering a request ends that request
+     */
+    private void handleErrorFrame(JSONObject error) {
+        String requestId = error.optString("requestId", null);
+        if (requestId != null) {
+            String download = pendingDownloads.remove(requestId);
+            String history = pendingHistory.remove(requestId);
+            if (download != null) {
+                addSystemMessage("Download of " + download + " failed: " + error.optString("content"));
+                return;
+            }
+            if (history != null) {
+                addSystemMessage("Could not load history of " + history + ": " + error.optString("content"));
+                return;
+            }
+        }
+        addSystemMessage("Error: " + error.optString("content"));
+    }
+
+    private void requestInbox() {
+        try {
+            JSONObject request = new JSONObject();
+            request.put("type", "inbox");
+            out.println(request.toString());
+        } catch (JSONException e) {
+            System.err.println("Error requesting inbox: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Conversation list from the server: adds every conversation to the contacts
+     * list and shows its unread counter.
+     */
+    private void handleInboxResponse(JSONObject response) {
+        JSONArray conversations = response.getJSONArray("conversations");
+        for (int i = 0; i < conversations.length(); i++) {
+            JSONObject conversation = conversations.getJSONObject(i);
+            String key = conversation.getString("title");
+            contacts.add(key);
+            unreadCounts.put(key, conversation.optInt("unread", 0));
+        }
+        refreshContactsList();
+    }
+
+    /**
+     * Login bundle: contacts, groups, inbox, pending messages and the first
+     * history page of the most recent conversations.
+     */
+    private void handleBootstrap(JSONObject bootstrap) {
+        JSONArray contactsArray = bootstrap.getJSONArray("contacts");
+        for (int i = 0; i < contactsArray.length(); i++) {
+            contacts.add(contactsArray.getString(i));
+        }
+        contactsVersion = bootstrap.optLong("contactsVersion", 0);
+        sendPresenceRequest("presence_subscribe", contacts);
+        handleGroupsListResponse(bootstrap);
+        handleInboxResponse(new JSONObject().put("conversations", bootstrap.getJSONArray("inbox")));
+
+        JSONArray pages = bootstrap.getJSONArray("conversations");
+        for (int i = 0; i < pages.length(); i++) {
+            JSONObject page = pages.getJSONObject(i);
+            JSONArray messages = page.getJSONArray("messages");
+            List<JSONObject> list = new ArrayList<>();
+            for (int j = 0; j < messages.length(); j++) {
+                list.add(messages.getJSONObject(j));
+            }
+            bootstrapPages.put(page.getString("title"), list);
+        }
+
+        JSONArray offline = bootstrap.getJSONArray("offline");
+        for (int i = 0; i < offline.length(); i++) {
+            handleIncomingMessage(offline.getJSONObject(i).toString());
+        }
+    }
+
     public void loadGroups() {
         try {
             System.out.println("Requesting groups from server...");
@@ -414,6 +638,11 @@ private void sendFile(String recipient, File file) {
 
     /* ---------- Tab Management ---------- */
     private void handleContactClick(String contactKey) {
+        if (unreadCounts.remove(contactKey) != null) {
+            contactsList.refresh();
+            // Opening the conversation reads everything received so far
+            queueReadAck(contactKey, System.currentTimeMillis());
+        }
         Tab tab = getOrCreateContactTab(contactKey);
         if (!conversationTabPane.getTabs().contains(tab)) {
             conversationTabPane.getTabs().add(tab);
@@ -424,6 +653,13 @@ private void sendFile(String recipient, File file) {
         VBox container = contactMessageContainers.get(contactKey);
         if (container != null) {
             container.getChildren().clear();
+
+            // Already received with the login bootstrap
+            List<JSONObject> page = bootstrapPages.remove(contactKey);
+            if (page != null) {
+                displayMessagesInContainer(container, page);
+                return;
+            }
             
             // Add loading indicator
             Label loadingLabel = new Label("Loading conversation history...");
@@ -446,6 +682,7 @@ private void sendFile(String recipient, File file) {
             JSONObject request = new JSONObject();
             request.put("type", "GET_GROUP_HISTORY");
             request.put("groupName", groupName);
+            request.put("requestId", nextRequestId());
             out.println(request.toString());
             System.out.println("Requesting history for group: " + groupName);
         } catch (JSONException e) {
@@ -545,6 +782,11 @@ private Tab createContactTab(String contactKey) {
     TextField inputField = new TextField();
     inputField.setPromptText("Type your message...");
     inputField.setPrefHeight(30);
+    inputField.textProperty().addListener((obs, oldVal, newVal) -> {
+        if (!newVal.isEmpty()) {
+            sendTyping(contactKey, isGroup);
+        }
+    });
     inputField.setOnAction(event -> {
         String content = inputField.getText().trim();
         if (!content.isEmpty()) {
@@ -743,6 +985,8 @@ private void handleSendFileToContact(String contactEmail) {
             
             storeMessage(recipient, userEmail, content, true, true);
             
+            unreadOutgoing.computeIfAbsent(recipient, k -> new ArrayList<>()).add(messageId);
+            
             VBox container = contactMessageContainers.get(recipient);
             if (container != null) {
                 addOutgoingMessageToContainer(container, content, messageId);
@@ -869,6 +1113,16 @@ private void loadConversationHistory(String contactEmail, VBox container) {
         try {
             JSONObject msgJson = new JSONObject(message);
             String type = msgJson.getString("type");
+            long seq = msgJson.optLong("seq", -1);
+            if ("SESSION".equals(type)) {
+                // Everything before this frame has been received
+                sessionToken = msgJson.getString("token");
+                lastSeq = seq;
+                return;
+            }
+            if (seq > lastSeq) {
+                lastSeq = seq;
+            }
             if ("groups_list".equals(type)) {
                 handleGroupsListResponse(msgJson);
                 return;
@@ -882,6 +1136,61 @@ private void loadConversationHistory(String contactEmail, VBox container) {
                 handleReadReceipt(msgJson);
                 return;
             }
+            if ("receipts".equals(type)) {
+                handleReceipts(msgJson);
+                return;
+            }
+            if ("INBOX_RESPONSE".equals(type)) {
+                handleInboxResponse(msgJson);
+                return;
+            }
+            if ("BOOTSTRAP".equals(type)) {
+                handleBootstrap(msgJson);
+                return;
+            }
+            if ("PROFILE_RESPONSE".equals(type)) {
+                if (profileController != null) {
+                    profileController.showProfile(msgJson.getString("email"), msgJson.getString("username"));
+                }
+                return;
+            }
+            if ("PROFILE_UPDATED".equals(type)) {
+                addSystemMessage(msgJson.getBoolean("success")
+                        ? "Profile updated" : "Profile update failed");
+                return;
+            }
+            if ("BOOTSTRAP_FAILED".equals(type)) {
+                // Server could not build the bootstrap frame: load everything separately
+                loadContacts();
+                loadGroups();
+                requestInbox();
+                return;
+            }
+            if ("CONTACTS_RESPONSE".equals(type)) {
+                handleContactsResponse(msgJson);
+                return;
+            }
+            if ("CONTACT_UPDATED".equals(type)) {
+                handleContactUpdated(msgJson);
+                return;
+            }
+            if ("throttled".equals(type)) {
+                addSystemMessage("Slow down: too many " + msgJson.getString("messageType")
+                        + " requests, some were dropped");
+                return;
+            }
+            if ("typing".equals(type)) {
+                handleTyping(msgJson);
+                return;
+            }
+            if ("presence".equals(type)) {
+                handlePresence(msgJson);
+                return;
+            }
+            if ("SEARCH_USERS_RESPONSE".equals(type)) {
+                handleSearchUsersResponse(msgJson);
+                return;
+            }
             if ("private".equals(type)) {
                 String content = msgJson.getString("content");
                 if (msgJson.optBoolean("isGroup", false)) {
@@ -892,7 +1201,7 @@ private void loadConversationHistory(String contactEmail, VBox container) {
                     handleGroupMessage(groupName, sender, content);
                 } else {
                     String sender = msgJson.optString("sender", "Server");
-                    sendReadReceipt(msgJson.getString("id"), sender);
+                    queueReadAck(sender, msgJson.optLong("timestamp", System.currentTimeMillis()));
                     handlePrivateMessage(sender, content);
                 }
             } else if ("broadcast".equals(type)) {
@@ -902,6 +1211,8 @@ private void loadConversationHistory(String contactEmail, VBox container) {
             } else if ("system".equals(type)) {
                 String content = msgJson.getString("content");
                 addSystemMessage(content);
+            } else if ("error".equals(type)) {
+                handleErrorFrame(msgJson);
             } else if ("HISTORY_RESPONSE".equals(type)) {
                 handleHistoryResponse(msgJson);}
             else if ("GROUP_HISTORY_RESPONSE".equals(type)) {
@@ -990,7 +1301,7 @@ private void loadConversationHistory(String contactEmail, VBox container) {
                 String base64Data = msgJson.getString("data");
                 
                 // Save the file or display it
-                handleFileData(fileId, base64Data);
+                handleFileData(fileId, msgJson.optString("requestId", fileId), base64Data);
             }
             else if ("file_receipt".equals(type)) {
                 String fileId = msgJson.getString("fileId");
@@ -1042,6 +1353,8 @@ private void loadConversationHistory(String contactEmail, VBox container) {
         try {
             JSONArray messagesArray = response.getJSONArray("messages");
             System.out.println("Received history with " + messagesArray.length() + " messages");
+            // Conversation the request was for, when the server echoed our request id
+            String requestedFor = pendingHistory.remove(response.optString("requestId", ""));
             
             // Process each message
             for (int i = 0; i < messagesArray.length(); i++) {
@@ -1056,7 +1369,9 @@ private void loadConversationHistory(String contactEmail, VBox container) {
                 
                 // Determine which conversation this belongs to
                 String containerKey;
-                if (messageJson.has("groupName")) {
+                if (requestedFor != null) {
+                    containerKey = requestedFor;
+                } else if (messageJson.has("groupName")) {
                     containerKey = messageJson.getString("groupName");
                 } else {
                     // For direct messages, use the other user as key
@@ -1225,12 +1540,14 @@ private void displayMessagesInContainer(VBox container, List<JSONObject> message
                 private void downloadFile(String fileId, String filename) {
                     try {
                         // Store the filename for later use
-                        pendingDownloads.put(fileId, filename);
+                        String requestId = nextRequestId();
+                        pendingDownloads.put(requestId, filename);
                         
                         // Request file from server
                         JSONObject request = new JSONObject();
                         request.put("type", "file_download");
                         request.put("fileId", fileId);
+                        request.put("requestId", requestId);
                         out.println(request.toString());
                 
                         addSystemMessage("Downloading file: " + filename);
@@ -1239,7 +1556,7 @@ private void displayMessagesInContainer(VBox container, List<JSONObject> message
                     }
                 }
 
-                private void handleFileData(String fileId, String base64Data) {
+                private void handleFileData(String fileId, String requestId, String base64Data) {
                     try {
                         // Decode file data
                         byte[] fileData = java.util.Base64.getDecoder().decode(base64Data);
@@ -1252,9 +1569,9 @@ private void displayMessagesInContainer(VBox container, List<JSONObject> message
                         
                         // Get the original filename from the server response or use the fileId
                         String filename = "downloaded_file_" + fileId;
-                        if (pendingDownloads.containsKey(fileId)) {
-                            filename = pendingDownloads.get(fileId);
-                            pendingDownloads.remove(fileId);
+                        String requested = pendingDownloads.remove(requestId);
+                        if (requested != null) {
+                            filename = requested;
                         }
 
                         File file = new File(downloadsDir, ensureUniqueFilename(downloadsDir, filename));
@@ -1394,6 +1711,67 @@ private void sendGroupFile(String groupName, File file) {
         }
     }
     
+    /**
+     * Aggregated receipts: each entry marks everything up to "upTo" as read by "reader".
+     */
+    private void handleReceipts(JSONObject frame) {
+        JSONArray receipts = frame.getJSONArray("receipts");
+        for (int i = 0; i < receipts.length(); i++) {
+            JSONObject receipt = receipts.getJSONObject(i);
+            if (!"read".equals(receipt.optString("status"))) {
+                continue;
+            }
+            List<String> pending = unreadOutgoing.get(receipt.getString("reader"));
+            if (pending == null) {
+                continue;
+            }
+            long upTo = receipt.getLong("upTo");
+            Iterator<String> it = pending.iterator();
+            while (it.hasNext()) {
+                String messageId = it.next();
+                if (messageIdTimestamp(messageId) <= upTo) {
+                    it.remove();
+                    updateMessageStatus(messageId, "read");
+                }
+            }
+        }
+    }
+
+    private static long messageIdTimestamp(String messageId) {
+        try {
+            return Long.parseLong(messageId.split("_")[1]);
+        } catch (RuntimeException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Remember the newest message seen in a conversation; one cumulative ack
+     * per conversation is sent when the window elapses.
+     */
+    private void queueReadAck(String peer, long timestamp) {
+        pendingReadAcks.merge(peer, timestamp, Math::max);
+        readAckWindow.setOnFinished(event -> flushReadAcks());
+        readAckWindow.playFromStart();
+    }
+
+    private void flushReadAcks() {
+        for (Map.Entry<String, Long> entry : pendingReadAcks.entrySet()) {
+            try {
+                JSONObject ack = new JSONObject();
+                ack.put("type", "ack");
+                ack.put("to", entry.getKey());
+                ack.put("isGroup", !entry.getKey().contains("@"));
+                ack.put("status", "read");
+                ack.put("upTo", entry.getValue());
+                out.println(ack.toString());
+            } catch (JSONException e) {
+                System.err.println("Error sending read ack: " + e.getMessage());
+            }
+        }
+        pendingReadAcks.clear();
+    }
+    
     private void sendReadReceipt(String messageId, String sender) {
         try {
             JSONObject readReceipt = new JSONObject();
@@ -1499,21 +1877,149 @@ private void sendGroupFile(String groupName, File file) {
     private void refreshContactsList() {
         contactsList.getItems().setAll(contacts);
     }
-    private final ContactDAO contactDAO = new ContactDAOImpl();
 
     @FXML
     private void loadContacts() {
         try {
-            contacts.clear();
-            contacts.addAll(contactDAO.getContacts(userEmail));
+            JSONObject request = new JSONObject();
+            request.put("type", "get_contacts");
+            request.put("sinceVersion", contactsVersion);
+            out.println(request.toString());
             loadGroups();
-            refreshContactsList();
-            
-        } catch (Exception e) {
+        } catch (JSONException e) {
             addSystemMessage("Error loading contacts: " + e.getMessage());
         }
     }
 
+    /**
+     * Contact list from the server: the full list, or only the changes since our version
+     */
+    private void handleContactsResponse(JSONObject response) {
+        if (response.getBoolean("full")) {
+            contacts.clear();
+            JSONArray list = response.getJSONArray("contacts");
+            for (int i = 0; i < list.length(); i++) {
+                contacts.add(list.getString(i));
+            }
+            sendPresenceRequest("presence_subscribe", contacts);
+        } else {
+            JSONArray added = response.optJSONArray("added");
+            JSONArray removed = response.optJSONArray("removed");
+            List<String> addedContacts = new ArrayList<>();
+            List<String> removedContacts = new ArrayList<>();
+            for (int i = 0; added != null && i < added.length(); i++) {
+                addedContacts.add(added.getString(i));
+            }
+            for (int i = 0; removed != null && i < removed.length(); i++) {
+                removedContacts.add(removed.getString(i));
+            }
+            contacts.addAll(addedContacts);
+            contacts.removeAll(removedContacts);
+            sendPresenceRequest("presence_subscribe", addedContacts);
+            sendPresenceRequest("presence_unsubscribe", removedContacts);
+        }
+        contactsVersion = response.getLong("version");
+        refreshContactsList();
+    }
+
+    private void handleContactUpdated(JSONObject update) {
+        String email = update.getString("email");
+        boolean added = "added".equals(update.getString("action"));
+        if (!update.getBoolean("success")) {
+            addSystemMessage("Failed to " + (added ? "add" : "remove") + " contact: " + email);
+            return;
+        }
+        if (added) {
+            contacts.add(email);
+            sendPresenceRequest("presence_subscribe", List.of(email));
+            addSystemMessage("Contact added: " + email);
+        } else {
+            contacts.remove(email);
+            onlineContacts.remove(email);
+            sendPresenceRequest("presence_unsubscribe", List.of(email));
+            addSystemMessage("Contact removed: " + email);
+        }
+        contactsVersion = update.getLong("version");
+        refreshContactsList();
+    }
+
+    /**
+     * Tell the other side we are typing, at most once per interval per conversation
+     */
+    private void sendTyping(String contactKey, boolean isGroup) {
+        long now = System.currentTimeMillis();
+        Long last = typingSentAt.get(contactKey);
+        if (last != null && now - last < TYPING_INTERVAL_MS) {
+            return;
+        }
+        typingSentAt.put(contactKey, now);
+        JSONObject typing = new JSONObject();
+        typing.put("type", "typing");
+        typing.put("to", contactKey);
+        typing.put("isGroup", isGroup);
+        out.println(typing.toString());
+    }
+
+    /**
+     * Show a pencil on the conversation tab until typing events stop coming
+     */
+    private void handleTyping(JSONObject frame) {
+        String key = frame.getString("conversation");
+        Tab tab = contactTabs.get(key);
+        if (tab == null) {
+            return;
+        }
+        JSONArray users = frame.getJSONArray("users");
+        Label indicator = new Label("✎");
+        if (frame.optBoolean("isGroup", false)) {
+            List<String> typists = new ArrayList<>();
+            for (int i = 0; i < users.length(); i++) {
+                typists.add(users.getString(i));
+            }
+            indicator.setTooltip(new Tooltip(String.join(", ", typists) + " typing..."));
+        }
+        tab.setGraphic(indicator);
+        PauseTransition hide = typingIndicators.computeIfAbsent(key, k -> {
+            PauseTransition pause = new PauseTransition(Duration.millis(TYPING_INTERVAL_MS + 1000));
+            pause.setOnFinished(e -> tab.setGraphic(null));
+            return pause;
+        });
+        hide.playFromStart();
+    }
+
+    private void sendPresenceRequest(String type, Collection<String> emails) {
+        if (emails.isEmpty()) {
+            return;
+        }
+        JSONObject request = new JSONObject();
+        request.put("type", type);
+        request.put("emails", new JSONArray(emails));
+        out.println(request.toString());
+    }
+
+    /**
+     * Online/offline changes of subscribed contacts, batched by the server
+     */
+    private void handlePresence(JSONObject frame) {
+        JSONArray updates = frame.getJSONArray("updates");
+        for (int i = 0; i < updates.length(); i++) {
+            JSONObject update = updates.getJSONObject(i);
+            if (update.getBoolean("online")) {
+                onlineContacts.add(update.getString("email"));
+            } else {
+                onlineContacts.remove(update.getString("email"));
+            }
+        }
+        contactsList.refresh();
+    }
+
+    private void sendContactRequest(String type, String email) {
+        JSONObject request = new JSONObject();
+        request.put("type", type);
+        request.put("email", email);
+        out.println(request.toString());
+    }
+
     @FXML
     public void handleAddContactButton(ActionEvent event) {
         TextInputDialog dialog = new TextInputDialog();
@@ -1524,14 +2030,7 @@ private void sendGroupFile(String groupName, File file) {
         Optional<String> result = dialog.showAndWait();
         result.ifPresent(email -> {
             if (email.contains("@") && !email.equals(userEmail)) {
-                boolean success = contactDAO.addContact(userEmail, email);
-                if (success) {
-                    contacts.add(email);
-                    refreshContactsList();
-                    addSystemMessage("Contact added: " + email);
-                } else {
-                    addSystemMessage("Failed to add contact: " + email);
-                }
+                sendContactRequest("add_contact", email);
             } else {
                 addSystemMessage("Invalid email address.");
             }
@@ -1549,14 +2048,7 @@ private void sendGroupFile(String groupName, File file) {
     public void handleDeleteContactButton(ActionEvent event) {
         String selectedContact = contactsList.getSelectionModel().getSelectedItem();
         if (selectedContact != null) {
-            boolean success = contactDAO.removeContact(userEmail, selectedContact);
-            if (success) {
-                contacts.remove(selectedContact);
-                refreshContactsList();
-                addSystemMessage("Contact removed: " + selectedContact);
-            } else {
-                addSystemMessage("Failed to remove contact: " + selectedContact);
-            }
+            sendContactRequest("remove_contact", selectedContact);
         } else {
             addSystemMessage("No contact selected.");
         }
@@ -1580,10 +2072,30 @@ private void sendGroupFile(String groupName, File file) {
         groupNameField.setPromptText("Enter group name...");
 
         Label contactsLabel = new Label("Select Members:");
+        TextField searchField = new TextField();
+        searchField.setPromptText("Search users...");
         ListView<String> membersListView = new ListView<>();
         membersListView.getItems().addAll(contacts);
         membersListView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
 
+        // Search all users on the server once typing pauses; an empty query shows contacts again
+        memberPicker = membersListView;
+        PauseTransition searchDelay = new PauseTransition(Duration.millis(200));
+        searchDelay.setOnFinished(e -> {
+            String query = searchField.getText().trim();
+            if (query.isEmpty()) {
+                showMemberCandidates(new ArrayList<>(contacts));
+            } else {
+                JSONObject request = new JSONObject();
+                request.put("type", "search_users");
+                request.put("query", query);
+                request.put("limit", 20);
+                out.println(request.toString());
+            }
+        });
+        searchField.textProperty().addListener((obs, oldVal, newVal) -> searchDelay.playFromStart());
+        dialogStage.setOnHidden(e -> memberPicker = null);
+
         Button okButton = new Button("OK");
         okButton.setOnAction(e -> {
             String groupName = groupNameField.getText().trim();
@@ -1603,13 +2115,42 @@ private void sendGroupFile(String groupName, File file) {
             dialogStage.close();
         });
 
-        vbox.getChildren().addAll(groupNameLabel, groupNameField, contactsLabel, membersListView, okButton);
+        vbox.getChildren().addAll(groupNameLabel, groupNameField, contactsLabel, searchField, membersListView, okButton);
 
         Scene scene = new Scene(vbox, 300, 400);
         dialogStage.setScene(scene);
         dialogStage.show();
     }
     
+    private void handleSearchUsersResponse(JSONObject response) {
+        JSONArray results = response.getJSONArray("results");
+        List<String> emails = new ArrayList<>();
+        for (int i = 0; i < results.length(); i++) {
+            emails.add(results.getJSONObject(i).getString("email"));
+        }
+        showMemberCandidates(emails);
+    }
+
+    /**
+     * Replace the member picker entries, keeping members already selected
+     */
+    private void showMemberCandidates(List<String> candidates) {
+        if (memberPicker == null) {
+            return;
+        }
+        List<String> selected = new ArrayList<>(memberPicker.getSelectionModel().getSelectedItems());
+        List<String> items = new ArrayList<>(selected);
+        for (String email : candidates) {
+            if (!items.contains(email)) {
+                items.add(email);
+            }
+        }
+        memberPicker.getItems().setAll(items);
+        for (String email : selected) {
+            memberPicker.getSelectionModel().select(email);
+        }
+    }
+
     private void createGroupOnServer(String groupName, List<String> selectedMembers) {
         try {
             JSONObject groupRequest = new JSONObject();
@@ -40,6 +40,7 @@ public class LoginController {
 
     private static final String SERVER_HOST = "localhost";
     private static final int SERVER_PORT = 1234;
+    private static final int MAX_LOGIN_ATTEMPTS = 3;
 
     @FXML
     public void initialize() {
@@ -77,12 +78,15 @@ public class LoginController {
             try {
                 System.out.println("Connection thread started");
                 ClientNetworkService networkService = new ClientNetworkService();
-                System.out.println("Connecting to server...");
-                Socket socket = networkService.connect(email, password);
+                for (int attempt = 1; attempt <= MAX_LOGIN_ATTEMPTS; attempt++) {
+                    System.out.println("Connecting to server...");
+                    Socket socket = networkService.connect(email, password, true);
 
-                System.out.println("Socket connected: " + (socket != null && socket.isConnected()));
+                    System.out.println("Socket connected: " + (socket != null && socket.isConnected()));
 
-                if (socket != null) {
+                    if (socket == null) {
+                        return;
+                    }
                     BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
                     PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
 
@@ -100,10 +104,30 @@ public class LoginController {
                                 showError("Error launching chat: " + e.getMessage());
                             }
                         });
+                        return;
+                    }
+                    socket.close();
+
+                    // Server busy: wait the delay it asked for, then try again
+                    if (response != null && response.startsWith("AUTH_RETRY|") && attempt < MAX_LOGIN_ATTEMPTS) {
+                        long retryAfterMs = Long.parseLong(response.substring("AUTH_RETRY|".length()));
+                        Platform.runLater(() -> showInfo("Server busy, retrying in " + (retryAfterMs / 1000 + 1) + " s…"));
+                        try {
+                            Thread.sleep(retryAfterMs);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                        continue;
+                    }
+
+                    System.out.println("Authentication failed: " + response);
+                    if (response != null && response.startsWith("AUTH_RETRY|")) {
+                        Platform.runLater(() -> showError("Server busy. Please try again in a moment."));
                     } else {
-                        System.out.println("Authentication failed: " + response);
                         Platform.runLater(() -> showError("Authentication failed. Please check your credentials."));
                     }
+                    return;
                 }
             } catch (IOException e) {
                 System.out.println("Connection error: " + e.getMessage());
@@ -163,7 +187,7 @@ private void showInfo(String msg) {
 
         // Récupère le contrôleur et initialise la session de chat
         ChatController controller = loader.getController();
-        controller.initChatSession(email, socket, in, out);
+        controller.initChatSession(email, socket, in, out, true);
 
         // Crée une nouvelle scène pour la vue de chat
         Scene chatScene = new Scene(chatView, 600, 400);
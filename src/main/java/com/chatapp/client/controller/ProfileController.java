@@ -5,13 +5,10 @@ import javafx.scene.control.Label;
 import javafx.scene.control.PasswordField;
 import javafx.scene.control.TextField;
 import javafx.stage.Stage;
-import com.chatapp.common.model.User;
-import com.chatapp.data.dao.UserDAO;
-import com.chatapp.data.dao.impl.UserDAOImpl;
 
 /**
  * Contrôleur pour la vue profile-view.fxml
- * Permet de modifier le username et le password dans la base de données.
+ * Permet de modifier le username et le password ; lecture et écriture passent par le serveur.
  */
 public class ProfileController {
 
@@ -24,45 +21,49 @@ public class ProfileController {
     @FXML
     private Label statusLabel;         // Affiche le résultat (succès/erreur)
 
-    private User currentUser;
-    private UserDAO userDAO = new UserDAOImpl();
+    private String currentEmail;
+    private ChatController chatController;
 
     /**
-     * Appelée par ChatController pour initialiser les données du profil à partir de l'email.
+     * Appelée par ChatController pour initialiser le profil de l'email donné.
+     * Le profil est demandé au serveur (get_profile) et affiché à sa réponse.
      */
-    public void initData(String userEmail) {
-        // Récupère l'utilisateur correspondant en base
-        currentUser = userDAO.findByEmail(userEmail);
-        
-        if (currentUser != null) {
-            emailLabel.setText(currentUser.getEmail());  // Affiche l'email actuel
-            usernameField.setText(currentUser.getUsername());
-            passwordField.setText(currentUser.getPassword());
+    public void initData(String userEmail, ChatController chatController) {
+        this.chatController = chatController;
+        emailLabel.setText(userEmail);
+        if (chatController.requestProfile(this)) {
+            statusLabel.setText("Chargement du profil...");
         } else {
-            statusLabel.setText("Utilisateur introuvable en base.");
+            statusLabel.setText("Non connecté au serveur.");
         }
     }
 
     /**
-     * Enregistre les modifications (username et password) en base de données.
+     * Affiche le profil reçu du serveur (PROFILE_RESPONSE). Le mot de passe n'est
+     * jamais renvoyé : le champ reste vide tant qu'on ne le change pas.
+     */
+    public void showProfile(String email, String username) {
+        currentEmail = email;
+        emailLabel.setText(email);
+        usernameField.setText(username);
+        passwordField.clear();
+        statusLabel.setText("");
+    }
+
+    /**
+     * Envoie les modifications (username et, s'il est saisi, password) au serveur.
      */
     @FXML
     private void handleSaveProfile() {
-        if (currentUser == null) {
+        if (currentEmail == null) {
             statusLabel.setText("Aucun utilisateur chargé.");
             return;
         }
 
-        // Récupère les nouvelles valeurs
-        currentUser.setUsername(usernameField.getText());
-        currentUser.setPassword(passwordField.getText());
-
-        // Met à jour l'utilisateur en base
-        boolean success = userDAO.update(currentUser);
-        // Ou si vous utilisez une méthode dédiée : userDAO.updateUserProfile(currentUser);
-
-        if (success) {
-            statusLabel.setText("Profil mis à jour avec succès.");
+        // Envoyée au serveur, qui invalide ses caches (identifiants, recherche) ;
+        // le résultat arrive dans le chat (PROFILE_UPDATED). Mot de passe vide : inchangé
+        if (chatController.sendProfileUpdate(usernameField.getText(), passwordField.getText())) {
+            statusLabel.setText("Mise à jour du profil envoyée.");
         } else {
             statusLabel.setText("Erreur lors de la mise à jour du profil.");
         }
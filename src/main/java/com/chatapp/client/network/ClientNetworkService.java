@@ -45,6 +45,20 @@ public class ClientNetworkService {
      * @throws IOException If a connection error occurs
      */
     public Socket connect(String email, String password) throws IOException {
+        return connect(email, password, false);
+    }
+
+    /**
+     * Connect to the server and authenticate
+     * 
+     * @param email     User email
+     * @param password  User password
+     * @param bootstrap Ask the server for a single BOOTSTRAP frame (groups, contacts,
+     *                  inbox, pending messages, recent conversations) right after login
+     * @return Socket connection if successful, null otherwise
+     * @throws IOException If a connection error occurs
+     */
+    public Socket connect(String email, String password, boolean bootstrap) throws IOException {
         try {
             socket = new Socket(SERVER_HOST, SERVER_PORT);
             out = new PrintWriter(socket.getOutputStream(), true);
@@ -56,6 +70,9 @@ public class ClientNetworkService {
             JSONObject loginRequest = new JSONObject();
             loginRequest.put("email", email);
             loginRequest.put("password", password);
+            if (bootstrap) {
+                loginRequest.put("bootstrap", true);
+            }
             String loginJson = loginRequest.toString();
             out.println(loginJson);
 
@@ -64,6 +81,36 @@ public class ClientNetworkService {
             throw new IOException("Failed to connect to server. Is the server running?");
         }
     }
+
+    /**
+     * Reconnect with the resume token from the last SESSION frame, without the password.
+     * The server answers AUTH_SUCCESS and replays the frames after lastSeq, or RESUME_FAILED
+     * when the token is no longer valid.
+     *
+     * @param token   Resume token issued by the server
+     * @param lastSeq Sequence number of the last frame received
+     * @return Socket connection
+     * @throws IOException If a connection error occurs
+     */
+    public Socket resume(String token, long lastSeq) throws IOException {
+        try {
+            socket = new Socket(SERVER_HOST, SERVER_PORT);
+            out = new PrintWriter(socket.getOutputStream(), true);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+
+            JSONObject resumeRequest = new JSONObject();
+            resumeRequest.put("type", "RESUME");
+            resumeRequest.put("token", token);
+            resumeRequest.put("lastSeq", lastSeq);
+            resumeRequest.put("bootstrap", true);
+            out.println(resumeRequest.toString());
+
+            return socket;
+        } catch (ConnectException e) {
+            throw new IOException("Failed to connect to server. Is the server running?");
+        }
+    }
+
     public static ClientNetworkService getInstance() {
         if (instance == null) {
             instance = new ClientNetworkService();
@@ -132,6 +179,19 @@ public class ClientNetworkService {
             out.println(message);
         }
     }
+
+    /**
+     * Ask the server for the profile of the logged in user; it answers with a
+     * PROFILE_RESPONSE frame (email, username) on the chat connection
+     *
+     * @param chatOut Writer of the chat connection
+     */
+    public void requestProfile(PrintWriter chatOut) {
+        JSONObject request = new JSONObject();
+        request.put("type", "get_profile");
+        chatOut.println(request.toString());
+    }
+
     public boolean updateProfile(String displayName, String photoURL, String status) {
         try {
             // Construction de la chaîne de requête avec le séparateur '|'
@@ -0,0 +1,67 @@
+package com.chatapp.common.model;
+
+import org.json.JSONObject;
+
+/**
+ * Inbox entry: one conversation of a user with its last message and unread counter
+ */
+public class ConversationSummary {
+    private static final int PREVIEW_LENGTH = 80;
+
+    private String conversationId;
+    private String title;           // Other user's email, or group name
+    private boolean group;
+    private String lastSender;
+    private String lastPreview;
+    private long lastTimestamp;
+    private int unreadCount;
+
+    public ConversationSummary(String conversationId, String title, boolean group) {
+        this.conversationId = conversationId;
+        this.title = title;
+        this.group = group;
+    }
+
+    /**
+     * Shorten message content to the length shown in conversation lists
+     */
+    public static String preview(String content) {
+        if (content == null) {
+            return "";
+        }
+        return content.length() <= PREVIEW_LENGTH ? content : content.substring(0, PREVIEW_LENGTH) + "…";
+    }
+
+    public String getConversationId() { return conversationId; }
+    public void setConversationId(String conversationId) { this.conversationId = conversationId; }
+
+    public String getTitle() { return title; }
+    public void setTitle(String title) { this.title = title; }
+
+    public boolean isGroup() { return group; }
+    public void setGroup(boolean group) { this.group = group; }
+
+    public String getLastSender() { return lastSender; }
+    public void setLastSender(String lastSender) { this.lastSender = lastSender; }
+
+    public String getLastPreview() { return lastPreview; }
+    public void setLastPreview(String lastPreview) { this.lastPreview = lastPreview; }
+
+    public long getLastTimestamp() { return lastTimestamp; }
+    public void setLastTimestamp(long lastTimestamp) { this.lastTimestamp = lastTimestamp; }
+
+    public int getUnreadCount() { return unreadCount; }
+    public void setUnreadCount(int unreadCount) { this.unreadCount = unreadCount; }
+
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("conversationId", conversationId);
+        json.put("title", title);
+        json.put("isGroup", group);
+        json.put("lastSender", lastSender != null ? lastSender : "");
+        json.put("lastMessage", lastPreview != null ? lastPreview : "");
+        json.put("timestamp", lastTimestamp);
+        json.put("unread", unreadCount);
+        return json;
+    }
+}
@@ -39,6 +39,23 @@ public class Message {
                Integer.toHexString((int)(Math.random() * 10000));
     }
     
+    /**
+     * Extract the creation time encoded in a "msg_<millis>_<suffix>" id
+     *
+     * @return the timestamp, or 0 if the id does not follow that format
+     */
+    public static long timestampFromId(String messageId) {
+        if (messageId == null || !messageId.startsWith("msg_")) {
+            return 0;
+        }
+        int end = messageId.indexOf('_', 4);
+        try {
+            return Long.parseLong(end > 0 ? messageId.substring(4, end) : messageId.substring(4));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+    
     // Set conversation ID based on participants
     public void setConversationParticipants(String user1, String user2) {
         // Sort emails to ensure the same conversation ID regardless of order
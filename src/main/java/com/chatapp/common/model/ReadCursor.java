@@ -0,0 +1,57 @@
+package com.chatapp.common.model;
+
+/**
+ * Delivery/read position of a user inside one conversation.
+ * Timestamps are the message timestamps (epoch millis) of the last delivered/read message.
+ * The delivered position is (timestamp, message id), so messages sharing the cursor's
+ * millisecond are told apart; a position without id covers its whole millisecond.
+ */
+public class ReadCursor {
+    private String userEmail;
+    private String conversationId;
+    private long deliveredTimestamp;
+    private String deliveredId;
+    private long readTimestamp;
+
+    public ReadCursor(String userEmail, String conversationId, long deliveredTimestamp, long readTimestamp) {
+        this(userEmail, conversationId, deliveredTimestamp, null, readTimestamp);
+    }
+
+    public ReadCursor(String userEmail, String conversationId, long deliveredTimestamp, String deliveredId,
+                      long readTimestamp) {
+        this.userEmail = userEmail;
+        this.conversationId = conversationId;
+        this.deliveredTimestamp = deliveredTimestamp;
+        this.deliveredId = deliveredId;
+        this.readTimestamp = readTimestamp;
+    }
+
+    /**
+     * Whether position (timestamp, id) comes after (otherTimestamp, otherId).
+     * A null id stands for the end of its millisecond.
+     */
+    public static boolean isAfter(long timestamp, String id, long otherTimestamp, String otherId) {
+        if (timestamp != otherTimestamp) {
+            return timestamp > otherTimestamp;
+        }
+        if (otherId == null) {
+            return false;
+        }
+        return id == null || id.compareTo(otherId) > 0;
+    }
+
+    public String getUserEmail() { return userEmail; }
+    public void setUserEmail(String userEmail) { this.userEmail = userEmail; }
+
+    public String getConversationId() { return conversationId; }
+    public void setConversationId(String conversationId) { this.conversationId = conversationId; }
+
+    public long getDeliveredTimestamp() { return deliveredTimestamp; }
+    public void setDeliveredTimestamp(long deliveredTimestamp) { this.deliveredTimestamp = deliveredTimestamp; }
+
+    public String getDeliveredId() { return deliveredId; }
+    public void setDeliveredId(String deliveredId) { this.deliveredId = deliveredId; }
+
+    public long getReadTimestamp() { return readTimestamp; }
+    public void setReadTimestamp(long readTimestamp) { this.readTimestamp = readTimestamp; }
+}
@@ -0,0 +1,114 @@
+package com.chatapp.common.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded ring of pre-allocated entries addressed by an ever-increasing sequence, in the
+ * style of the LMAX Disruptor. Producers claim a sequence, fill the entry in place and
+ * publish it; consumers track their own sequence and read entries up to what is
+ * published (or up to what the stages before them have processed). A slot is only
+ * reused once every gating sequence (the last stages) has moved past it.
+ *
+ * @param <E> Mutable entry type, reused for the lifetime of the ring
+ */
+public class RingBuffer<E> {
+    private final Object[] entries;
+    private final int mask;
+    private final int shift;
+    // Round (sequence / capacity) last published in each slot
+    private final AtomicIntegerArray published;
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private volatile AtomicLong[] gatingSequences = new AtomicLong[0];
+
+    /**
+     * @param capacity Number of slots, a power of two
+     */
+    public RingBuffer(int capacity, Supplier<E> factory) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two: " + capacity);
+        }
+        entries = new Object[capacity];
+        for (int i = 0; i < capacity; i++) {
+            entries[i] = factory.get();
+        }
+        mask = capacity - 1;
+        shift = Integer.numberOfTrailingZeros(capacity);
+        published = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    public int capacity() {
+        return entries.length;
+    }
+
+    /**
+     * Sequences of the consumers that must release a slot before it is reused
+     */
+    public void setGatingSequences(AtomicLong... sequences) {
+        gatingSequences = sequences;
+    }
+
+    /**
+     * Claim the next slot
+     *
+     * @return its sequence, or -1 when the ring is full
+     */
+    public long tryClaim() {
+        while (true) {
+            long current = claimed.get();
+            long next = current + 1;
+            if (next - entries.length > minimumGatingSequence(current)) {
+                return -1;
+            }
+            if (claimed.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) entries[(int) sequence & mask];
+    }
+
+    /**
+     * Make a claimed and filled slot visible to consumers
+     */
+    public void publish(long sequence) {
+        published.set((int) sequence & mask, (int) (sequence >>> shift));
+    }
+
+    /**
+     * Highest sequence from "from" on such that every slot up to it is published,
+     * or from - 1 if "from" itself is not published yet
+     */
+    public long highestPublished(long from) {
+        long upTo = claimed.get();
+        for (long sequence = from; sequence <= upTo; sequence++) {
+            if (published.get((int) sequence & mask) != (int) (sequence >>> shift)) {
+                return sequence - 1;
+            }
+        }
+        return upTo;
+    }
+
+    /**
+     * Slots claimed and not yet released by the gating consumers
+     */
+    public long depth() {
+        long current = claimed.get();
+        return current - minimumGatingSequence(current);
+    }
+
+    private long minimumGatingSequence(long defaultValue) {
+        long minimum = defaultValue;
+        for (AtomicLong sequence : gatingSequences) {
+            minimum = Math.min(minimum, sequence.get());
+        }
+        return minimum;
+    }
+}
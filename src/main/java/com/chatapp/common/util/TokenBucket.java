@@ -0,0 +1,50 @@
+package com.chatapp.common.util;
+
+/**
+ * Token bucket: holds up to "burst" tokens, refilled continuously at "ratePerSecond".
+ */
+public class TokenBucket {
+    private final double ratePerSecond;
+    private final double burst;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(double ratePerSecond, double burst) {
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Take one token if available
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Milliseconds until the next token is available
+     */
+    public synchronized long millisUntilNextToken() {
+        refill();
+        if (tokens >= 1) {
+            return 0;
+        }
+        if (ratePerSecond <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return (long) Math.ceil((1 - tokens) * 1000 / ratePerSecond);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) / 1e9 * ratePerSecond);
+        lastRefill = now;
+    }
+}
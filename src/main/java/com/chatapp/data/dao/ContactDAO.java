@@ -1,9 +1,24 @@
 package com.chatapp.data.dao;
 
+import com.chatapp.data.db.DatabaseExecutor;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface ContactDAO {
     List<String> getContacts(String userEmail);
     boolean addContact(String userEmail, String contactEmail);
     boolean removeContact(String userEmail, String contactEmail);
-}
\ No newline at end of file
+
+    // Async variants: run on DatabaseExecutor, never block the caller
+    default CompletableFuture<List<String>> getContactsAsync(String userEmail) {
+        return DatabaseExecutor.supplyAsync(() -> getContacts(userEmail));
+    }
+
+    default CompletableFuture<Boolean> addContactAsync(String userEmail, String contactEmail) {
+        return DatabaseExecutor.supplyAsync(() -> addContact(userEmail, contactEmail));
+    }
+
+    default CompletableFuture<Boolean> removeContactAsync(String userEmail, String contactEmail) {
+        return DatabaseExecutor.supplyAsync(() -> removeContact(userEmail, contactEmail));
+    }
+}
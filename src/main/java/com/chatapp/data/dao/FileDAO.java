@@ -1,7 +1,10 @@
 package com.chatapp.data.dao;
 
 import com.chatapp.common.model.FileMessage;
+import com.chatapp.data.db.DatabaseExecutor;
+import com.chatapp.data.db.DatabaseManager.Workload;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.json.JSONObject;
 
@@ -13,4 +16,29 @@ public interface FileDAO {
     boolean deleteFile(String fileId);
     // Add to FileDAO.java
 List<JSONObject> getFileHistoryForConversation(String conversationId);
-}
\ No newline at end of file
+
+    // Async variants: run on DatabaseExecutor, never block the caller; bulk reads on the history executor
+    default CompletableFuture<Boolean> saveFileMetadataAsync(FileMessage file) {
+        return DatabaseExecutor.supplyAsync(() -> saveFileMetadata(file));
+    }
+
+    default CompletableFuture<FileMessage> getFileByIdAsync(String fileId) {
+        return DatabaseExecutor.supplyAsync(() -> getFileById(fileId));
+    }
+
+    default CompletableFuture<List<FileMessage>> getFilesByConversationAsync(String conversationId) {
+        return DatabaseExecutor.supplyAsync(Workload.HISTORY, () -> getFilesByConversation(conversationId));
+    }
+
+    default CompletableFuture<Boolean> updateFileStatusAsync(String fileId, boolean delivered, boolean viewed) {
+        return DatabaseExecutor.supplyAsync(() -> updateFileStatus(fileId, delivered, viewed));
+    }
+
+    default CompletableFuture<Boolean> deleteFileAsync(String fileId) {
+        return DatabaseExecutor.supplyAsync(() -> deleteFile(fileId));
+    }
+
+    default CompletableFuture<List<JSONObject>> getFileHistoryForConversationAsync(String conversationId) {
+        return DatabaseExecutor.supplyAsync(Workload.HISTORY, () -> getFileHistoryForConversation(conversationId));
+    }
+}
@@ -1,7 +1,9 @@
 package com.chatapp.data.dao;
 
 import com.chatapp.common.model.Group;
+import com.chatapp.data.db.DatabaseExecutor;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface GroupDAO {
     boolean createGroup(Group group);
@@ -12,4 +14,37 @@ public interface GroupDAO {
     boolean removeMemberFromGroup(int groupId, String userEmail);
     List<String> getGroupMembers(int groupId);
     boolean deleteGroup(int groupId);
-}
\ No newline at end of file
+
+    // Async variants: run on DatabaseExecutor, never block the caller
+    default CompletableFuture<Boolean> createGroupAsync(Group group) {
+        return DatabaseExecutor.supplyAsync(() -> createGroup(group));
+    }
+
+    default CompletableFuture<Group> findGroupByNameAsync(String groupName) {
+        return DatabaseExecutor.supplyAsync(() -> findGroupByName(groupName));
+    }
+
+    default CompletableFuture<List<Group>> getAllGroupsAsync() {
+        return DatabaseExecutor.supplyAsync(() -> getAllGroups());
+    }
+
+    default CompletableFuture<List<Group>> getGroupsByUserAsync(String userEmail) {
+        return DatabaseExecutor.supplyAsync(() -> getGroupsByUser(userEmail));
+    }
+
+    default CompletableFuture<Boolean> addMemberToGroupAsync(int groupId, String userEmail) {
+        return DatabaseExecutor.supplyAsync(() -> addMemberToGroup(groupId, userEmail));
+    }
+
+    default CompletableFuture<Boolean> removeMemberFromGroupAsync(int groupId, String userEmail) {
+        return DatabaseExecutor.supplyAsync(() -> removeMemberFromGroup(groupId, userEmail));
+    }
+
+    default CompletableFuture<List<String>> getGroupMembersAsync(int groupId) {
+        return DatabaseExecutor.supplyAsync(() -> getGroupMembers(groupId));
+    }
+
+    default CompletableFuture<Boolean> deleteGroupAsync(int groupId) {
+        return DatabaseExecutor.supplyAsync(() -> deleteGroup(groupId));
+    }
+}
@@ -1,14 +1,75 @@
 package com.chatapp.data.dao;
 
+import com.chatapp.common.model.ConversationSummary;
 import com.chatapp.common.model.Message;
+import com.chatapp.data.db.DatabaseExecutor;
+import com.chatapp.data.db.DatabaseManager.Workload;
 import org.json.JSONObject;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface MessageDAO {
     boolean save(Message message);
+    // Insert several messages in one transaction; returns how many were stored
+    int saveBatch(List<Message> messages);
     List<JSONObject> getConversationHistory(String user1, String user2);
     boolean updateStatus(String messageId, Message.Status status);
+    // Messages newer than the user's delivered cursor, across all conversations they take part in
     List<String> getOfflineMessages(String userEmail);
+    // Shared broadcast log after the user's delivered cursor (or after registration when there is none)
+    List<String> getBroadcastsAfterCursor(String userEmail);
+    boolean addParticipants(String conversationId, List<String> userEmails);
+    // Last message and unread count of each conversation of the user, used to seed the inbox
+    List<ConversationSummary> getConversationSummaries(String userEmail);
+    // Messages of a conversation from other users newer than "after", i.e. still unread by the user
+    int countUnread(String userEmail, String conversationId, long after);
     List<JSONObject> getGroupMessages(String groupConversationId);
+    // Newest "limit" messages of a conversation, returned oldest first
+    List<JSONObject> getRecentMessages(String conversationId, int limit);
     boolean deleteMessage(String messageId);
+
+    // Async variants: run on DatabaseExecutor, never block the caller; bulk reads on the history executor
+    default CompletableFuture<Boolean> saveAsync(Message message) {
+        return DatabaseExecutor.supplyAsync(() -> save(message));
+    }
+
+    default CompletableFuture<Integer> saveBatchAsync(List<Message> messages) {
+        return DatabaseExecutor.supplyAsync(() -> saveBatch(messages));
+    }
+
+    default CompletableFuture<List<JSONObject>> getConversationHistoryAsync(String user1, String user2) {
+        return DatabaseExecutor.supplyAsync(Workload.HISTORY, () -> getConversationHistory(user1, user2));
+    }
+
+    default CompletableFuture<Boolean> updateStatusAsync(String messageId, Message.Status status) {
+        return DatabaseExecutor.supplyAsync(() -> updateStatus(messageId, status));
+    }
+
+    default CompletableFuture<List<String>> getOfflineMessagesAsync(String userEmail) {
+        return DatabaseExecutor.supplyAsync(Workload.HISTORY, () -> getOfflineMessages(userEmail));
+    }
+
+    default CompletableFuture<List<String>> getBroadcastsAfterCursorAsync(String userEmail) {
+        return DatabaseExecutor.supplyAsync(Workload.HISTORY, () -> getBroadcastsAfterCursor(userEmail));
+    }
+
+    default CompletableFuture<Boolean> addParticipantsAsync(String conversationId, List<String> userEmails) {
+        return DatabaseExecutor.supplyAsync(() -> addParticipants(conversationId, userEmails));
+    }
+
+    default CompletableFuture<List<ConversationSummary>> getConversationSummariesAsync(String userEmail) {
+        return DatabaseExecutor.supplyAsync(Workload.HISTORY, () -> getConversationSummaries(userEmail));
+    }
+
+    default CompletableFuture<List<JSONObject>> getGroupMessagesAsync(String groupConversationId) {
+        return DatabaseExecutor.supplyAsync(Workload.HISTORY, () -> getGroupMessages(groupConversationId));
+    }
+
+    default CompletableFuture<List<JSONObject>> getRecentMessagesAsync(String conversationId, int limit) {
+        return DatabaseExecutor.supplyAsync(Workload.HISTORY, () -> getRecentMessages(conversationId, limit));
+    }
+
+    default CompletableFuture<Boolean> deleteMessageAsync(String messageId) {
+        return DatabaseExecutor.supplyAsync(() -> deleteMessage(messageId));
+    }
 }
@@ -0,0 +1,12 @@
+package com.chatapp.data.dao;
+
+import com.chatapp.common.model.ReadCursor;
+import java.util.List;
+
+public interface ReadCursorDAO {
+    List<ReadCursor> getCursors(String userEmail);
+    ReadCursor getCursor(String userEmail, String conversationId);
+    // Applies many cursor moves with a single multi-row upsert. Cursors only move
+    // forward: a position older than the stored one is ignored.
+    boolean advanceBatch(List<ReadCursor> cursors);
+}
@@ -1,16 +1,55 @@
 package com.chatapp.data.dao;
 
 import com.chatapp.common.model.User;
+import com.chatapp.data.db.DatabaseExecutor;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface UserDAO {
     User findByEmail(String email);
     boolean authenticate(String email, String password);
     boolean create(User user);
     List<User> findAll();
+    List<String> findAllEmails();
     boolean update(User user);
     boolean delete(String email);
+
+    // Registration time in epoch millis, -1 if the user is unknown
+    long getCreatedAt(String email);
     
     // Méthode ajoutée pour mettre à jour le profil de l'utilisateur (username, password et profileImage)
     boolean updateUserProfile(User user);
+
+    // Async variants: run on DatabaseExecutor, never block the caller
+    default CompletableFuture<User> findByEmailAsync(String email) {
+        return DatabaseExecutor.supplyAsync(() -> findByEmail(email));
+    }
+
+    default CompletableFuture<Boolean> authenticateAsync(String email, String password) {
+        return DatabaseExecutor.supplyAsync(() -> authenticate(email, password));
+    }
+
+    default CompletableFuture<Boolean> createAsync(User user) {
+        return DatabaseExecutor.supplyAsync(() -> create(user));
+    }
+
+    default CompletableFuture<List<User>> findAllAsync() {
+        return DatabaseExecutor.supplyAsync(() -> findAll());
+    }
+
+    default CompletableFuture<List<String>> findAllEmailsAsync() {
+        return DatabaseExecutor.supplyAsync(() -> findAllEmails());
+    }
+
+    default CompletableFuture<Boolean> updateAsync(User user) {
+        return DatabaseExecutor.supplyAsync(() -> update(user));
+    }
+
+    default CompletableFuture<Boolean> deleteAsync(String email) {
+        return DatabaseExecutor.supplyAsync(() -> delete(email));
+    }
+
+    default CompletableFuture<Boolean> updateUserProfileAsync(User user) {
+        return DatabaseExecutor.supplyAsync(() -> updateUserProfile(user));
+    }
 }
@@ -1,7 +1,9 @@
 package com.chatapp.data.dao.impl;
 
 import com.chatapp.data.dao.ContactDAO;
+import com.chatapp.data.dao.UserDAO;
 import com.chatapp.data.db.DatabaseManager;
+import com.chatapp.data.service.IdCache;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -11,20 +13,22 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class ContactDAOImpl implements ContactDAO {
+    private final UserDAO userDAO = new UserDAOImpl();
+    private final IdCache ids = IdCache.getInstance();
 
     @Override
     public List<String> getContacts(String userEmail) {
-        String query = "SELECT contact_email FROM contacts WHERE user_email = ?";
+        String query = "SELECT contact_id FROM contacts WHERE user_id = ?";
         List<String> contacts = new ArrayList<>();
         
         try (Connection conn = DatabaseManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(query)) {
             
-            stmt.setString(1, userEmail);
+            stmt.setInt(1, ids.userId(conn, userEmail));
             ResultSet rs = stmt.executeQuery();
             
             while (rs.next()) {
-                contacts.add(rs.getString("contact_email"));
+                contacts.add(ids.userEmail(conn, rs.getInt("contact_id")));
             }
             
             return contacts;
@@ -53,13 +57,13 @@ public class ContactDAOImpl implements ContactDAO {
             return false;
         }
     
-        String query = "INSERT INTO contacts (user_email, contact_email) VALUES (?, ?)";
+        String query = "INSERT INTO contacts (user_id, contact_id) VALUES (?, ?)";
     
         try (Connection conn = DatabaseManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(query)) {
     
-            stmt.setString(1, userEmail);
-            stmt.setString(2, contactEmail);
+            stmt.setInt(1, ids.userId(conn, userEmail));
+            stmt.setInt(2, ids.userId(conn, contactEmail));
     
             int rowsAffected = stmt.executeUpdate();
             System.out.println("Rows affected: " + rowsAffected);
@@ -79,13 +83,13 @@ public class ContactDAOImpl implements ContactDAO {
 
     @Override
     public boolean removeContact(String userEmail, String contactEmail) {
-        String query = "DELETE FROM contacts WHERE user_email = ? AND contact_email = ?";
+        String query = "DELETE FROM contacts WHERE user_id = ? AND contact_id = ?";
         
         try (Connection conn = DatabaseManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(query)) {
             
-            stmt.setString(1, userEmail);
-            stmt.setString(2, contactEmail);
+            stmt.setInt(1, ids.userId(conn, userEmail));
+            stmt.setInt(2, ids.userId(conn, contactEmail));
             
             int rowsAffected = stmt.executeUpdate();
             return rowsAffected > 0;
@@ -97,21 +101,7 @@ public class ContactDAOImpl implements ContactDAO {
     }
     
     private boolean userExists(String email) {
-        String query = "SELECT COUNT(*) FROM users WHERE email = ?";
-    
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
-    
-            stmt.setString(1, email);
-            ResultSet rs = stmt.executeQuery();
-    
-            if (rs.next()) {
-                return rs.getInt(1) > 0;
-            }
-        } catch (SQLException e) {
-            System.err.println("Database error checking user existence: " + e.getMessage());
-            e.printStackTrace();
-        }
-        return false;
+        // Served by the user directory: bloom filter first, then the cached user row
+        return userDAO.findByEmail(email) != null;
     }
-}
\ No newline at end of file
+}
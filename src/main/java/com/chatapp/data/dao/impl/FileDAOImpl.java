@@ -3,6 +3,7 @@ package com.chatapp.data.dao.impl;
 import com.chatapp.common.model.FileMessage;
 import com.chatapp.data.dao.FileDAO;
 import com.chatapp.data.db.DatabaseManager;
+import com.chatapp.data.service.IdCache;
 
 import java.sql.*;
 import java.util.ArrayList;
@@ -12,10 +13,11 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 public class FileDAOImpl implements FileDAO {
+    private final IdCache ids = IdCache.getInstance();
 
     @Override
     public boolean saveFileMetadata(FileMessage file) {
-        String query = "INSERT INTO files (id, sender_email, conversation_id, original_filename, " +
+        String query = "INSERT INTO files (id, sender_id, conversation_id, original_filename, " +
                 "stored_path, mime_type, file_size, timestamp, delivered, viewed) " +
                 "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
         
@@ -23,8 +25,8 @@ public class FileDAOImpl implements FileDAO {
              PreparedStatement stmt = conn.prepareStatement(query)) {
             
             stmt.setString(1, file.getId());
-            stmt.setString(2, file.getSenderEmail());
-            stmt.setString(3, file.getConversationId());
+            stmt.setInt(2, ids.userId(conn, file.getSenderEmail()));
+            stmt.setInt(3, ids.conversationId(conn, file.getConversationId()));
             stmt.setString(4, file.getOriginalFilename());
             stmt.setString(5, file.getStoredPath());
             stmt.setString(6, file.getMimeType());
@@ -53,7 +55,7 @@ public class FileDAOImpl implements FileDAO {
             ResultSet rs = stmt.executeQuery();
             
             if (rs.next()) {
-                return mapResultSetToFileMessage(rs);
+                return mapResultSetToFileMessage(conn, rs);
             }
             return null;
         } catch (SQLException e) {
@@ -68,17 +70,17 @@ public List<FileMessage> getFilesByConversation(String conversationId) {
     List<FileMessage> files = new ArrayList<>();
     String query = "SELECT * FROM files WHERE conversation_id = ? ORDER BY timestamp ASC";
     
-    try (Connection conn = DatabaseManager.getConnection();
+    try (Connection conn = DatabaseManager.getReadConnection();
          PreparedStatement stmt = conn.prepareStatement(query)) {
         
-        stmt.setString(1, conversationId);
+        stmt.setInt(1, ids.conversationId(conn, conversationId));
         ResultSet rs = stmt.executeQuery();
         
         while (rs.next()) {
             FileMessage file = new FileMessage();
             file.setId(rs.getString("id"));
-            file.setSenderEmail(rs.getString("sender_email"));
-            file.setConversationId(rs.getString("conversation_id"));
+            file.setSenderEmail(ids.userEmail(conn, rs.getInt("sender_id")));
+            file.setConversationId(conversationId);
             file.setOriginalFilename(rs.getString("original_filename"));
             file.setStoredPath(rs.getString("stored_path"));
             file.setMimeType(rs.getString("mime_type"));
@@ -140,18 +142,18 @@ public List<JSONObject> getFileHistoryForConversation(String conversationId) {
     String query = "SELECT * FROM files WHERE conversation_id = ? ORDER BY timestamp ASC";
     List<JSONObject> files = new ArrayList<>();
     
-    try (Connection conn = DatabaseManager.getConnection();
+    try (Connection conn = DatabaseManager.getReadConnection();
          PreparedStatement stmt = conn.prepareStatement(query)) {
         
-        stmt.setString(1, conversationId);
+        stmt.setInt(1, ids.conversationId(conn, conversationId));
         ResultSet rs = stmt.executeQuery();
         
         while (rs.next()) {
             JSONObject fileJson = new JSONObject();
             fileJson.put("type", "file");
             fileJson.put("id", rs.getString("id"));
-            fileJson.put("sender", rs.getString("sender_email"));
-            fileJson.put("conversationId", rs.getString("conversation_id"));
+            fileJson.put("sender", ids.userEmail(conn, rs.getInt("sender_id")));
+            fileJson.put("conversationId", conversationId);
             fileJson.put("filename", rs.getString("original_filename"));
             fileJson.put("mimeType", rs.getString("mime_type"));
             fileJson.put("fileSize", rs.getLong("file_size"));
@@ -170,11 +172,11 @@ public List<JSONObject> getFileHistoryForConversation(String conversationId) {
     }
 }
     
-    private FileMessage mapResultSetToFileMessage(ResultSet rs) throws SQLException {
+    private FileMessage mapResultSetToFileMessage(Connection conn, ResultSet rs) throws SQLException {
         FileMessage file = new FileMessage();
         file.setId(rs.getString("id"));
-        file.setSenderEmail(rs.getString("sender_email"));
-        file.setConversationId(rs.getString("conversation_id"));
+        file.setSenderEmail(ids.userEmail(conn, rs.getInt("sender_id")));
+        file.setConversationId(ids.conversationKey(conn, rs.getInt("conversation_id")));
         file.setOriginalFilename(rs.getString("original_filename"));
         file.setStoredPath(rs.getString("stored_path"));
         file.setMimeType(rs.getString("mime_type"));
@@ -3,12 +3,14 @@ package com.chatapp.data.dao.impl;
 import com.chatapp.common.model.Group;
 import com.chatapp.data.dao.GroupDAO;
 import com.chatapp.data.db.DatabaseManager;
+import com.chatapp.data.service.IdCache;
 
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
 
 public class GroupDAOImpl implements GroupDAO {
+    private final IdCache ids = IdCache.getInstance();
 
     @Override
     public boolean createGroup(Group group) {
@@ -35,11 +37,15 @@ public class GroupDAOImpl implements GroupDAO {
             }
             
             // Now add all members
-            String insertMemberQuery = "INSERT INTO group_members (group_id, user_email) VALUES (?, ?)";
+            String insertMemberQuery = "INSERT INTO group_members (group_id, user_id) VALUES (?, ?)";
             try (PreparedStatement stmt = conn.prepareStatement(insertMemberQuery)) {
                 for (String email : group.getMembersEmails()) {
+                    int userId = ids.userId(conn, email);
+                    if (userId == 0) {
+                        throw new SQLException("Unknown group member: " + email);
+                    }
                     stmt.setInt(1, groupId);
-                    stmt.setString(2, email);
+                    stmt.setInt(2, userId);
                     stmt.addBatch();
                 }
                 stmt.executeBatch();
@@ -143,7 +149,7 @@ public boolean deleteGroup(int groupId) {
         String query = "SELECT id, name FROM user_groups";
         List<Group> groups = new ArrayList<>();
         
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getReadConnection();
              PreparedStatement stmt = conn.prepareStatement(query);
              ResultSet rs = stmt.executeQuery()) {
             
@@ -167,13 +173,13 @@ public boolean deleteGroup(int groupId) {
         System.out.println("Fetching groups for user: " + userEmail);
         String query = "SELECT g.id, g.name FROM user_groups g " +
                       "JOIN group_members gm ON g.id = gm.group_id " +
-                      "WHERE gm.user_email = ?";
+                      "WHERE gm.user_id = ?";
         List<Group> groups = new ArrayList<>();
         
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getReadConnection();
              PreparedStatement stmt = conn.prepareStatement(query)) {
             
-            stmt.setString(1, userEmail);
+            stmt.setInt(1, ids.userId(conn, userEmail));
             ResultSet rs = stmt.executeQuery();
             
             while (rs.next()) {
@@ -193,13 +199,13 @@ public boolean deleteGroup(int groupId) {
 
     @Override
     public boolean addMemberToGroup(int groupId, String userEmail) {
-        String query = "INSERT INTO group_members (group_id, user_email) VALUES (?, ?)";
+        String query = "INSERT INTO group_members (group_id, user_id) VALUES (?, ?)";
         
         try (Connection conn = DatabaseManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(query)) {
             
             stmt.setInt(1, groupId);
-            stmt.setString(2, userEmail);
+            stmt.setInt(2, ids.userId(conn, userEmail));
             
             int rowsAffected = stmt.executeUpdate();
             return rowsAffected > 0;
@@ -212,13 +218,13 @@ public boolean deleteGroup(int groupId) {
 
     @Override
     public boolean removeMemberFromGroup(int groupId, String userEmail) {
-        String query = "DELETE FROM group_members WHERE group_id = ? AND user_email = ?";
+        String query = "DELETE FROM group_members WHERE group_id = ? AND user_id = ?";
         
         try (Connection conn = DatabaseManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(query)) {
             
             stmt.setInt(1, groupId);
-            stmt.setString(2, userEmail);
+            stmt.setInt(2, ids.userId(conn, userEmail));
             
             int rowsAffected = stmt.executeUpdate();
             return rowsAffected > 0;
@@ -231,7 +237,7 @@ public boolean deleteGroup(int groupId) {
 
     @Override
     public List<String> getGroupMembers(int groupId) {
-        String query = "SELECT user_email FROM group_members WHERE group_id = ?";
+        String query = "SELECT user_id FROM group_members WHERE group_id = ?";
         List<String> members = new ArrayList<>();
         
         try (Connection conn = DatabaseManager.getConnection();
@@ -241,7 +247,7 @@ public boolean deleteGroup(int groupId) {
             ResultSet rs = stmt.executeQuery();
             
             while (rs.next()) {
-                members.add(rs.getString("user_email"));
+                members.add(ids.userEmail(conn, rs.getInt("user_id")));
             }
             
             return members;
@@ -1,8 +1,11 @@
 package com.chatapp.data.dao.impl;
 
+import com.chatapp.common.model.ConversationSummary;
 import com.chatapp.common.model.Message;
 import com.chatapp.data.dao.MessageDAO;
 import com.chatapp.data.db.DatabaseManager;
+import com.chatapp.data.db.DatabaseManager.Workload;
+import com.chatapp.data.service.IdCache;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -10,34 +13,43 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class MessageDAOImpl implements MessageDAO {
 
+    // Upper bound of one catch-up batch; the rest is picked up once the cursor has moved
+    private static final int MAX_OFFLINE_MESSAGES = 1000;
+
+    private final IdCache ids = IdCache.getInstance();
+
     @Override
     public boolean save(Message message) {
         System.out.println("Attempting to save message: " + message.getId());
         System.out.println("  Type: " + message.getType());
         System.out.println("  Conversation ID: " + message.getConversationId());
         
-        // First ensure conversation exists
-        boolean conversationCreated = ensureConversationExists(message.getConversationId());
-        if (!conversationCreated) {
-            System.err.println("Failed to create conversation - cannot save message");
-            return false;
-        }
-        
-        String query = "INSERT INTO messages (id, sender_email, conversation_id, content, type, status, " +
+        String query = "INSERT INTO messages (id, sender_id, conversation_id, content, type, status, " +
                 "timestamp, delivered, read_status) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
         
         try (Connection conn = DatabaseManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(query)) {
             
+            int senderId = ids.userId(conn, message.getSender());
+            if (senderId == 0) {
+                System.err.println("Unknown sender " + message.getSender() + " - cannot save message");
+                return false;
+            }
+            // First ensure conversation exists
+            int conversationId = ensureConversationExists(conn, message.getConversationId());
+
             stmt.setString(1, message.getId());
-            stmt.setString(2, message.getSender());
-            stmt.setString(3, message.getConversationId());
+            stmt.setInt(2, senderId);
+            stmt.setInt(3, conversationId);
             stmt.setString(4, message.getContent());
             stmt.setString(5, message.getType());
             stmt.setString(6, message.getStatus() != null ? message.getStatus().name() : "SENT");
@@ -47,6 +59,9 @@ public class MessageDAOImpl implements MessageDAO {
             
             int rowsAffected = stmt.executeUpdate();
             System.out.println("Message save result: " + (rowsAffected > 0 ? "SUCCESS" : "FAILED"));
+            if (rowsAffected > 0) {
+                DatabaseManager.recordWrite(message.getConversationId());
+            }
             return rowsAffected > 0;
         } catch (SQLException e) {
             System.err.println("Database error saving message: " + e.getMessage());
@@ -55,6 +70,70 @@ public class MessageDAOImpl implements MessageDAO {
         }
     }
     
+    @Override
+    public int saveBatch(List<Message> messages) {
+        if (messages.isEmpty()) {
+            return 0;
+        }
+        String query = "INSERT INTO messages (id, sender_id, conversation_id, content, type, status, " +
+                "timestamp, delivered, read_status) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+        try (Connection conn = DatabaseManager.getConnection()) {
+            // Resolve keys before the transaction: a rolled back conversation row must not end up in the id cache
+            Map<String, Integer> conversations = new HashMap<>();
+            List<Message> known = new ArrayList<>();
+            List<Integer> senderIds = new ArrayList<>();
+            for (Message message : messages) {
+                int senderId = ids.userId(conn, message.getSender());
+                if (senderId == 0) {
+                    System.err.println("Skipping message " + message.getId() + " from unknown sender " + message.getSender());
+                    continue;
+                }
+                if (!conversations.containsKey(message.getConversationId())) {
+                    conversations.put(message.getConversationId(), ensureConversationExists(conn, message.getConversationId()));
+                }
+                known.add(message);
+                senderIds.add(senderId);
+            }
+            if (known.isEmpty()) {
+                return 0;
+            }
+
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(query)) {
+                for (int i = 0; i < known.size(); i++) {
+                    Message message = known.get(i);
+                    stmt.setString(1, message.getId());
+                    stmt.setInt(2, senderIds.get(i));
+                    stmt.setInt(3, conversations.get(message.getConversationId()));
+                    stmt.setString(4, message.getContent());
+                    stmt.setString(5, message.getType());
+                    stmt.setString(6, message.getStatus() != null ? message.getStatus().name() : "SENT");
+                    stmt.setLong(7, message.getTimestamp());
+                    stmt.setBoolean(8, message.isDelivered());
+                    stmt.setBoolean(9, message.isRead());
+                    stmt.addBatch();
+                }
+                int saved = 0;
+                for (int rows : stmt.executeBatch()) {
+                    saved += rows > 0 || rows == Statement.SUCCESS_NO_INFO ? 1 : 0;
+                }
+                conn.commit();
+                conversations.keySet().forEach(DatabaseManager::recordWrite);
+                return saved;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.err.println("Database error saving " + messages.size() + " messages: " + e.getMessage());
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
     // In MessageDAOImpl.java, update getConversationHistory method:
 
     @Override
@@ -68,17 +147,17 @@ public class MessageDAOImpl implements MessageDAO {
         // Query to get all messages in this conversation
         String query = "SELECT * FROM messages WHERE conversation_id = ? ORDER BY timestamp ASC";
         
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getReadConnection(conversationId);
              PreparedStatement stmt = conn.prepareStatement(query)) {
             
-            stmt.setString(1, conversationId);
+            stmt.setInt(1, ids.conversationId(conn, conversationId));
             ResultSet rs = stmt.executeQuery();
             
             while (rs.next()) {
                 JSONObject message = new JSONObject();
                 message.put("id", rs.getString("id"));
-                message.put("sender", rs.getString("sender_email"));
-                message.put("conversationId", rs.getString("conversation_id"));
+                message.put("sender", ids.userEmail(conn, rs.getInt("sender_id")));
+                message.put("conversationId", conversationId);
                 message.put("content", rs.getString("content"));
                 message.put("type", rs.getString("type"));
                 message.put("timestamp", rs.getLong("timestamp"));
@@ -143,17 +222,17 @@ public List<JSONObject> getGroupMessages(String groupConversationId) {
     // Query to get all messages for this group
     String query = "SELECT * FROM messages WHERE conversation_id = ? ORDER BY timestamp ASC";
     
-    try (Connection conn = DatabaseManager.getConnection();
+    try (Connection conn = DatabaseManager.getReadConnection(groupConversationId);
          PreparedStatement stmt = conn.prepareStatement(query)) {
         
-        stmt.setString(1, groupConversationId);
+        stmt.setInt(1, ids.conversationId(conn, groupConversationId));
         ResultSet rs = stmt.executeQuery();
         
         while (rs.next()) {
             JSONObject message = new JSONObject();
             message.put("id", rs.getString("id"));
-            message.put("sender", rs.getString("sender_email"));
-            message.put("conversationId", rs.getString("conversation_id"));
+            message.put("sender", ids.userEmail(conn, rs.getInt("sender_id")));
+            message.put("conversationId", groupConversationId);
             message.put("content", rs.getString("content"));
             message.put("type", rs.getString("type"));
             message.put("timestamp", rs.getLong("timestamp"));
@@ -173,27 +252,61 @@ public List<JSONObject> getGroupMessages(String groupConversationId) {
         return new ArrayList<>();
     }
 }
+    @Override
+    public List<JSONObject> getRecentMessages(String conversationId, int limit) {
+        String query = "SELECT * FROM messages WHERE conversation_id = ? ORDER BY timestamp DESC LIMIT ?";
+        List<JSONObject> messages = new ArrayList<>();
+
+        try (Connection conn = DatabaseManager.getReadConnection(conversationId);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+
+            stmt.setInt(1, ids.conversationId(conn, conversationId));
+            stmt.setInt(2, limit);
+            ResultSet rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                JSONObject message = new JSONObject();
+                message.put("id", rs.getString("id"));
+                message.put("sender", ids.userEmail(conn, rs.getInt("sender_id")));
+                message.put("content", rs.getString("content"));
+                message.put("type", rs.getString("type"));
+                message.put("timestamp", rs.getLong("timestamp"));
+                messages.add(message);
+            }
+            Collections.reverse(messages);
+            return messages;
+        } catch (SQLException e) {
+            System.err.println("Database error retrieving recent messages: " + e.getMessage());
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
     @Override
     public List<String> getOfflineMessages(String userEmail) {
-        // Find all conversations where this user is a participant
-        String query = "SELECT m.* FROM messages m " +
-                "JOIN conversation_participants cp ON m.conversation_id = cp.conversation_id " +
-                "WHERE cp.user_email = ? AND m.sender_email != ? AND (m.delivered = false OR m.read_status = false)";
+        // Everything after the delivered cursor (timestamp, id) of each conversation the user takes part in.
+        // Served by idx_messages_conversation_ts; a missing cursor row means nothing was delivered yet,
+        // a NULL delivered_id means the whole millisecond was.
+        String query = "SELECT m.* FROM conversation_participants cp " +
+                "JOIN messages m ON m.conversation_id = cp.conversation_id " +
+                "LEFT JOIN read_cursors rc ON rc.user_id = cp.user_id AND rc.conversation_id = cp.conversation_id " +
+                "WHERE cp.user_id = ? AND m.sender_id <> cp.user_id AND m.timestamp >= COALESCE(rc.delivered_ts, 0) " +
+                "AND (m.timestamp > COALESCE(rc.delivered_ts, 0) OR m.id > rc.delivered_id) " +
+                "ORDER BY m.timestamp ASC, m.id ASC LIMIT " + MAX_OFFLINE_MESSAGES;
         
         List<String> messages = new ArrayList<>();
         
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getConnection(Workload.HISTORY);
              PreparedStatement stmt = conn.prepareStatement(query)) {
             
-            stmt.setString(1, userEmail);
-            stmt.setString(2, userEmail);  // Exclude messages sent by this user
+            stmt.setInt(1, ids.userId(conn, userEmail));
             ResultSet rs = stmt.executeQuery();
             
             while (rs.next()) {
                 JSONObject message = new JSONObject();
                 message.put("id", rs.getString("id"));
-                message.put("sender", rs.getString("sender_email"));
-                message.put("conversationId", rs.getString("conversation_id"));
+                message.put("sender", ids.userEmail(conn, rs.getInt("sender_id")));
+                message.put("conversationId", ids.conversationKey(conn, rs.getInt("conversation_id")));
                 message.put("content", rs.getString("content"));
                 message.put("type", rs.getString("type"));
                 message.put("status", rs.getString("status"));
@@ -212,6 +325,119 @@ public List<JSONObject> getGroupMessages(String groupConversationId) {
         }
     }
 
+    @Override
+    public List<String> getBroadcastsAfterCursor(String userEmail) {
+        // Broadcasts have no participants rows: everyone reads the single shared log
+        String query = "SELECT m.* FROM users u " +
+                "JOIN messages m ON m.conversation_id = ? " +
+                "LEFT JOIN read_cursors rc ON rc.user_id = u.id AND rc.conversation_id = m.conversation_id " +
+                "WHERE u.id = ? AND m.sender_id <> u.id " +
+                "AND m.timestamp >= COALESCE(rc.delivered_ts, UNIX_TIMESTAMP(u.created_at) * 1000) " +
+                "AND (m.timestamp > COALESCE(rc.delivered_ts, UNIX_TIMESTAMP(u.created_at) * 1000) OR m.id > rc.delivered_id) " +
+                "ORDER BY m.timestamp ASC, m.id ASC LIMIT " + MAX_OFFLINE_MESSAGES;
+
+        List<String> messages = new ArrayList<>();
+
+        try (Connection conn = DatabaseManager.getConnection(Workload.HISTORY);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+
+            stmt.setInt(1, ids.conversationId(conn, "broadcast"));
+            stmt.setInt(2, ids.userId(conn, userEmail));
+            ResultSet rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                JSONObject message = new JSONObject();
+                message.put("id", rs.getString("id"));
+                message.put("sender", ids.userEmail(conn, rs.getInt("sender_id")));
+                message.put("conversationId", "broadcast");
+                message.put("content", rs.getString("content"));
+                message.put("type", rs.getString("type"));
+                message.put("status", rs.getString("status"));
+                message.put("timestamp", rs.getLong("timestamp"));
+
+                messages.add(message.toString());
+            }
+
+            return messages;
+        } catch (SQLException | JSONException e) {
+            System.err.println("Database error retrieving broadcasts: " + e.getMessage());
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    @Override
+    public boolean addParticipants(String conversationId, List<String> userEmails) {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            int id = ensureConversationExists(conn, conversationId);
+            for (String userEmail : userEmails) {
+                addConversationParticipant(conn, id, userEmail);
+            }
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Database error adding conversation participants: " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    @Override
+    public List<ConversationSummary> getConversationSummaries(String userEmail) {
+        String query = "SELECT c.conversation_key, m.sender_id, m.content, m.timestamp, c.is_group, " +
+                "(SELECT COUNT(*) FROM messages u WHERE u.conversation_id = m.conversation_id " +
+                "   AND u.timestamp > COALESCE(rc.read_ts, 0) AND u.sender_id <> cp.user_id) AS unread " +
+                "FROM conversation_participants cp " +
+                "JOIN conversations c ON c.id = cp.conversation_id " +
+                "JOIN messages m ON m.conversation_id = cp.conversation_id " +
+                "LEFT JOIN read_cursors rc ON rc.user_id = cp.user_id AND rc.conversation_id = cp.conversation_id " +
+                "WHERE cp.user_id = ? " +
+                // Newest message by (timestamp, id), the cursor order: one row even when timestamps tie
+                "AND m.id = (SELECT x.id FROM messages x WHERE x.conversation_id = cp.conversation_id " +
+                "   ORDER BY x.timestamp DESC, x.id DESC LIMIT 1)";
+        List<ConversationSummary> summaries = new ArrayList<>();
+
+        try (Connection conn = DatabaseManager.getConnection(Workload.HISTORY);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+
+            stmt.setInt(1, ids.userId(conn, userEmail));
+            ResultSet rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                ConversationSummary summary = new ConversationSummary(
+                        rs.getString("conversation_key"), null, rs.getBoolean("is_group"));
+                summary.setLastSender(ids.userEmail(conn, rs.getInt("sender_id")));
+                summary.setLastPreview(ConversationSummary.preview(rs.getString("content")));
+                summary.setLastTimestamp(rs.getLong("timestamp"));
+                summary.setUnreadCount(rs.getInt("unread"));
+                summaries.add(summary);
+            }
+            return summaries;
+        } catch (SQLException e) {
+            System.err.println("Database error retrieving conversation summaries: " + e.getMessage());
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    @Override
+    public int countUnread(String userEmail, String conversationId, long after) {
+        String query = "SELECT COUNT(*) FROM messages WHERE conversation_id = ? AND timestamp > ? AND sender_id <> ?";
+
+        try (Connection conn = DatabaseManager.getConnection(Workload.HISTORY);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+
+            stmt.setInt(1, ids.conversationId(conn, conversationId));
+            stmt.setLong(2, after);
+            stmt.setInt(3, ids.userId(conn, userEmail));
+            ResultSet rs = stmt.executeQuery();
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            System.err.println("Database error counting unread messages: " + e.getMessage());
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
     @Override
     public boolean deleteMessage(String messageId) {
         String query = "DELETE FROM messages WHERE id = ?";
@@ -229,114 +455,58 @@ public List<JSONObject> getGroupMessages(String groupConversationId) {
         }
     }
     
-    private boolean ensureConversationExists(String conversationId) {
+    /**
+     * Numeric id of a conversation, creating it (with the group members as participants
+     * for a group conversation) on first use
+     */
+    private int ensureConversationExists(Connection conn, String conversationId) throws SQLException {
+        int id = ids.conversationId(conn, conversationId);
+        if (id != 0) {
+            return id;
+        }
         boolean isGroup = conversationId.startsWith("group_");
-        String groupName = isGroup ? conversationId.substring(6) : null;
-        
-        try (Connection conn = DatabaseManager.getConnection()) {
-            // Check if conversation exists
-            String checkQuery = "SELECT COUNT(*) FROM conversations WHERE id = ?";
-            try (PreparedStatement stmt = conn.prepareStatement(checkQuery)) {
-                stmt.setString(1, conversationId);
-                ResultSet rs = stmt.executeQuery();
-                
-                if (rs.next() && rs.getInt(1) == 0) {
-                    System.out.println("Creating new conversation: " + conversationId);
-                    // Create conversation if it doesn't exist
-                    String insertQuery = "INSERT INTO conversations (id, is_group) VALUES (?, ?)";
-                    try (PreparedStatement insertStmt = conn.prepareStatement(insertQuery)) {
-                        insertStmt.setString(1, conversationId);
-                        insertStmt.setBoolean(2, isGroup);
-                        insertStmt.executeUpdate();
-                    }
-                    
-                    if (isGroup) {
-                        System.out.println("Adding group members as participants for: " + groupName);
-                        addGroupMembersAsParticipants(conn, conversationId, groupName);
-                    }
-                }
-            }
-            return true; // Conversation now exists
-        } catch (SQLException e) {
-            System.err.println("Database error ensuring conversation exists: " + e.getMessage());
-            e.printStackTrace();
-            return false;
+        System.out.println("Creating new conversation: " + conversationId);
+        // IGNORE: another thread may be creating the same conversation
+        String insertQuery = "INSERT IGNORE INTO conversations (conversation_key, is_group) VALUES (?, ?)";
+        try (PreparedStatement insertStmt = conn.prepareStatement(insertQuery)) {
+            insertStmt.setString(1, conversationId);
+            insertStmt.setBoolean(2, isGroup);
+            insertStmt.executeUpdate();
         }
-    }
-    
-   
-
-    // Add this method in MessageDAOImpl
-private void addGroupMembersAsParticipants(Connection conn, String conversationId, String groupName) {
-    try {
-        // First, get all group members
-        String queryMembers = "SELECT user_email FROM group_members JOIN user_groups ON group_members.group_id = user_groups.id WHERE user_groups.name = ?";
-        List<String> members = new ArrayList<>();
-        
-        try (PreparedStatement stmt = conn.prepareStatement(queryMembers)) {
-            stmt.setString(1, groupName);
-            ResultSet rs = stmt.executeQuery();
-            
-            while (rs.next()) {
-                members.add(rs.getString("user_email"));
-            }
+        id = ids.conversationId(conn, conversationId);
+        if (id == 0) {
+            throw new SQLException("Conversation " + conversationId + " could not be created");
         }
-        
-        System.out.println("Adding " + members.size() + " members as participants to conversation: " + conversationId);
-        
-        // Now add each member as a participant
-        String addParticipantQuery = "INSERT INTO conversation_participants (conversation_id, user_email) VALUES (?, ?)";
-        try (PreparedStatement stmt = conn.prepareStatement(addParticipantQuery)) {
-            for (String member : members) {
-                stmt.setString(1, conversationId);
-                stmt.setString(2, member);
-                try {
-                    stmt.executeUpdate();
-                    System.out.println("Added " + member + " to conversation " + conversationId);
-                } catch (SQLException e) {
-                    if (e.getMessage().contains("Duplicate entry")) {
-                        System.out.println("User " + member + " already a participant in conversation " + conversationId);
-                    } else {
-                        throw e; // Rethrow if it's a different error
-                    }
-                }
-            }
+        if (isGroup) {
+            System.out.println("Adding group members as participants for: " + conversationId.substring(6));
+            addGroupMembersAsParticipants(conn, id, conversationId.substring(6));
         }
-    } catch (SQLException e) {
-        System.err.println("Error adding group members as participants: " + e.getMessage());
-        e.printStackTrace();
+        return id;
     }
-}
-    private void addConversationParticipant(Connection conn, String conversationId, String userEmail) throws SQLException {
-        // First check if participant already exists
-        String checkQuery = "SELECT COUNT(*) FROM conversation_participants WHERE conversation_id = ? AND user_email = ?";
-        try (PreparedStatement stmt = conn.prepareStatement(checkQuery)) {
-            stmt.setString(1, conversationId);
-            stmt.setString(2, userEmail);
-            ResultSet rs = stmt.executeQuery();
-            
-            if (rs.next() && rs.getInt(1) > 0) {
-                // Participant already exists
-                return;
-            }
+
+    private void addGroupMembersAsParticipants(Connection conn, int conversationId, String groupName) throws SQLException {
+        String query = "INSERT IGNORE INTO conversation_participants (conversation_id, user_id) " +
+                "SELECT ?, gm.user_id FROM group_members gm JOIN user_groups g ON g.id = gm.group_id WHERE g.name = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setInt(1, conversationId);
+            stmt.setString(2, groupName);
+            int added = stmt.executeUpdate();
+            System.out.println("Added " + added + " members as participants to group conversation: " + groupName);
         }
-        
-        // Add participant if they don't exist
-        String query = "INSERT INTO conversation_participants (conversation_id, user_email) VALUES (?, ?)";
+    }
+
+    private void addConversationParticipant(Connection conn, int conversationId, String userEmail) throws SQLException {
+        int userId = ids.userId(conn, userEmail);
+        if (userId == 0) {
+            System.err.println("Cannot add unknown user " + userEmail + " as a conversation participant");
+            return;
+        }
+        // IGNORE: already a participant
+        String query = "INSERT IGNORE INTO conversation_participants (conversation_id, user_id) VALUES (?, ?)";
         try (PreparedStatement stmt = conn.prepareStatement(query)) {
-            stmt.setString(1, conversationId);
-            stmt.setString(2, userEmail);
+            stmt.setInt(1, conversationId);
+            stmt.setInt(2, userId);
             stmt.executeUpdate();
-            System.out.println("Added user " + userEmail + " as participant in conversation " + conversationId);
-        } catch (SQLException e) {
-            if (e.getErrorCode() == 1062) { // MySQL duplicate entry error
-                // Ignore duplicate entry errors
-                System.out.println("User " + userEmail + " already a participant in conversation " + conversationId);
-            } else {
-                throw e; // Rethrow if it's a different error
-            }
         }
     }
-    
-    
-}
\ No newline at end of file
+}
@@ -0,0 +1,129 @@
+package com.chatapp.data.dao.impl;
+
+import com.chatapp.common.model.ReadCursor;
+import com.chatapp.data.dao.ReadCursorDAO;
+import com.chatapp.data.db.DatabaseManager;
+import com.chatapp.data.service.IdCache;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ReadCursorDAOImpl implements ReadCursorDAO {
+
+    private static final String INSERT_PREFIX =
+            "INSERT INTO read_cursors (user_id, conversation_id, delivered_ts, delivered_id, read_ts) VALUES ";
+    private static final String ROW = "(?, ?, ?, ?, ?)";
+    // GREATEST keeps the cursor monotonic even when acks arrive out of order. delivered_id
+    // is assigned first: MySQL evaluates the assignments in order and must compare it with
+    // the old delivered_ts. A NULL id covers the whole millisecond and wins a tie. GREATEST
+    // treats NULL differently in MySQL and H2, so the tie is spelled out: a new NULL id
+    // compares as unknown and falls through to ELSE (H2 cannot parse VALUES(...) IS NULL).
+    private static final String UPSERT_SUFFIX =
+            " ON DUPLICATE KEY UPDATE delivered_id = CASE " +
+            "WHEN VALUES(delivered_ts) > delivered_ts THEN VALUES(delivered_id) " +
+            "WHEN VALUES(delivered_ts) < delivered_ts THEN delivered_id " +
+            "WHEN delivered_id IS NULL THEN NULL " +
+            "WHEN VALUES(delivered_id) > delivered_id THEN VALUES(delivered_id) " +
+            "WHEN VALUES(delivered_id) <= delivered_id THEN delivered_id " +
+            "ELSE NULL END, " +
+            "delivered_ts = GREATEST(delivered_ts, VALUES(delivered_ts)), " +
+            "read_ts = GREATEST(read_ts, VALUES(read_ts))";
+
+    private final IdCache ids = IdCache.getInstance();
+
+    @Override
+    public List<ReadCursor> getCursors(String userEmail) {
+        String query = "SELECT conversation_id, delivered_ts, delivered_id, read_ts FROM read_cursors WHERE user_id = ?";
+        List<ReadCursor> cursors = new ArrayList<>();
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+
+            stmt.setInt(1, ids.userId(conn, userEmail));
+            ResultSet rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                cursors.add(new ReadCursor(userEmail, ids.conversationKey(conn, rs.getInt("conversation_id")),
+                        rs.getLong("delivered_ts"), rs.getString("delivered_id"), rs.getLong("read_ts")));
+            }
+            return cursors;
+        } catch (SQLException e) {
+            System.err.println("Database error retrieving read cursors: " + e.getMessage());
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    @Override
+    public ReadCursor getCursor(String userEmail, String conversationId) {
+        String query = "SELECT delivered_ts, delivered_id, read_ts FROM read_cursors WHERE user_id = ? AND conversation_id = ?";
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+
+            stmt.setInt(1, ids.userId(conn, userEmail));
+            stmt.setInt(2, ids.conversationId(conn, conversationId));
+            ResultSet rs = stmt.executeQuery();
+
+            if (rs.next()) {
+                return new ReadCursor(userEmail, conversationId, rs.getLong("delivered_ts"), rs.getString("delivered_id"),
+                        rs.getLong("read_ts"));
+            }
+            return new ReadCursor(userEmail, conversationId, 0, 0);
+        } catch (SQLException e) {
+            System.err.println("Database error retrieving read cursor: " + e.getMessage());
+            e.printStackTrace();
+            return new ReadCursor(userEmail, conversationId, 0, 0);
+        }
+    }
+
+    @Override
+    public boolean advanceBatch(List<ReadCursor> cursors) {
+        if (cursors.isEmpty()) {
+            return true;
+        }
+
+        try (Connection conn = DatabaseManager.getConnection()) {
+            // Cursors of unknown users or conversations have nothing to point at
+            List<int[]> keys = new ArrayList<>();
+            List<ReadCursor> known = new ArrayList<>();
+            for (ReadCursor cursor : cursors) {
+                int userId = ids.userId(conn, cursor.getUserEmail());
+                int conversationId = ids.conversationId(conn, cursor.getConversationId());
+                if (userId != 0 && conversationId != 0) {
+                    keys.add(new int[]{userId, conversationId});
+                    known.add(cursor);
+                }
+            }
+            if (known.isEmpty()) {
+                return true;
+            }
+            StringBuilder query = new StringBuilder(INSERT_PREFIX);
+            for (int i = 0; i < known.size(); i++) {
+                query.append(i == 0 ? ROW : ", " + ROW);
+            }
+            query.append(UPSERT_SUFFIX);
+
+            try (PreparedStatement stmt = conn.prepareStatement(query.toString())) {
+                int index = 1;
+                for (int i = 0; i < known.size(); i++) {
+                    stmt.setInt(index++, keys.get(i)[0]);
+                    stmt.setInt(index++, keys.get(i)[1]);
+                    stmt.setLong(index++, known.get(i).getDeliveredTimestamp());
+                    stmt.setString(index++, known.get(i).getDeliveredId());
+                    stmt.setLong(index++, known.get(i).getReadTimestamp());
+                }
+                stmt.executeUpdate();
+            }
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Database error advancing read cursors: " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        }
+    }
+}
@@ -3,18 +3,33 @@ package com.chatapp.data.dao.impl;
 import com.chatapp.common.model.User;
 import com.chatapp.data.dao.UserDAO;
 import com.chatapp.data.db.DatabaseManager;
+import com.chatapp.data.db.DatabaseManager.Workload;
+import com.chatapp.data.service.IdCache;
+import com.chatapp.data.service.UserDirectory;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 
 public class UserDAOImpl implements UserDAO {
 
+    private final UserDirectory directory = UserDirectory.getInstance();
+    private final IdCache ids = IdCache.getInstance();
+
     @Override
     public User findByEmail(String email) {
+        if (!directory.mightExist(email)) {
+            return null;
+        }
+        User cached = directory.get(email);
+        if (cached != null) {
+            return cached;
+        }
+
         String query = "SELECT * FROM users WHERE email = ?";
 
         try (Connection conn = DatabaseManager.getConnection();
@@ -26,7 +41,10 @@ public class UserDAOImpl implements UserDAO {
             if (rs.next()) {
                 String username = rs.getString("username");
                 String password = rs.getString("password");
-                return new User(username, password, email);
+                User user = new User(username, password, email);
+                directory.put(user);
+                ids.putUser(email, rs.getInt("id"));
+                return user;
             }
             return null;
         } catch (SQLException e) {
@@ -38,6 +56,9 @@ public class UserDAOImpl implements UserDAO {
 
     @Override
     public boolean authenticate(String email, String password) {
+        if (!directory.mightExist(email)) {
+            return false;
+        }
         String query = "SELECT password FROM users WHERE email = ?";
 
         try (Connection conn = DatabaseManager.getConnection();
@@ -59,16 +80,27 @@ public class UserDAOImpl implements UserDAO {
 
     @Override
     public boolean create(User user) {
+        // Known user: the insert would only hit the primary key
+        if (directory.get(user.getEmail()) != null) {
+            return false;
+        }
         String query = "INSERT INTO users (email, username, password) VALUES (?, ?, ?)";
 
         try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+             PreparedStatement stmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
 
             stmt.setString(1, user.getEmail());
             stmt.setString(2, user.getUsername());
             stmt.setString(3, user.getPassword());
 
             int rowsAffected = stmt.executeUpdate();
+            if (rowsAffected > 0) {
+                directory.put(user);
+                ResultSet keys = stmt.getGeneratedKeys();
+                if (keys.next()) {
+                    ids.putUser(user.getEmail(), keys.getInt(1));
+                }
+            }
             return rowsAffected > 0;
         } catch (SQLException e) {
             System.err.println("Database error creating user: " + e.getMessage());
@@ -81,7 +113,7 @@ public class UserDAOImpl implements UserDAO {
         String query = "SELECT * FROM users";
         List<User> users = new ArrayList<>();
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getReadConnection();
              PreparedStatement stmt = conn.prepareStatement(query);
              ResultSet rs = stmt.executeQuery()) {
 
@@ -99,6 +131,26 @@ public class UserDAOImpl implements UserDAO {
         }
     }
 
+    @Override
+    public List<String> findAllEmails() {
+        String query = "SELECT email FROM users";
+        List<String> emails = new ArrayList<>();
+
+        try (Connection conn = DatabaseManager.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(query);
+             ResultSet rs = stmt.executeQuery()) {
+
+            while (rs.next()) {
+                emails.add(rs.getString("email"));
+            }
+            return emails;
+        } catch (SQLException e) {
+            System.err.println("Database error retrieving user emails: " + e.getMessage());
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
     @Override
     public boolean update(User user) {
         // First check if user exists
@@ -117,6 +169,8 @@ public class UserDAOImpl implements UserDAO {
             stmt.setString(3, user.getEmail());
 
             int rowsAffected = stmt.executeUpdate();
+            // Once committed: a lookup racing the write cannot cache the old row again
+            directory.invalidate(user.getEmail());
             if (rowsAffected > 0) {
                 System.out.println("User updated successfully: " + user.getEmail());
             }
@@ -128,6 +182,26 @@ public class UserDAOImpl implements UserDAO {
         }
     }
 
+    @Override
+    public long getCreatedAt(String email) {
+        String query = "SELECT created_at FROM users WHERE email = ?";
+
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+
+            stmt.setString(1, email);
+            ResultSet rs = stmt.executeQuery();
+
+            if (rs.next()) {
+                return rs.getTimestamp("created_at").getTime();
+            }
+            return -1;
+        } catch (SQLException e) {
+            System.err.println("Database error reading user registration time: " + e.getMessage());
+            return -1;
+        }
+    }
+
     @Override
     public boolean delete(String email) {
         // First check if user exists
@@ -139,40 +213,31 @@ public class UserDAOImpl implements UserDAO {
         // Start transaction to manage cascade deletion
         Connection conn = null;
         try {
-            conn = DatabaseManager.getConnection();
+            conn = DatabaseManager.getConnection(Workload.ADMIN);
             conn.setAutoCommit(false);
 
+            int userId = ids.userId(conn, email);
+
             // First delete from contacts table (both directions)
-            String contactsQuery = "DELETE FROM contacts WHERE user_email = ? OR contact_email = ?";
+            String contactsQuery = "DELETE FROM contacts WHERE user_id = ? OR contact_id = ?";
             try (PreparedStatement stmt = conn.prepareStatement(contactsQuery)) {
-                stmt.setString(1, email);
-                stmt.setString(2, email);
-                stmt.executeUpdate();
-            }
-
-            // Delete from conversation_participants
-            String partQuery = "DELETE FROM conversation_participants WHERE user_email = ?";
-            try (PreparedStatement stmt = conn.prepareStatement(partQuery)) {
-                stmt.setString(1, email);
+                stmt.setInt(1, userId);
+                stmt.setInt(2, userId);
                 stmt.executeUpdate();
             }
 
-            // Find messages sent by user
-            String findMsgQuery = "SELECT id FROM messages WHERE sender_email = ?";
-            List<String> messageIds = new ArrayList<>();
-            try (PreparedStatement stmt = conn.prepareStatement(findMsgQuery)) {
-                stmt.setString(1, email);
-                ResultSet rs = stmt.executeQuery();
-                while (rs.next()) {
-                    messageIds.add(rs.getString("id"));
-                }
-            }
-
-            // Delete messages sent by user
-            if (!messageIds.isEmpty()) {
-                String deleteQuery = "DELETE FROM messages WHERE sender_email = ?";
-                try (PreparedStatement stmt = conn.prepareStatement(deleteQuery)) {
-                    stmt.setString(1, email);
+            // Then every other row keyed on the user id: participations, cursors, group
+            // memberships, and the messages and files the user sent
+            String[] userRows = {
+                    "DELETE FROM conversation_participants WHERE user_id = ?",
+                    "DELETE FROM read_cursors WHERE user_id = ?",
+                    "DELETE FROM group_members WHERE user_id = ?",
+                    "DELETE FROM messages WHERE sender_id = ?",
+                    "DELETE FROM files WHERE sender_id = ?"
+            };
+            for (String query : userRows) {
+                try (PreparedStatement stmt = conn.prepareStatement(query)) {
+                    stmt.setInt(1, userId);
                     stmt.executeUpdate();
                 }
             }
@@ -187,6 +252,8 @@ public class UserDAOImpl implements UserDAO {
 
             // Commit all changes
             conn.commit();
+            directory.invalidate(email);
+            ids.forgetUser(email);
 
             if (rowsAffected > 0) {
                 System.out.println("User deleted successfully: " + email);
@@ -237,6 +304,7 @@ public class UserDAOImpl implements UserDAO {
             stmt.setString(4, user.getEmail());
 
             int rowsAffected = stmt.executeUpdate();
+            directory.invalidate(user.getEmail());
             if (rowsAffected > 0) {
                 System.out.println("User profile updated successfully: " + user.getEmail());
             }
@@ -5,11 +5,16 @@ import java.io.InputStream;
 import java.util.Properties;
 
 /**
- * Database configuration manager
+ * Database configuration manager. The "db.profile" system property (or the db.profile
+ * key of db.properties) selects a profile: "mysql" by default, or "embedded", whose
+ * db-embedded.properties overrides the connection settings with an in-process H2
+ * database in MySQL compatibility mode, for load tests and benchmarks without MySQL.
  */
 public class DatabaseConfig {
+    public static final String EMBEDDED_PROFILE = "embedded";
     private static final String CONFIG_FILE = "/db.properties";
     private static Properties properties;
+    private static String profile;
 
     static {
         loadProperties();
@@ -33,6 +38,35 @@ public class DatabaseConfig {
             System.err.println("Error loading database configuration: " + e.getMessage());
             e.printStackTrace();
         }
+
+        profile = System.getProperty("db.profile", properties.getProperty("db.profile", "mysql")).trim();
+        if (!"mysql".equals(profile)) {
+            String profileFile = "/db-" + profile + ".properties";
+            try (InputStream input = DatabaseConfig.class.getResourceAsStream(profileFile)) {
+                if (input == null) {
+                    System.err.println("Database profile file not found: " + profileFile);
+                    return;
+                }
+                properties.load(input);
+                System.out.println("Database profile '" + profile + "' loaded");
+            } catch (IOException e) {
+                System.err.println("Error loading database profile " + profile + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Selected database profile, "mysql" unless overridden
+     */
+    public static String getProfile() {
+        return profile;
+    }
+
+    /**
+     * Whether the server runs on the in-process H2 database
+     */
+    public static boolean isEmbedded() {
+        return EMBEDDED_PROFILE.equals(profile);
     }
 
     /**
@@ -81,4 +115,46 @@ public class DatabaseConfig {
         String value = properties.getProperty("jdbc.pool.minIdle");
         return value != null ? Integer.parseInt(value) : 5;
     }
+
+    /**
+     * Setting of one workload pool: "jdbc.pool.<workload>.<key>", falling back to the
+     * given default when absent
+     */
+    public static int getPoolSetting(String workload, String key, int defaultValue) {
+        String value = properties.getProperty("jdbc.pool." + workload + "." + key);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+    /**
+     * Read replica URL ("jdbc.replica.url", overridable with the system property of the
+     * same name), or null when reads all go to the primary
+     */
+    public static String getReplicaUrl() {
+        String value = System.getProperty("jdbc.replica.url", properties.getProperty("jdbc.replica.url"));
+        return value != null && !value.trim().isEmpty() ? value.trim() : null;
+    }
+
+    /**
+     * Read replica username, defaulting to the primary's
+     */
+    public static String getReplicaUsername() {
+        return System.getProperty("jdbc.replica.user", properties.getProperty("jdbc.replica.user", getUsername()));
+    }
+
+    /**
+     * Read replica password, defaulting to the primary's
+     */
+    public static String getReplicaPassword() {
+        return System.getProperty("jdbc.replica.password", properties.getProperty("jdbc.replica.password", getPassword()));
+    }
+
+    /**
+     * Storage engine setting "storage.<key>" (see Storage), overridable with the system
+     * property of the same name
+     */
+    public static String getStorageSetting(String key, String defaultValue) {
+        String name = "storage." + key;
+        String value = System.getProperty(name, properties.getProperty(name));
+        return value != null && !value.trim().isEmpty() ? value.trim() : defaultValue;
+    }
 }
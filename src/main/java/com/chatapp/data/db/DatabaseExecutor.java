@@ -0,0 +1,82 @@
+package com.chatapp.data.db;
+
+import com.chatapp.data.db.DatabaseManager.Workload;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Threads that run blocking DAO calls for the async DAO methods. Each workload has its
+ * own executor with one thread per pooled connection of that workload, so work waits
+ * here instead of inside Hikari and a burst of history reads cannot take the threads
+ * chat writes need. Queues are bounded: when the database falls that far behind, new
+ * calls fail fast with a RejectedExecutionException instead of piling up.
+ */
+public class DatabaseExecutor {
+    private static final int QUEUE_CAPACITY = 1000;
+
+    // Created on first use, once the pools (and their sizes) are known
+    private static final Map<Workload, ThreadPoolExecutor> executors = new ConcurrentHashMap<>();
+
+    private DatabaseExecutor() {
+    }
+
+    /**
+     * Run a blocking chat database call, see supplyAsync(Workload, Supplier)
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> call) {
+        return supplyAsync(Workload.CHAT, call);
+    }
+
+    /**
+     * Run a blocking database call on the workload's executor, with the caller's read token.
+     * DAO calls made without an explicit workload use that workload's pool.
+     *
+     * @return a future completed with the call's result, or exceptionally when it threw
+     *         or the executor was saturated
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Workload workload, Supplier<T> call) {
+        long readToken = DatabaseManager.getReadToken();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                DatabaseManager.setReadToken(readToken);
+                Object[] result = new Object[1];
+                DatabaseManager.runAs(workload, () -> result[0] = call.get());
+                @SuppressWarnings("unchecked")
+                T value = (T) result[0];
+                return value;
+            }, executorFor(workload));
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Calls waiting for a thread across all workloads, for monitoring
+     */
+    public static int queued() {
+        int queued = 0;
+        for (ThreadPoolExecutor executor : executors.values()) {
+            queued += executor.getQueue().size();
+        }
+        return queued;
+    }
+
+    private static ThreadPoolExecutor executorFor(Workload workload) {
+        return executors.computeIfAbsent(workload, w -> {
+            int threads = DatabaseManager.getMaxPoolSize(w);
+            return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                        Thread thread = new Thread(r, "db-worker-" + w.key());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        });
+    }
+}
@@ -1,71 +1,375 @@
 package com.chatapp.data.db;
 
+import com.chatapp.common.util.CircuitBreaker;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Connection pools, one per workload class (bulkheads), so a burst of history reads or
+ * an admin job can never take the connections chat writes need. Each pool has its own
+ * size and connection timeout (db.properties) and its own Hikari metrics, published
+ * over JMX under its pool name. Each pool also has a circuit breaker: once connections
+ * keep failing, callers get an SQLException at once instead of waiting for the timeout.
+ *
+ * An optional read replica (jdbc.replica.url) serves history, file, group list and
+ * directory reads. The primary stamps a heartbeat row every jdbc.pool.replica.heartbeatMs;
+ * the newest stamp visible on the replica tells how far it has caught up. A read goes to
+ * the replica only when that stamp is recent (jdbc.pool.replica.maxLagMs) and not older
+ * than the thread's read token, the time of the session's last write, so users always
+ * read their own writes. Otherwise it falls back to the history pool of the primary.
+ */
 public class DatabaseManager {
-    private static HikariDataSource dataSource;
+
+    /**
+     * Workload classes, each with its own pool
+     */
+    public enum Workload {
+        CHAT,       // Latency-critical: message writes, cursors, small lookups (default)
+        HISTORY,    // Bulk reads: history pages, catch-up, inbox seeding
+        ADMIN;      // Cascading deletes, migrations, schema setup
+
+        String key() {
+            return name().toLowerCase();
+        }
+    }
+
+    private static final Map<Workload, HikariDataSource> dataSources = new EnumMap<>(Workload.class);
+    private static final Map<Workload, CircuitBreaker> breakers = new EnumMap<>(Workload.class);
+    // Workload of DAO calls made on this thread without an explicit one (see runAs)
+    private static final ThreadLocal<Workload> currentWorkload = new ThreadLocal<>();
+
+    // Read replica; null when not configured
+    private static HikariDataSource replica;
+    private static final CircuitBreaker replicaBreaker = new CircuitBreaker("db-replica",
+            DatabaseConfig.getPoolSetting("replica", "breakerFailures", 3),
+            DatabaseConfig.getPoolSetting("replica", "breakerOpenMs", 5000));
+    private static final long REPLICA_MAX_LAG_MS = DatabaseConfig.getPoolSetting("replica", "maxLagMs", 2000);
+    private static final long REPLICA_HEARTBEAT_MS = DatabaseConfig.getPoolSetting("replica", "heartbeatMs", 500);
+    // Newest primary heartbeat seen on the replica
+    private static volatile long replicaBeat;
+    // Time of the last write of the session this thread serves (see setReadToken)
+    private static final ThreadLocal<Long> readToken = new ThreadLocal<>();
+    // Conversation key -> time of its newest committed message write, kept for the lag bound only
+    private static final Map<String, Long> conversationWrites = new ConcurrentHashMap<>();
+    private static final AtomicLong replicaReads = new AtomicLong();
+    private static final AtomicLong primaryReads = new AtomicLong();
 
     static {
         try {
-            System.out.println("Initializing database connection pool...");
+            System.out.println("Initializing database connection pools...");
 
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(DatabaseConfig.getJdbcUrl());
-            config.setUsername(DatabaseConfig.getUsername());
-            config.setPassword(DatabaseConfig.getPassword());
+            for (Workload workload : Workload.values()) {
+                breakers.put(workload, new CircuitBreaker("db-" + workload.key(),
+                        DatabaseConfig.getPoolSetting(workload.key(), "breakerFailures", 3),
+                        DatabaseConfig.getPoolSetting(workload.key(), "breakerOpenMs", 5000)));
+                try {
+                    dataSources.put(workload, new HikariDataSource(configFor(workload)));
+                    System.out.println("Database connection pool '" + workload.key() + "' initialized successfully");
+                } catch (Exception e) {
+                    System.err.println("Error initializing connection pool '" + workload.key() + "': " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }
 
-            // Basic pool configuration
-            config.setMaximumPoolSize(DatabaseConfig.getMaxPoolSize());
-            config.setMinimumIdle(DatabaseConfig.getMinIdle());
-            config.setIdleTimeout(300000); // 5 minutes
+            String replicaUrl = DatabaseConfig.getReplicaUrl();
+            if (replicaUrl != null) {
+                try {
+                    replica = new HikariDataSource(replicaConfig(replicaUrl));
+                    startReplicaHeartbeat();
+                    System.out.println("Read replica pool initialized for " + replicaUrl);
+                } catch (Exception e) {
+                    System.err.println("Error initializing read replica pool: " + e.getMessage());
+                }
+            }
 
-            // Connection testing
-            config.setConnectionTestQuery("SELECT 1");
+            // Test connection
+            HikariDataSource chat = dataSources.get(Workload.CHAT);
+            if (chat != null) {
+                try (Connection conn = chat.getConnection()) {
+                    System.out.println("Successfully connected to database");
+                } catch (SQLException e) {
+                    System.err.println("Error connecting to database: " + e.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Error loading database connection properties: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
 
-            // MySQL specific optimizations
+    private static HikariConfig configFor(Workload workload) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("chat-db-" + workload.key());
+        config.setJdbcUrl(DatabaseConfig.getJdbcUrl());
+        config.setUsername(DatabaseConfig.getUsername());
+        config.setPassword(DatabaseConfig.getPassword());
+
+        // Pool configuration; the chat pool keeps the historical jdbc.pool.* settings as defaults
+        boolean chat = workload == Workload.CHAT;
+        config.setMaximumPoolSize(DatabaseConfig.getPoolSetting(workload.key(), "maxSize",
+                chat ? DatabaseConfig.getMaxPoolSize() : 2));
+        config.setMinimumIdle(DatabaseConfig.getPoolSetting(workload.key(), "minIdle",
+                chat ? DatabaseConfig.getMinIdle() : 0));
+        config.setConnectionTimeout(DatabaseConfig.getPoolSetting(workload.key(), "connectionTimeoutMs", 30000));
+        config.setIdleTimeout(300000); // 5 minutes
+        config.setRegisterMbeans(true);
+
+        // Connection testing
+        config.setConnectionTestQuery("SELECT 1");
+
+        // MySQL specific optimizations; H2 rejects unknown connection settings
+        if (!DatabaseConfig.isEmbedded()) {
             config.addDataSourceProperty("cachePrepStmts", "true");
             config.addDataSourceProperty("prepStmtCacheSize", "250");
             config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
             config.addDataSourceProperty("useServerPrepStmts", "true");
+        }
+        return config;
+    }
 
-            try {
-                dataSource = new HikariDataSource(config);
-                System.out.println("Database connection pool initialized successfully");
+    private static HikariConfig replicaConfig(String url) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("chat-db-replica");
+        config.setJdbcUrl(url);
+        config.setUsername(DatabaseConfig.getReplicaUsername());
+        config.setPassword(DatabaseConfig.getReplicaPassword());
+        config.setMaximumPoolSize(DatabaseConfig.getPoolSetting("replica", "maxSize", 4));
+        config.setMinimumIdle(DatabaseConfig.getPoolSetting("replica", "minIdle", 1));
+        config.setConnectionTimeout(DatabaseConfig.getPoolSetting("replica", "connectionTimeoutMs", 2000));
+        config.setIdleTimeout(300000);
+        config.setReadOnly(true);
+        config.setRegisterMbeans(true);
+        config.setConnectionTestQuery("SELECT 1");
+        config.addDataSourceProperty("cachePrepStmts", "true");
+        config.addDataSourceProperty("prepStmtCacheSize", "250");
+        config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        config.addDataSourceProperty("useServerPrepStmts", "true");
+        return config;
+    }
 
-                // Test connection
-                try (Connection conn = dataSource.getConnection()) {
-                    System.out.println("Successfully connected to database");
+    /**
+     * Stamp the heartbeat row on the primary, then see which stamp the replica has applied
+     */
+    private static void startReplicaHeartbeat() {
+        ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "replica-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(() -> {
+            try (Connection conn = getConnection(Workload.ADMIN);
+                 PreparedStatement stmt = conn.prepareStatement(
+                         "INSERT INTO replica_heartbeat (id, beat) VALUES (1, ?) ON DUPLICATE KEY UPDATE beat = VALUES(beat)")) {
+                stmt.setLong(1, System.currentTimeMillis());
+                stmt.executeUpdate();
+            } catch (SQLException e) {
+                // Primary down: the replica's stamp ages and reads fall back once past the lag bound
+            }
+            // Writes older than the lag bound are covered by the bound itself
+            long horizon = System.currentTimeMillis() - REPLICA_MAX_LAG_MS;
+            conversationWrites.values().removeIf(written -> written < horizon);
+            if (!replicaBreaker.allowRequest()) {
+                return;
+            }
+            try (Connection conn = replica.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement("SELECT beat FROM replica_heartbeat WHERE id = 1");
+                 ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    replicaBeat = Math.max(replicaBeat, rs.getLong(1));
+                }
+                replicaBreaker.recordSuccess();
+            } catch (SQLException e) {
+                if (replicaBreaker.getState() == CircuitBreaker.State.CLOSED) {
+                    System.err.println("Error reading replica heartbeat: " + e.getMessage());
                 }
-            } catch (Exception e) {
-                System.err.println("Error initializing connection pool: " + e.getMessage());
-                e.printStackTrace();
+                replicaBreaker.recordFailure();
             }
-        } catch (Exception e) {
-            System.err.println("Error loading database connection properties: " + e.getMessage());
-            e.printStackTrace();
-        }
+        }, 0, REPLICA_HEARTBEAT_MS, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * Connection from the pool of the workload set with runAs on this thread, or the chat pool
+     */
     public static Connection getConnection() throws SQLException {
+        Workload workload = currentWorkload.get();
+        return getConnection(workload != null ? workload : Workload.CHAT);
+    }
+
+    public static Connection getConnection(Workload workload) throws SQLException {
+        HikariDataSource dataSource = dataSources.get(workload);
         if (dataSource == null || dataSource.isClosed()) {
-            throw new SQLException("Database connection pool is not initialized or has been closed");
+            throw new SQLException("Database connection pool '" + workload.key() + "' is not initialized or has been closed");
         }
 
+        CircuitBreaker breaker = breakers.get(workload);
+        if (!breaker.allowRequest()) {
+            throw new SQLException("Database unavailable (" + workload.key() + " circuit open)");
+        }
         try {
-            return dataSource.getConnection();
+            Connection connection = dataSource.getConnection();
+            breaker.recordSuccess();
+            return connection;
         } catch (SQLException e) {
-            System.err.println("Error getting database connection: " + e.getMessage());
+            breaker.recordFailure();
+            System.err.println("Error getting database connection (" + workload.key() + "): " + e.getMessage());
             throw e;
         }
     }
 
+    /**
+     * Connection for a read that tolerates a slightly stale copy: the replica when it has
+     * caught up with this thread's read token and is within the lag bound, otherwise the
+     * history pool of the primary
+     */
+    public static Connection getReadConnection() throws SQLException {
+        return getReadConnection(null);
+    }
+
+    /**
+     * Connection for reading one conversation: as getReadConnection(), but the replica
+     * must also have caught up with the newest write to that conversation, whoever made it
+     */
+    public static Connection getReadConnection(String conversationKey) throws SQLException {
+        if (replica != null && replicaFresh(conversationKey) && replicaBreaker.allowRequest()) {
+            try {
+                Connection connection = replica.getConnection();
+                replicaBreaker.recordSuccess();
+                replicaReads.incrementAndGet();
+                return connection;
+            } catch (SQLException e) {
+                replicaBreaker.recordFailure();
+                System.err.println("Error getting replica connection, reading from primary: " + e.getMessage());
+            }
+        }
+        primaryReads.incrementAndGet();
+        return getConnection(Workload.HISTORY);
+    }
+
+    private static boolean replicaFresh(String conversationKey) {
+        long beat = replicaBeat;
+        if (System.currentTimeMillis() - beat > REPLICA_MAX_LAG_MS) {
+            return false;
+        }
+        // Beats and writes share a millisecond clock: a beat stamped in the same
+        // millisecond as a write may have been taken before it committed
+        Long token = readToken.get();
+        if (token != null && beat <= token) {
+            return false;
+        }
+        Long written = conversationKey != null ? conversationWrites.get(conversationKey) : null;
+        return written == null || beat > written;
+    }
+
+    /**
+     * Note that messages of a conversation were just committed on the primary, so replica
+     * reads of it wait until the replica has applied them
+     */
+    public static void recordWrite(String conversationKey) {
+        if (replica != null) {
+            conversationWrites.merge(conversationKey, System.currentTimeMillis(), Math::max);
+        }
+    }
+
+    /**
+     * Set the read token of the session served by this thread: the time of its last
+     * write, which replica reads must have caught up with. 0 clears it.
+     */
+    public static void setReadToken(long token) {
+        if (token > 0) {
+            readToken.set(token);
+        } else {
+            readToken.remove();
+        }
+    }
+
+    /**
+     * Read token of this thread, 0 if none, to carry it over to another thread
+     */
+    public static long getReadToken() {
+        Long token = readToken.get();
+        return token != null ? token : 0;
+    }
+
+    /**
+     * Whether chat writes are currently attempted (their circuit is not open)
+     */
+    public static boolean isAvailable() {
+        return breakers.get(Workload.CHAT).getState() != CircuitBreaker.State.OPEN;
+    }
+
+    /**
+     * Run a job whose DAO calls all use the pool of a workload, e.g. a migration
+     */
+    public static void runAs(Workload workload, Runnable job) {
+        Workload previous = currentWorkload.get();
+        currentWorkload.set(workload);
+        try {
+            job.run();
+        } finally {
+            if (previous != null) {
+                currentWorkload.set(previous);
+            } else {
+                currentWorkload.remove();
+            }
+        }
+    }
+
+    /**
+     * Configured size of a workload's pool
+     */
+    public static int getMaxPoolSize(Workload workload) {
+        HikariDataSource dataSource = dataSources.get(workload);
+        return dataSource != null ? dataSource.getMaximumPoolSize() : DatabaseConfig.getMaxPoolSize();
+    }
+
+    /**
+     * One line per pool: active, idle and total connections and threads waiting for one
+     */
+    public static String getPoolStats() {
+        StringBuilder stats = new StringBuilder();
+        dataSources.forEach((workload, dataSource) -> {
+            HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+            if (pool == null) {
+                return;
+            }
+            stats.append(workload.key()).append(": active ").append(pool.getActiveConnections())
+                    .append(", idle ").append(pool.getIdleConnections())
+                    .append(", total ").append(pool.getTotalConnections())
+                    .append(", waiting ").append(pool.getThreadsAwaitingConnection())
+                    .append(", circuit ").append(breakers.get(workload).getState())
+                    .append(" (").append(breakers.get(workload).getRejectedCount()).append(" rejected)").append('\n');
+        });
+        if (replica != null) {
+            stats.append("replica: lag ").append(System.currentTimeMillis() - replicaBeat).append(" ms")
+                    .append(", reads ").append(replicaReads.get())
+                    .append(", sent to primary ").append(primaryReads.get())
+                    .append(", circuit ").append(replicaBreaker.getState()).append('\n');
+        }
+        return stats.toString();
+    }
+
     public static void closePool() {
-        if (dataSource != null && !dataSource.isClosed()) {
-            dataSource.close();
-            System.out.println("Database connection pool closed");
+        dataSources.forEach((workload, dataSource) -> {
+            if (!dataSource.isClosed()) {
+                dataSource.close();
+                System.out.println("Database connection pool '" + workload.key() + "' closed");
+            }
+        });
+        if (replica != null && !replica.isClosed()) {
+            replica.close();
+            System.out.println("Read replica pool closed");
         }
     }
-}
\ No newline at end of file
+}
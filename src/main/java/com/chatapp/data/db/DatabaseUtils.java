@@ -15,6 +15,14 @@ import java.sql.Statement;
  */
 public class DatabaseUtils {
 
+    // Tables that must exist for the schema to be considered up to date.
+    // Every statement in schema.sql is idempotent, so a missing table simply re-runs the file.
+    private static final String[] REQUIRED_TABLES = { "users", "read_cursors", "replica_heartbeat" };
+    // Columns added to a table after it was first created: { table, column, DDL adding it }
+    private static final String[][] ADDED_COLUMNS = {
+            { "read_cursors", "delivered_id", "ALTER TABLE read_cursors ADD COLUMN delivered_id VARCHAR(255) NULL" }
+    };
+
     /**
      * Initialize the database schema if it doesn't exist
      * 
@@ -30,9 +38,10 @@ public class DatabaseUtils {
             return false;
         }
 
-        try (Connection conn = DatabaseManager.getConnection()) {
+        try (Connection conn = DatabaseManager.getConnection(DatabaseManager.Workload.ADMIN)) {
             // Check if tables already exist
             if (tablesExist(conn)) {
+                addMissingColumns(conn);
                 System.out.println("Database schema already initialized");
                 return true;
             }
@@ -54,8 +63,9 @@ public class DatabaseUtils {
                     if (line.endsWith(";")) {
                         String sql = schema.toString();
 
-                        // Skip USE statement as we're already connected to the DB
-                        if (!sql.toUpperCase().startsWith("USE ")) {
+                        // Skip CREATE DATABASE and USE statements as we're already connected to the DB
+                        String upper = sql.toUpperCase();
+                        if (!upper.startsWith("USE ") && !upper.startsWith("CREATE DATABASE")) {
                             try (Statement stmt = conn.createStatement()) {
                                 stmt.execute(sql);
                                 System.out.println("Executed: " + sql.substring(0, Math.min(50, sql.length())) + "...");
@@ -79,13 +89,35 @@ public class DatabaseUtils {
      * Check if the database tables already exist
      * 
      * @param conn Database connection
-     * @return true if tables exist
+     * @return true if all required tables exist
      * @throws SQLException
      */
     private static boolean tablesExist(Connection conn) throws SQLException {
         DatabaseMetaData meta = conn.getMetaData();
-        ResultSet tables = meta.getTables(null, null, "users", null);
-        return tables.next(); // If users table exists, assume schema is initialized
+        for (String table : REQUIRED_TABLES) {
+            try (ResultSet tables = meta.getTables(null, null, table, null)) {
+                if (!tables.next()) {
+                    System.out.println("Missing table " + table + ", applying schema");
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void addMissingColumns(Connection conn) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        for (String[] column : ADDED_COLUMNS) {
+            try (ResultSet columns = meta.getColumns(conn.getCatalog(), null, column[0], column[1])) {
+                if (columns.next()) {
+                    continue;
+                }
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(column[2]);
+                System.out.println("Added column " + column[0] + "." + column[1]);
+            }
+        }
     }
 
     /**
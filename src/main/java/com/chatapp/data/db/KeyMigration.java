@@ -0,0 +1,346 @@
+package com.chatapp.data.db;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts a database created with the old schema, where messages, participants, contacts,
+ * group members, files and read cursors were keyed on VARCHAR(255) emails and conversation
+ * strings, to integer keys: users.id, and a new conversations.id next to the string key
+ * (now conversations.conversation_key).
+ *
+ * Rows are copied into staging tables (*_v2) and the copy is checked row for row before
+ * anything is swapped; a failed copy leaves the old tables untouched. The swap is a single
+ * RENAME TABLE on MySQL (one table at a time on the embedded database), after which the
+ * old tables are dropped and the secondary indexes and foreign keys are added. A leftover
+ * conversations_legacy table marks an unfinished swap and is picked up on the next start.
+ * Tables the old database does not have yet (read_cursors before per-user cursors) are
+ * created empty with the new layout. It runs before schema.sql is applied, which would
+ * otherwise add such tables with integer keys next to the old string keys.
+ *
+ * Table and index sizes are printed before and after; "KeyMigration report" prints them
+ * at any time. Run it on a backup first and expect it to take a while on large tables.
+ */
+public class KeyMigration {
+    private static final String[] SIZED_TABLES = { "users", "conversations", "messages",
+            "conversation_participants", "contacts", "group_members", "files", "read_cursors" };
+    // Children first: dropped in this order, conversations last
+    private static final String[] MIGRATED_TABLES = { "messages", "conversation_participants", "contacts",
+            "group_members", "files", "read_cursors", "conversations" };
+    // String key columns of the old tables, gone once they are migrated
+    private static final String[] OLD_KEY_COLUMNS = { "user_email", "sender_email", "contact_email" };
+    private static final String STAGING_SUFFIX = "_v2";
+    private static final String LEGACY_SUFFIX = "_legacy";
+
+    private static final String[] STAGING_DDL = {
+            "CREATE TABLE conversations_v2 (id INT AUTO_INCREMENT PRIMARY KEY, " +
+                    "conversation_key VARCHAR(255) NOT NULL UNIQUE, created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                    "is_group BOOLEAN DEFAULT FALSE)",
+            "CREATE TABLE messages_v2 (id VARCHAR(255) PRIMARY KEY, sender_id INT NOT NULL, conversation_id INT NOT NULL, " +
+                    "content TEXT NOT NULL, type VARCHAR(20) NOT NULL, status VARCHAR(20) NOT NULL, timestamp BIGINT NOT NULL, " +
+                    "delivered BOOLEAN DEFAULT FALSE, read_status BOOLEAN DEFAULT FALSE, " +
+                    "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)",
+            "CREATE TABLE conversation_participants_v2 (conversation_id INT NOT NULL, user_id INT NOT NULL, " +
+                    "joined_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, PRIMARY KEY (conversation_id, user_id))",
+            "CREATE TABLE contacts_v2 (user_id INT NOT NULL, contact_id INT NOT NULL, " +
+                    "added_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, PRIMARY KEY (user_id, contact_id))",
+            "CREATE TABLE group_members_v2 (group_id INT NOT NULL, user_id INT NOT NULL, " +
+                    "joined_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, PRIMARY KEY (group_id, user_id))",
+            "CREATE TABLE files_v2 (id VARCHAR(36) PRIMARY KEY, sender_id INT NOT NULL, conversation_id INT NOT NULL, " +
+                    "original_filename VARCHAR(255) NOT NULL, stored_path VARCHAR(255) NOT NULL, " +
+                    "mime_type VARCHAR(100) NOT NULL, file_size BIGINT NOT NULL, timestamp BIGINT NOT NULL, " +
+                    "delivered BOOLEAN DEFAULT FALSE, viewed BOOLEAN DEFAULT FALSE, " +
+                    "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)",
+            "CREATE TABLE read_cursors_v2 (user_id INT NOT NULL, conversation_id INT NOT NULL, " +
+                    "delivered_ts BIGINT NOT NULL DEFAULT 0, delivered_id VARCHAR(255) NULL, read_ts BIGINT NOT NULL DEFAULT 0, " +
+                    "updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP, " +
+                    "PRIMARY KEY (user_id, conversation_id))"
+    };
+
+    // Conversations first: every other copy looks their new ids up by key
+    private static final String[] COPY_DML = {
+            "INSERT INTO conversations_v2 (conversation_key, created_at, is_group) " +
+                    "SELECT id, created_at, is_group FROM conversations ORDER BY created_at, id",
+            "INSERT INTO messages_v2 (id, sender_id, conversation_id, content, type, status, timestamp, delivered, " +
+                    "read_status, created_at) SELECT m.id, u.id, c.id, m.content, m.type, m.status, m.timestamp, " +
+                    "m.delivered, m.read_status, m.created_at FROM messages m " +
+                    "JOIN users u ON u.email = m.sender_email JOIN conversations_v2 c ON c.conversation_key = m.conversation_id",
+            "INSERT INTO conversation_participants_v2 (conversation_id, user_id, joined_at) " +
+                    "SELECT c.id, u.id, p.joined_at FROM conversation_participants p " +
+                    "JOIN users u ON u.email = p.user_email JOIN conversations_v2 c ON c.conversation_key = p.conversation_id",
+            "INSERT INTO contacts_v2 (user_id, contact_id, added_at) SELECT u.id, o.id, k.added_at FROM contacts k " +
+                    "JOIN users u ON u.email = k.user_email JOIN users o ON o.email = k.contact_email",
+            "INSERT INTO group_members_v2 (group_id, user_id, joined_at) SELECT g.group_id, u.id, g.joined_at " +
+                    "FROM group_members g JOIN users u ON u.email = g.user_email",
+            "INSERT INTO files_v2 (id, sender_id, conversation_id, original_filename, stored_path, mime_type, file_size, " +
+                    "timestamp, delivered, viewed, created_at) SELECT f.id, u.id, c.id, f.original_filename, " +
+                    "f.stored_path, f.mime_type, f.file_size, f.timestamp, f.delivered, f.viewed, f.created_at FROM files f " +
+                    "JOIN users u ON u.email = f.sender_email JOIN conversations_v2 c ON c.conversation_key = f.conversation_id",
+            "INSERT INTO read_cursors_v2 (user_id, conversation_id, delivered_ts, read_ts, updated_at) " +
+                    "SELECT u.id, c.id, r.delivered_ts, r.read_ts, r.updated_at FROM read_cursors r " +
+                    "JOIN users u ON u.email = r.user_email JOIN conversations_v2 c ON c.conversation_key = r.conversation_id"
+    };
+
+    // Same secondary indexes and foreign keys as schema.sql
+    private static final String[][] FINISH_DDL = {
+            { "messages", "idx_messages_conversation_ts", "CREATE INDEX idx_messages_conversation_ts ON messages (conversation_id, timestamp)" },
+            { "conversation_participants", "idx_participants_user", "CREATE INDEX idx_participants_user ON conversation_participants (user_id)" },
+            { "group_members", "idx_group_members_user", "CREATE INDEX idx_group_members_user ON group_members (user_id)" },
+            { "files", "idx_files_conversation", "CREATE INDEX idx_files_conversation ON files (conversation_id)" },
+            { "messages", "conversation_id:conversations", "ALTER TABLE messages ADD FOREIGN KEY (conversation_id) REFERENCES conversations(id)" },
+            { "messages", "sender_id:users", "ALTER TABLE messages ADD FOREIGN KEY (sender_id) REFERENCES users(id)" },
+            { "conversation_participants", "conversation_id:conversations", "ALTER TABLE conversation_participants ADD FOREIGN KEY (conversation_id) REFERENCES conversations(id)" },
+            { "conversation_participants", "user_id:users", "ALTER TABLE conversation_participants ADD FOREIGN KEY (user_id) REFERENCES users(id)" },
+            { "contacts", "user_id:users", "ALTER TABLE contacts ADD FOREIGN KEY (user_id) REFERENCES users(id)" },
+            { "contacts", "contact_id:users", "ALTER TABLE contacts ADD FOREIGN KEY (contact_id) REFERENCES users(id)" },
+            { "group_members", "group_id:user_groups", "ALTER TABLE group_members ADD FOREIGN KEY (group_id) REFERENCES user_groups(id)" },
+            { "group_members", "user_id:users", "ALTER TABLE group_members ADD FOREIGN KEY (user_id) REFERENCES users(id)" },
+            { "files", "conversation_id:conversations", "ALTER TABLE files ADD FOREIGN KEY (conversation_id) REFERENCES conversations(id)" },
+            { "files", "sender_id:users", "ALTER TABLE files ADD FOREIGN KEY (sender_id) REFERENCES users(id)" },
+            { "read_cursors", "user_id:users", "ALTER TABLE read_cursors ADD FOREIGN KEY (user_id) REFERENCES users(id)" },
+            { "read_cursors", "conversation_id:conversations", "ALTER TABLE read_cursors ADD FOREIGN KEY (conversation_id) REFERENCES conversations(id)" }
+    };
+
+    /**
+     * Migrate (or finish migrating) an old-schema database; a no-op on an up to date one
+     *
+     * @return false if the database could not be brought to the integer-key schema
+     */
+    public static boolean migrateIfNeeded() {
+        try (Connection conn = DatabaseManager.getConnection(DatabaseManager.Workload.ADMIN)) {
+            if (tableExists(conn, "conversations" + LEGACY_SUFFIX)) {
+                System.out.println("Finishing an interrupted integer key migration");
+                finish(conn);
+                return verify(conn);
+            }
+            if (!tableExists(conn, "conversations") || columnExists(conn, "conversations", "conversation_key")) {
+                return true;
+            }
+            return migrate(conn);
+        } catch (SQLException e) {
+            System.err.println("Integer key migration failed: " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static boolean migrate(Connection conn) throws SQLException {
+        System.out.println("Migrating to integer keys...");
+        report(conn, "before migration");
+        long started = System.currentTimeMillis();
+
+        // Staging tables of an interrupted copy are simply rebuilt
+        dropIfExists(conn, STAGING_SUFFIX);
+        try (Statement stmt = conn.createStatement()) {
+            for (String ddl : STAGING_DDL) {
+                stmt.execute(ddl);
+            }
+            for (String dml : COPY_DML) {
+                String staging = dml.substring(12, dml.indexOf(' ', 12));
+                if (!tableExists(conn, staging.substring(0, staging.length() - STAGING_SUFFIX.length()))) {
+                    System.out.println("  nothing to copy: " + staging);
+                    continue;
+                }
+                int rows = stmt.executeUpdate(dml);
+                System.out.println("  copied " + rows + " rows: " + staging);
+            }
+        }
+        for (String table : MIGRATED_TABLES) {
+            if (!tableExists(conn, table)) {
+                continue;
+            }
+            long before = count(conn, table);
+            long after = count(conn, table + STAGING_SUFFIX);
+            if (before != after) {
+                System.err.println("Integer key migration aborted: " + table + " has " + before
+                        + " rows but only " + after + " could be mapped; the database is unchanged");
+                dropIfExists(conn, STAGING_SUFFIX);
+                return false;
+            }
+        }
+
+        List<String[]> renames = new ArrayList<>();
+        for (String table : MIGRATED_TABLES) {
+            if (tableExists(conn, table)) {
+                renames.add(new String[]{ table, table + LEGACY_SUFFIX });
+            }
+            renames.add(new String[]{ table + STAGING_SUFFIX, table });
+        }
+        try (Statement stmt = conn.createStatement()) {
+            if (DatabaseConfig.isEmbedded()) {
+                for (String[] rename : renames) {
+                    stmt.execute("ALTER TABLE " + rename[0] + " RENAME TO " + rename[1]);
+                }
+            } else {
+                StringBuilder sql = new StringBuilder("RENAME TABLE ");
+                for (int i = 0; i < renames.size(); i++) {
+                    sql.append(i == 0 ? "" : ", ").append(renames.get(i)[0]).append(" TO ").append(renames.get(i)[1]);
+                }
+                stmt.execute(sql.toString());
+            }
+        }
+        finish(conn);
+        if (!verify(conn)) {
+            return false;
+        }
+
+        System.out.println("Integer key migration done in " + (System.currentTimeMillis() - started) + " ms");
+        report(conn, "after migration");
+        return true;
+    }
+
+    /**
+     * Check the migrated tables are all there and keyed on integers only
+     */
+    private static boolean verify(Connection conn) throws SQLException {
+        for (String table : MIGRATED_TABLES) {
+            if (!tableExists(conn, table)) {
+                System.err.println("Integer key migration incomplete: table " + table + " is missing");
+                return false;
+            }
+            for (String column : OLD_KEY_COLUMNS) {
+                if (columnExists(conn, table, column)) {
+                    System.err.println("Integer key migration incomplete: " + table + "." + column + " is still there");
+                    return false;
+                }
+            }
+        }
+        if (!columnExists(conn, "conversations", "conversation_key")) {
+            System.err.println("Integer key migration incomplete: conversations.conversation_key is missing");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Drop the old tables and add whatever secondary index or foreign key is still missing
+     */
+    private static void finish(Connection conn) throws SQLException {
+        // Old children reference conversations_legacy, so it goes last and marks the job as done
+        try (Statement stmt = conn.createStatement()) {
+            for (String table : MIGRATED_TABLES) {
+                if (!table.equals("conversations") && tableExists(conn, table + LEGACY_SUFFIX)) {
+                    stmt.execute("DROP TABLE " + table + LEGACY_SUFFIX);
+                }
+            }
+            for (String[] ddl : FINISH_DDL) {
+                if (!hasIndexOrKey(conn, ddl[0], ddl[1])) {
+                    stmt.execute(ddl[2]);
+                }
+            }
+            stmt.execute("DROP TABLE conversations" + LEGACY_SUFFIX);
+        }
+    }
+
+    /**
+     * Print row count, average row length, data and index size of each table. Exact on
+     * MySQL (after ANALYZE TABLE); the embedded database only reports total disk space.
+     */
+    public static void report(Connection conn, String label) throws SQLException {
+        System.out.println("Table sizes " + label + ":");
+        List<String> tables = new ArrayList<>();
+        for (String table : SIZED_TABLES) {
+            if (tableExists(conn, table)) {
+                tables.add(table);
+            }
+        }
+        if (DatabaseConfig.isEmbedded()) {
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT DISK_SPACE_USED(?)")) {
+                for (String table : tables) {
+                    stmt.setString(1, table);
+                    ResultSet rs = stmt.executeQuery();
+                    rs.next();
+                    System.out.println(String.format("  %-26s %8d rows %10d KB on disk",
+                            table, count(conn, table), rs.getLong(1) / 1024));
+                }
+            }
+            return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ANALYZE TABLE " + String.join(", ", tables));
+            ResultSet rs = stmt.executeQuery("SELECT table_name, table_rows, avg_row_length, data_length, index_length " +
+                    "FROM information_schema.tables WHERE table_schema = DATABASE() AND table_name IN ('" +
+                    String.join("', '", tables) + "') ORDER BY table_name");
+            while (rs.next()) {
+                System.out.println(String.format("  %-26s ~%8d rows %6d B/row %10d KB data %10d KB indexes",
+                        rs.getString(1), rs.getLong(2), rs.getLong(3), rs.getLong(4) / 1024, rs.getLong(5) / 1024));
+            }
+        }
+    }
+
+    private static void dropIfExists(Connection conn, String suffix) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String table : MIGRATED_TABLES) {
+                stmt.execute("DROP TABLE IF EXISTS " + table + suffix);
+            }
+        }
+    }
+
+    private static long count(Connection conn, String table) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static boolean tableExists(Connection conn, String table) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getTables(conn.getCatalog(), null, table, null)) {
+            return rs.next();
+        }
+    }
+
+    private static boolean columnExists(Connection conn, String table, String column) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getColumns(conn.getCatalog(), null, table, column)) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * @param name An index name, or "column:referenced_table" for a foreign key
+     */
+    private static boolean hasIndexOrKey(Connection conn, String table, String name) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        int colon = name.indexOf(':');
+        if (colon < 0) {
+            try (ResultSet rs = meta.getIndexInfo(conn.getCatalog(), null, table, false, false)) {
+                while (rs.next()) {
+                    if (name.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        try (ResultSet rs = meta.getImportedKeys(conn.getCatalog(), null, table)) {
+            while (rs.next()) {
+                if (name.substring(0, colon).equalsIgnoreCase(rs.getString("FKCOLUMN_NAME"))
+                        && name.substring(colon + 1).equalsIgnoreCase(rs.getString("PKTABLE_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Run the migration by hand (before starting a new server version on a big database),
+     * or print table sizes with "report"
+     */
+    public static void main(String[] args) throws SQLException {
+        if (args.length > 0 && args[0].equals("report")) {
+            try (Connection conn = DatabaseManager.getConnection(DatabaseManager.Workload.ADMIN)) {
+                report(conn, "now");
+            }
+        } else {
+            System.out.println("Integer key migration " + (migrateIfNeeded() ? "successful" : "failed"));
+        }
+        DatabaseManager.closePool();
+    }
+}
@@ -1,6 +1,8 @@
 package com.chatapp.data.service;
 
+import com.chatapp.data.dao.impl.UserDAOImpl;
 import com.chatapp.data.db.DatabaseUtils;
+import com.chatapp.data.db.KeyMigration;
 import com.chatapp.data.db.DatabaseManager;
 
 /**
@@ -22,12 +24,23 @@ public class DatabaseStartupService {
             return false;
         }
 
+        // Databases created before integer keys are converted once, before schema.sql adds
+        // tables whose integer keys would not match the old string keys
+        if (!KeyMigration.migrateIfNeeded()) {
+            System.err.println("Integer key migration failed.");
+            return false;
+        }
+
         // Initialize schema if needed
         if (!DatabaseUtils.initializeSchema()) {
             System.err.println("Schema initialization failed.");
             return false;
         }
 
+        // Existence checks for unknown emails no longer need the database
+        UserDirectory.getInstance().warmUp(new UserDAOImpl()::findAllEmails);
+        IdCache.getInstance().warmUp();
+
         System.out.println("Database initialized successfully");
         return true;
     }
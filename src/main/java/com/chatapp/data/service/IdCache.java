@@ -0,0 +1,160 @@
+package com.chatapp.data.service;
+
+import com.chatapp.data.db.DatabaseManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-process mapping between the string keys of the protocol (emails, conversation ids
+ * such as "a@x_b@y") and the integer keys the tables are joined on (users.id,
+ * conversations.id). A mapping never changes once assigned, so entries only go away when
+ * a user is deleted or the cache is full. Misses are resolved on the caller's connection,
+ * so a lookup never waits for a second pool connection.
+ */
+public class IdCache {
+    private static final int MAX_ENTRIES = 100000;
+    private static final IdCache instance = new IdCache();
+
+    private final Mapping users = new Mapping("SELECT id FROM users WHERE email = ?",
+            "SELECT email FROM users WHERE id = ?");
+    private final Mapping conversations = new Mapping("SELECT id FROM conversations WHERE conversation_key = ?",
+            "SELECT conversation_key FROM conversations WHERE id = ?");
+
+    private IdCache() {
+    }
+
+    public static IdCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Load the id of every user (up to the cache size), so reads rarely miss
+     */
+    public void warmUp() {
+        int loaded = 0;
+        try (Connection conn = DatabaseManager.getConnection(DatabaseManager.Workload.ADMIN);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, email FROM users")) {
+            while (rs.next() && loaded < MAX_ENTRIES) {
+                users.put(rs.getString("email"), rs.getInt("id"));
+                loaded++;
+            }
+            System.out.println("Id cache warmed up with " + loaded + " users");
+        } catch (SQLException e) {
+            System.err.println("Error warming up id cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return users.id of the email, 0 if there is no such user
+     */
+    public int userId(Connection conn, String email) throws SQLException {
+        return users.id(conn, email);
+    }
+
+    /**
+     * @return email of the user id, null if there is no such user
+     */
+    public String userEmail(Connection conn, int userId) throws SQLException {
+        return users.key(conn, userId);
+    }
+
+    /**
+     * @return conversations.id of the conversation key, 0 if it does not exist yet
+     */
+    public int conversationId(Connection conn, String conversationKey) throws SQLException {
+        return conversations.id(conn, conversationKey);
+    }
+
+    /**
+     * @return conversation key of the id, null if there is no such conversation
+     */
+    public String conversationKey(Connection conn, int conversationId) throws SQLException {
+        return conversations.key(conn, conversationId);
+    }
+
+    public void putUser(String email, int userId) {
+        users.put(email, userId);
+    }
+
+    public void forgetUser(String email) {
+        users.remove(email);
+    }
+
+    /**
+     * Both directions of one key space, each a bounded LRU
+     */
+    private static class Mapping {
+        private final String idQuery;
+        private final String keyQuery;
+        private final Map<String, Integer> ids = lru();
+        private final Map<Integer, String> keys = lru();
+
+        Mapping(String idQuery, String keyQuery) {
+            this.idQuery = idQuery;
+            this.keyQuery = keyQuery;
+        }
+
+        int id(Connection conn, String key) throws SQLException {
+            Integer id = ids.get(key);
+            if (id != null) {
+                return id;
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(idQuery)) {
+                stmt.setString(1, key);
+                ResultSet rs = stmt.executeQuery();
+                if (!rs.next()) {
+                    return 0;
+                }
+                int found = rs.getInt(1);
+                put(key, found);
+                return found;
+            }
+        }
+
+        String key(Connection conn, int id) throws SQLException {
+            String key = keys.get(id);
+            if (key != null) {
+                return key;
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(keyQuery)) {
+                stmt.setInt(1, id);
+                ResultSet rs = stmt.executeQuery();
+                if (!rs.next()) {
+                    return null;
+                }
+                String found = rs.getString(1);
+                put(found, id);
+                return found;
+            }
+        }
+
+        void put(String key, int id) {
+            ids.put(key, id);
+            keys.put(id, key);
+        }
+
+        void remove(String key) {
+            Integer id = ids.remove(key);
+            if (id != null) {
+                keys.remove(id);
+            }
+        }
+
+        private static <K, V> Map<K, V> lru() {
+            return Collections.synchronizedMap(new LinkedHashMap<K, V>(1024, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.chatapp.data.service;
+
+import com.chatapp.common.model.Message;
+import com.chatapp.data.dao.MessageDAO;
+import com.chatapp.data.storage.Storage;
+import com.chatapp.data.db.DatabaseManager;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local journal of messages that could not be written to the database (database down,
+ * circuit open, or any other failed write). Live delivery does not wait for it: messages
+ * are appended as JSON lines and replayed in batches once the database is available again.
+ * A message the database still refuses while available (e.g. already stored) is dropped
+ * with a log line.
+ */
+public class MessageSpool {
+    private static final Path JOURNAL = Paths.get("spool", "messages.journal");
+    // Journal being replayed; new messages keep going to JOURNAL meanwhile
+    private static final Path REPLAYING = Paths.get("spool", "messages.journal.replaying");
+    private static final long REPLAY_INTERVAL_MS = 2000;
+    private static final int REPLAY_BATCH = 500;
+    private static final MessageSpool instance = new MessageSpool();
+
+    private final MessageDAO messageDAO = Storage.messages();
+    private final AtomicLong backlog = new AtomicLong();
+    private final AtomicLong spooled = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long oldestSpooledAt;
+    private BufferedWriter writer;
+
+    private MessageSpool() {
+        try {
+            Files.createDirectories(JOURNAL.getParent());
+            // Leftovers of a previous run are replayed too
+            for (Path path : new Path[]{JOURNAL, REPLAYING}) {
+                if (Files.exists(path)) {
+                    try (java.util.stream.Stream<String> lines = Files.lines(path, StandardCharsets.UTF_8)) {
+                        backlog.addAndGet(lines.filter(line -> !line.isEmpty()).count());
+                    }
+                }
+            }
+            if (backlog.get() > 0) {
+                oldestSpooledAt = System.currentTimeMillis();
+                System.out.println("Message spool has " + backlog.get() + " messages from a previous run");
+            }
+        } catch (IOException e) {
+            System.err.println("Error opening message spool: " + e.getMessage());
+        }
+        ScheduledExecutorService replayer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "spool-replayer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        replayer.scheduleWithFixedDelay(this::replay, REPLAY_INTERVAL_MS, REPLAY_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public static MessageSpool getInstance() {
+        return instance;
+    }
+
+    /**
+     * Keep a message for later persistence
+     *
+     * @param participants Conversation participants to register on replay, if any
+     * @return false if even the journal could not be written
+     */
+    public synchronized boolean append(Message message, String... participants) {
+        JSONObject entry = new JSONObject();
+        entry.put("message", message.toJson());
+        entry.put("participants", new JSONArray(participants));
+        try {
+            if (writer == null) {
+                writer = Files.newBufferedWriter(JOURNAL, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.write(entry.toString());
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("Error spooling message " + message.getId() + ": " + e.getMessage());
+            return false;
+        }
+        if (backlog.getAndIncrement() == 0) {
+            oldestSpooledAt = System.currentTimeMillis();
+        }
+        spooled.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Messages waiting for the database
+     */
+    public long getBacklog() {
+        return backlog.get();
+    }
+
+    public String getStats() {
+        long waiting = backlog.get();
+        return "Message spool: " + waiting + " waiting"
+                + (waiting > 0 ? " (oldest " + (System.currentTimeMillis() - oldestSpooledAt) / 1000 + " s)" : "")
+                + ", " + spooled.get() + " spooled, " + replayed.get() + " replayed, " + dropped.get() + " dropped";
+    }
+
+    private void replay() {
+        if (backlog.get() == 0 || !DatabaseManager.isAvailable()) {
+            return;
+        }
+        try {
+            if (!Files.exists(REPLAYING)) {
+                rotate();
+            }
+            if (!Files.exists(REPLAYING)) {
+                return;
+            }
+            List<String> lines = Files.readAllLines(REPLAYING, StandardCharsets.UTF_8);
+            int done = 0;
+            while (done < lines.size()) {
+                List<String> chunk = lines.subList(done, Math.min(done + REPLAY_BATCH, lines.size()));
+                if (!replayBatch(chunk)) {
+                    // Database went away again: keep what is left for the next attempt
+                    Files.write(REPLAYING, lines.subList(done, lines.size()), StandardCharsets.UTF_8);
+                    System.out.println(getStats());
+                    return;
+                }
+                done += chunk.size();
+            }
+            Files.delete(REPLAYING);
+            if (backlog.get() > 0) {
+                oldestSpooledAt = System.currentTimeMillis();
+            }
+            System.out.println(getStats());
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error replaying message spool: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Move the current journal aside for replay; new messages start a fresh one
+     */
+    private synchronized void rotate() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+        if (Files.exists(JOURNAL)) {
+            Files.move(JOURNAL, REPLAYING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * @return false if the database is unavailable and nothing was consumed
+     */
+    private boolean replayBatch(List<String> lines) {
+        List<Message> messages = new ArrayList<>();
+        List<JSONObject> entries = new ArrayList<>();
+        for (String line : lines) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            try {
+                JSONObject entry = new JSONObject(line);
+                messages.add(Message.fromJson(entry.getJSONObject("message")));
+                entries.add(entry);
+            } catch (RuntimeException e) {
+                System.err.println("Dropping unreadable spool entry: " + e.getMessage());
+                backlog.decrementAndGet();
+                dropped.incrementAndGet();
+            }
+        }
+        if (messages.isEmpty()) {
+            return true;
+        }
+
+        int saved = messageDAO.saveBatch(messages);
+        if (saved == 0) {
+            if (!DatabaseManager.isAvailable()) {
+                return false;
+            }
+            // Database is up but refused the batch: go one by one, dropping what it refuses
+            for (Message message : messages) {
+                if (messageDAO.save(message)) {
+                    saved++;
+                } else if (!DatabaseManager.isAvailable()) {
+                    return false;
+                } else {
+                    System.err.println("Dropping spooled message " + message.getId() + " refused by the database");
+                    dropped.incrementAndGet();
+                    backlog.decrementAndGet();
+                }
+            }
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            JSONArray participants = entries.get(i).optJSONArray("participants");
+            if (participants != null && participants.length() > 0) {
+                List<String> emails = new ArrayList<>();
+                participants.forEach(email -> emails.add(email.toString()));
+                messageDAO.addParticipants(messages.get(i).getConversationId(), emails);
+            }
+        }
+        replayed.addAndGet(saved);
+        backlog.addAndGet(-saved);
+        return true;
+    }
+}
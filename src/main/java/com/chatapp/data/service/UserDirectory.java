@@ -0,0 +1,113 @@
+package com.chatapp.data.service;
+
+import com.chatapp.common.model.User;
+import com.chatapp.common.util.BloomFilter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * In-process user directory used by the user DAO: a bounded LRU cache of user rows
+ * and a bloom filter of every known email. Until the filter is warmed up it answers
+ * "might exist" for everything, so lookups simply fall through to the database.
+ * Deleted users stay in the filter; they just cost a database lookup again.
+ */
+public class UserDirectory {
+    private static final int MAX_CACHED_USERS = 50000;
+    private static final int MIN_FILTER_CAPACITY = 100000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final UserDirectory instance = new UserDirectory();
+
+    private final Map<String, User> users =
+            Collections.synchronizedMap(new LinkedHashMap<String, User>(1024, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, User> eldest) {
+                    return size() > MAX_CACHED_USERS;
+                }
+            });
+    private final Object filterLock = new Object();
+    private volatile BloomFilter knownEmails;
+    // Emails put while a filter is being built, added to it before it is published (filterLock)
+    private List<String> addedDuringWarmUp;
+
+    private UserDirectory() {
+    }
+
+    public static UserDirectory getInstance() {
+        return instance;
+    }
+
+    /**
+     * Build the bloom filter from every registered email. Users registered while the
+     * emails load are recorded from the start, so the new filter never misses one.
+     *
+     * @param loadAllEmails Reads every registered email
+     */
+    public void warmUp(Supplier<List<String>> loadAllEmails) {
+        synchronized (filterLock) {
+            addedDuringWarmUp = new ArrayList<>();
+        }
+        List<String> allEmails;
+        try {
+            allEmails = loadAllEmails.get();
+        } catch (RuntimeException e) {
+            synchronized (filterLock) {
+                addedDuringWarmUp = null;
+            }
+            throw e;
+        }
+        BloomFilter filter = new BloomFilter(Math.max(MIN_FILTER_CAPACITY, allEmails.size() * 2), FALSE_POSITIVE_RATE);
+        allEmails.forEach(filter::add);
+        synchronized (filterLock) {
+            addedDuringWarmUp.forEach(filter::add);
+            addedDuringWarmUp = null;
+            knownEmails = filter;
+        }
+        System.out.println("User directory warmed up with " + allEmails.size() + " emails");
+    }
+
+    /**
+     * @return false only if the email is definitely not a registered user
+     */
+    public boolean mightExist(String email) {
+        BloomFilter filter = knownEmails;
+        return filter == null || filter.mightContain(email);
+    }
+
+    /**
+     * Cached copy of a user, or null when not cached
+     */
+    public User get(String email) {
+        User user = users.get(email);
+        return user != null ? copy(user) : null;
+    }
+
+    /**
+     * Remember a user loaded from or written to the database
+     */
+    public void put(User user) {
+        synchronized (filterLock) {
+            BloomFilter filter = knownEmails;
+            if (filter != null) {
+                filter.add(user.getEmail());
+            }
+            if (addedDuringWarmUp != null) {
+                addedDuringWarmUp.add(user.getEmail());
+            }
+        }
+        users.put(user.getEmail(), copy(user));
+    }
+
+    public void invalidate(String email) {
+        users.remove(email);
+    }
+
+    private static User copy(User user) {
+        return new User(user.getUsername(), user.getPassword(), user.getEmail(),
+                user.getDisplayName(), user.getProfilePhoto(), user.getStatus());
+    }
+}
@@ -0,0 +1,47 @@
+package com.chatapp.data.storage;
+
+import com.chatapp.data.dao.FileDAO;
+import com.chatapp.data.dao.GroupDAO;
+import com.chatapp.data.dao.MessageDAO;
+import com.chatapp.data.dao.ReadCursorDAO;
+import com.chatapp.data.dao.impl.FileDAOImpl;
+import com.chatapp.data.dao.impl.GroupDAOImpl;
+import com.chatapp.data.dao.impl.MessageDAOImpl;
+import com.chatapp.data.dao.impl.ReadCursorDAOImpl;
+
+/**
+ * Default engine: everything in the SQL database through the JDBC DAOs
+ */
+public class JdbcStorageProvider implements StorageProvider {
+    public static final String NAME = "jdbc";
+
+    private final MessageDAO messageDAO = new MessageDAOImpl();
+    private final ReadCursorDAO readCursorDAO = new ReadCursorDAOImpl();
+    private final FileDAO fileDAO = new FileDAOImpl();
+    private final GroupDAO groupDAO = new GroupDAOImpl();
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public MessageDAO getMessageDAO() {
+        return messageDAO;
+    }
+
+    @Override
+    public ReadCursorDAO getReadCursorDAO() {
+        return readCursorDAO;
+    }
+
+    @Override
+    public FileDAO getFileDAO() {
+        return fileDAO;
+    }
+
+    @Override
+    public GroupDAO getGroupDAO() {
+        return groupDAO;
+    }
+}
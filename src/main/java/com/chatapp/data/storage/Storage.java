@@ -0,0 +1,72 @@
+package com.chatapp.data.storage;
+
+import com.chatapp.data.dao.FileDAO;
+import com.chatapp.data.dao.GroupDAO;
+import com.chatapp.data.dao.MessageDAO;
+import com.chatapp.data.dao.ReadCursorDAO;
+import com.chatapp.data.db.DatabaseConfig;
+
+import java.util.ServiceLoader;
+
+/**
+ * Access point to the storage engine selected with storage.engine ("jdbc" by default,
+ * "log" for the embedded log-structured store, or any other StorageProvider on the
+ * classpath). An unknown name falls back to jdbc.
+ */
+public class Storage {
+    private static final StorageProvider provider = load();
+
+    private Storage() {
+    }
+
+    private static StorageProvider load() {
+        String engine = DatabaseConfig.getStorageSetting("engine", JdbcStorageProvider.NAME);
+        StorageProvider selected = null;
+        for (StorageProvider candidate : ServiceLoader.load(StorageProvider.class)) {
+            if (candidate.getName().equals(engine)) {
+                selected = candidate;
+                break;
+            }
+        }
+        if (selected == null) {
+            if (!JdbcStorageProvider.NAME.equals(engine)) {
+                System.err.println("Unknown storage engine '" + engine + "', using " + JdbcStorageProvider.NAME);
+            }
+            selected = new JdbcStorageProvider();
+        }
+        selected.open();
+        System.out.println("Storage engine: " + selected.getName());
+        return selected;
+    }
+
+    public static String getEngine() {
+        return provider.getName();
+    }
+
+    /**
+     * Whether conversation data lives in the SQL database
+     */
+    public static boolean isJdbc() {
+        return provider instanceof JdbcStorageProvider;
+    }
+
+    public static MessageDAO messages() {
+        return provider.getMessageDAO();
+    }
+
+    public static ReadCursorDAO readCursors() {
+        return provider.getReadCursorDAO();
+    }
+
+    public static FileDAO files() {
+        return provider.getFileDAO();
+    }
+
+    public static GroupDAO groups() {
+        return provider.getGroupDAO();
+    }
+
+    public static void close() {
+        provider.close();
+    }
+}
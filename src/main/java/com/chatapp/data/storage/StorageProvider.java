@@ -0,0 +1,39 @@
+package com.chatapp.data.storage;
+
+import com.chatapp.data.dao.FileDAO;
+import com.chatapp.data.dao.GroupDAO;
+import com.chatapp.data.dao.MessageDAO;
+import com.chatapp.data.dao.ReadCursorDAO;
+
+/**
+ * Storage engine for conversation data: messages, read cursors, file metadata and groups.
+ * Users and contacts always stay in the SQL database. Implementations are discovered with
+ * ServiceLoader (META-INF/services) and selected by name with the storage.engine setting.
+ */
+public interface StorageProvider {
+
+    /**
+     * Name used to select this engine in storage.engine
+     */
+    String getName();
+
+    /**
+     * Open files, rebuild indexes and so on; called once before the DAOs are used
+     */
+    default void open() {
+    }
+
+    MessageDAO getMessageDAO();
+
+    ReadCursorDAO getReadCursorDAO();
+
+    FileDAO getFileDAO();
+
+    GroupDAO getGroupDAO();
+
+    /**
+     * Flush and release resources at shutdown
+     */
+    default void close() {
+    }
+}
@@ -0,0 +1,105 @@
+package com.chatapp.data.storage.log;
+
+import com.chatapp.common.model.FileMessage;
+import com.chatapp.data.dao.FileDAO;
+import org.json.JSONObject;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * File metadata in the log store; it is small, so all of it is served from memory
+ */
+class LogFileDAO implements FileDAO {
+    private final LogStore store;
+    private final LogIndex index;
+
+    LogFileDAO(LogStore store, LogIndex index) {
+        this.store = store;
+        this.index = index;
+    }
+
+    @Override
+    public boolean saveFileMetadata(FileMessage file) {
+        JSONObject record = file.toJson();
+        record.put("storedPath", file.getStoredPath());
+        return append(file.getId(), false, LogIndex.FILE, record);
+    }
+
+    @Override
+    public FileMessage getFileById(String fileId) {
+        index.lock.readLock().lock();
+        try {
+            FileMessage file = index.files.get(fileId);
+            return file != null ? copy(file) : null;
+        } finally {
+            index.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<FileMessage> getFilesByConversation(String conversationId) {
+        List<FileMessage> files = new ArrayList<>();
+        index.lock.readLock().lock();
+        try {
+            LogIndex.Conversation conversation = index.conversations.get(conversationId);
+            if (conversation != null) {
+                conversation.files.forEach(file -> files.add(copy(file)));
+            }
+        } finally {
+            index.lock.readLock().unlock();
+        }
+        return files;
+    }
+
+    @Override
+    public boolean updateFileStatus(String fileId, boolean delivered, boolean viewed) {
+        return append(fileId, true, LogIndex.FILE_STATUS,
+                new JSONObject().put("id", fileId).put("delivered", delivered).put("viewed", viewed));
+    }
+
+    @Override
+    public boolean deleteFile(String fileId) {
+        return append(fileId, true, LogIndex.FILE_DELETE, new JSONObject().put("id", fileId));
+    }
+
+    @Override
+    public List<JSONObject> getFileHistoryForConversation(String conversationId) {
+        List<JSONObject> files = new ArrayList<>();
+        for (FileMessage file : getFilesByConversation(conversationId)) {
+            files.add(file.toJson());
+        }
+        return files;
+    }
+
+    /**
+     * @param mustExist true for records about an existing file, false for a new one
+     */
+    private boolean append(String fileId, boolean mustExist, byte type, JSONObject record) {
+        try {
+            synchronized (store) {
+                index.lock.readLock().lock();
+                try {
+                    if (index.files.containsKey(fileId) != mustExist) {
+                        return false;
+                    }
+                } finally {
+                    index.lock.readLock().unlock();
+                }
+                store.append(type, record);
+                return true;
+            }
+        } catch (UncheckedIOException e) {
+            System.err.println("Log store error writing file " + fileId + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Callers may modify what they get; the index copy only changes through the log
+    private static FileMessage copy(FileMessage file) {
+        FileMessage copy = FileMessage.fromJson(file.toJson());
+        copy.setStoredPath(file.getStoredPath());
+        return copy;
+    }
+}
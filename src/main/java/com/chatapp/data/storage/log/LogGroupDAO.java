@@ -0,0 +1,161 @@
+package com.chatapp.data.storage.log;
+
+import com.chatapp.common.model.Group;
+import com.chatapp.data.dao.GroupDAO;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Groups in the log store, served from memory. Ids are assigned in log order.
+ */
+class LogGroupDAO implements GroupDAO {
+    private final LogStore store;
+    private final LogIndex index;
+
+    LogGroupDAO(LogStore store, LogIndex index) {
+        this.store = store;
+        this.index = index;
+    }
+
+    @Override
+    public boolean createGroup(Group group) {
+        try {
+            synchronized (store) {
+                int id;
+                index.lock.readLock().lock();
+                try {
+                    // Names are unique, like user_groups.name
+                    if (index.groupsByName.containsKey(group.getGroupName())) {
+                        System.err.println("Group already exists: " + group.getGroupName());
+                        return false;
+                    }
+                    id = index.lastGroupId + 1;
+                } finally {
+                    index.lock.readLock().unlock();
+                }
+                store.append(LogIndex.GROUP, new JSONObject()
+                        .put("id", id)
+                        .put("name", group.getGroupName())
+                        .put("members", new JSONArray(group.getMembersEmails())));
+                System.out.println("Group created successfully: " + group.getGroupName() + " with ID: " + id);
+                return true;
+            }
+        } catch (UncheckedIOException e) {
+            System.err.println("Log store error creating group: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public Group findGroupByName(String groupName) {
+        index.lock.readLock().lock();
+        try {
+            LogIndex.GroupState group = index.groupsByName.get(groupName);
+            return group != null ? toGroup(group) : null;
+        } finally {
+            index.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Group> getAllGroups() {
+        List<Group> groups = new ArrayList<>();
+        index.lock.readLock().lock();
+        try {
+            index.groups.values().forEach(group -> groups.add(toGroup(group)));
+        } finally {
+            index.lock.readLock().unlock();
+        }
+        return groups;
+    }
+
+    @Override
+    public List<Group> getGroupsByUser(String userEmail) {
+        List<Group> groups = new ArrayList<>();
+        index.lock.readLock().lock();
+        try {
+            for (LogIndex.GroupState group : index.groups.values()) {
+                if (group.members.contains(userEmail)) {
+                    groups.add(toGroup(group));
+                }
+            }
+        } finally {
+            index.lock.readLock().unlock();
+        }
+        return groups;
+    }
+
+    @Override
+    public boolean addMemberToGroup(int groupId, String userEmail) {
+        return appendMembership(groupId, userEmail, LogIndex.GROUP_MEMBER_ADD);
+    }
+
+    @Override
+    public boolean removeMemberFromGroup(int groupId, String userEmail) {
+        return appendMembership(groupId, userEmail, LogIndex.GROUP_MEMBER_REMOVE);
+    }
+
+    @Override
+    public List<String> getGroupMembers(int groupId) {
+        index.lock.readLock().lock();
+        try {
+            LogIndex.GroupState group = index.groups.get(groupId);
+            return group != null ? new ArrayList<>(group.members) : new ArrayList<>();
+        } finally {
+            index.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteGroup(int groupId) {
+        try {
+            synchronized (store) {
+                index.lock.readLock().lock();
+                try {
+                    if (!index.groups.containsKey(groupId)) {
+                        return false;
+                    }
+                } finally {
+                    index.lock.readLock().unlock();
+                }
+                store.append(LogIndex.GROUP_DELETE, new JSONObject().put("id", groupId));
+                return true;
+            }
+        } catch (UncheckedIOException e) {
+            System.err.println("Log store error deleting group: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return false when the group is unknown or the change would do nothing
+     */
+    private boolean appendMembership(int groupId, String userEmail, byte type) {
+        try {
+            synchronized (store) {
+                index.lock.readLock().lock();
+                try {
+                    LogIndex.GroupState group = index.groups.get(groupId);
+                    if (group == null || group.members.contains(userEmail) == (type == LogIndex.GROUP_MEMBER_ADD)) {
+                        return false;
+                    }
+                } finally {
+                    index.lock.readLock().unlock();
+                }
+                store.append(type, new JSONObject().put("id", groupId).put("email", userEmail));
+                return true;
+            }
+        } catch (UncheckedIOException e) {
+            System.err.println("Log store error changing group membership: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static Group toGroup(LogIndex.GroupState group) {
+        return new Group(group.name, new ArrayList<>(group.members));
+    }
+}
@@ -0,0 +1,273 @@
+package com.chatapp.data.storage.log;
+
+import com.chatapp.common.model.FileMessage;
+import com.chatapp.common.model.ReadCursor;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory indexes over the log, rebuilt from it at startup: per-conversation message
+ * entries in timestamp order (message bodies stay on disk), participants, read cursors,
+ * file metadata and groups. Mutated only by apply(), in log order; readers hold the read lock.
+ */
+class LogIndex implements LogStore.RecordHandler {
+    // Record types
+    static final byte MESSAGE = 1;
+    static final byte MESSAGE_STATUS = 2;
+    static final byte MESSAGE_DELETE = 3;
+    static final byte PARTICIPANTS = 4;
+    static final byte CURSOR = 5;
+    static final byte FILE = 6;
+    static final byte FILE_STATUS = 7;
+    static final byte FILE_DELETE = 8;
+    static final byte GROUP = 9;
+    static final byte GROUP_MEMBER_ADD = 10;
+    static final byte GROUP_MEMBER_REMOVE = 11;
+    static final byte GROUP_DELETE = 12;
+
+    /**
+     * Where a message lives in the log, plus what queries filter on
+     */
+    static class Entry {
+        final String id;
+        final String conversationId;
+        final String sender;
+        final long timestamp;
+        final long position;
+        // Latest status from MESSAGE_STATUS records, null while it is the stored one
+        String status;
+
+        Entry(String id, String conversationId, String sender, long timestamp, long position) {
+            this.id = id;
+            this.conversationId = conversationId;
+            this.sender = sender;
+            this.timestamp = timestamp;
+            this.position = position;
+        }
+    }
+
+    static class Conversation {
+        final String id;
+        final boolean group;
+        // Ordered by timestamp, as history queries return them
+        final List<Entry> entries = new ArrayList<>();
+        final Set<String> participants = new LinkedHashSet<>();
+        final List<FileMessage> files = new ArrayList<>();
+
+        Conversation(String id) {
+            this.id = id;
+            this.group = id.startsWith("group_");
+        }
+    }
+
+    /**
+     * Position of a user in a conversation; deliveredId is null for the whole millisecond
+     */
+    static class Cursor {
+        long delivered;
+        String deliveredId;
+        long read;
+
+        Cursor copy() {
+            Cursor copy = new Cursor();
+            copy.delivered = delivered;
+            copy.deliveredId = deliveredId;
+            copy.read = read;
+            return copy;
+        }
+    }
+
+    static class GroupState {
+        final int id;
+        final String name;
+        final Set<String> members = new LinkedHashSet<>();
+
+        GroupState(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    final ReadWriteLock lock = new ReentrantReadWriteLock();
+    final Map<String, Conversation> conversations = new HashMap<>();
+    final Map<String, Entry> messages = new HashMap<>();
+    final Map<String, Set<String>> conversationsByUser = new HashMap<>();
+    // user -> conversation -> cursor
+    final Map<String, Map<String, Cursor>> cursors = new HashMap<>();
+    final Map<String, FileMessage> files = new HashMap<>();
+    final Map<Integer, GroupState> groups = new LinkedHashMap<>();
+    final Map<String, GroupState> groupsByName = new HashMap<>();
+    int lastGroupId;
+
+    @Override
+    public void apply(byte type, JSONObject record, long position) {
+        lock.writeLock().lock();
+        try {
+            switch (type) {
+                case MESSAGE:
+                    addMessage(record, position);
+                    break;
+                case MESSAGE_STATUS: {
+                    Entry entry = messages.get(record.getString("id"));
+                    if (entry != null) {
+                        entry.status = record.getString("status");
+                    }
+                    break;
+                }
+                case MESSAGE_DELETE: {
+                    Entry entry = messages.remove(record.getString("id"));
+                    if (entry != null) {
+                        conversations.get(entry.conversationId).entries.remove(entry);
+                    }
+                    break;
+                }
+                case PARTICIPANTS: {
+                    Conversation conversation = conversation(record.getString("conversationId"));
+                    JSONArray emails = record.getJSONArray("emails");
+                    for (int i = 0; i < emails.length(); i++) {
+                        addParticipant(conversation, emails.getString(i));
+                    }
+                    break;
+                }
+                case CURSOR: {
+                    Cursor cursor = cursors.computeIfAbsent(record.getString("user"), user -> new HashMap<>())
+                            .computeIfAbsent(record.getString("conversationId"), id -> new Cursor());
+                    // Cursors only move forward
+                    long delivered = record.getLong("delivered");
+                    String deliveredId = record.optString("deliveredId", null);
+                    if (ReadCursor.isAfter(delivered, deliveredId, cursor.delivered, cursor.deliveredId)) {
+                        cursor.delivered = delivered;
+                        cursor.deliveredId = deliveredId;
+                    }
+                    cursor.read = Math.max(cursor.read, record.getLong("read"));
+                    break;
+                }
+                case FILE: {
+                    FileMessage file = FileMessage.fromJson(record);
+                    file.setStoredPath(record.optString("storedPath", null));
+                    files.put(file.getId(), file);
+                    List<FileMessage> conversationFiles = conversation(file.getConversationId()).files;
+                    conversationFiles.add(insertionPoint(conversationFiles, file.getTimestamp()), file);
+                    break;
+                }
+                case FILE_STATUS: {
+                    FileMessage file = files.get(record.getString("id"));
+                    if (file != null) {
+                        file.setDelivered(record.getBoolean("delivered"));
+                        file.setViewed(record.getBoolean("viewed"));
+                    }
+                    break;
+                }
+                case FILE_DELETE: {
+                    FileMessage file = files.remove(record.getString("id"));
+                    if (file != null) {
+                        conversations.get(file.getConversationId()).files.remove(file);
+                    }
+                    break;
+                }
+                case GROUP: {
+                    GroupState group = new GroupState(record.getInt("id"), record.getString("name"));
+                    JSONArray members = record.getJSONArray("members");
+                    for (int i = 0; i < members.length(); i++) {
+                        group.members.add(members.getString(i));
+                    }
+                    groups.put(group.id, group);
+                    groupsByName.put(group.name, group);
+                    lastGroupId = Math.max(lastGroupId, group.id);
+                    break;
+                }
+                case GROUP_MEMBER_ADD:
+                case GROUP_MEMBER_REMOVE: {
+                    GroupState group = groups.get(record.getInt("id"));
+                    if (group != null) {
+                        if (type == GROUP_MEMBER_ADD) {
+                            group.members.add(record.getString("email"));
+                        } else {
+                            group.members.remove(record.getString("email"));
+                        }
+                    }
+                    break;
+                }
+                case GROUP_DELETE: {
+                    GroupState group = groups.remove(record.getInt("id"));
+                    if (group != null) {
+                        groupsByName.remove(group.name);
+                    }
+                    break;
+                }
+                default:
+                    System.err.println("Log store: skipping record of unknown type " + type);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void addMessage(JSONObject record, long position) {
+        String id = record.getString("id");
+        if (messages.containsKey(id)) {
+            return;
+        }
+        Conversation conversation = conversation(record.getString("conversationId"));
+        Entry entry = new Entry(id, conversation.id, record.getString("sender"), record.getLong("timestamp"), position);
+        messages.put(id, entry);
+        // Nearly always an append at the end
+        int index = conversation.entries.size();
+        while (index > 0 && conversation.entries.get(index - 1).timestamp > entry.timestamp) {
+            index--;
+        }
+        conversation.entries.add(index, entry);
+    }
+
+    /**
+     * Conversation by id, created on first use; a new group conversation gets the
+     * group's members as participants
+     */
+    Conversation conversation(String conversationId) {
+        Conversation conversation = conversations.get(conversationId);
+        if (conversation == null) {
+            conversation = new Conversation(conversationId);
+            conversations.put(conversationId, conversation);
+            GroupState group = conversation.group ? groupsByName.get(conversationId.substring(6)) : null;
+            if (group != null) {
+                for (String member : group.members) {
+                    addParticipant(conversation, member);
+                }
+            }
+        }
+        return conversation;
+    }
+
+    private void addParticipant(Conversation conversation, String email) {
+        if (conversation.participants.add(email)) {
+            conversationsByUser.computeIfAbsent(email, user -> new LinkedHashSet<>()).add(conversation.id);
+        }
+    }
+
+    private static int insertionPoint(List<FileMessage> files, long timestamp) {
+        int index = files.size();
+        while (index > 0 && files.get(index - 1).getTimestamp() > timestamp) {
+            index--;
+        }
+        return index;
+    }
+
+    /**
+     * Copy of the cursor of a user in a conversation, all zero when there is none
+     */
+    Cursor cursor(String userEmail, String conversationId) {
+        Map<String, Cursor> userCursors = cursors.get(userEmail);
+        Cursor cursor = userCursors != null ? userCursors.get(conversationId) : null;
+        return cursor != null ? cursor.copy() : new Cursor();
+    }
+}
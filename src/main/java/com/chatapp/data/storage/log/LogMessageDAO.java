@@ -0,0 +1,355 @@
+package com.chatapp.data.storage.log;
+
+import com.chatapp.common.model.ConversationSummary;
+import com.chatapp.common.model.Message;
+import com.chatapp.common.model.ReadCursor;
+import com.chatapp.data.dao.MessageDAO;
+import com.chatapp.data.dao.UserDAO;
+import com.chatapp.data.dao.impl.UserDAOImpl;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Messages in the log store. Writes are one appended record; reads take the matching
+ * entries from the conversation index and read only those records back; the recent tail
+ * of a conversation is usually still in the store's record cache.
+ */
+class LogMessageDAO implements MessageDAO {
+    // Upper bound of one catch-up batch, as in the JDBC store
+    private static final int MAX_OFFLINE_MESSAGES = 1000;
+
+    private final LogStore store;
+    private final LogIndex index;
+    // Registration times for the broadcast catch-up still come from the users table
+    private final UserDAO userDAO = new UserDAOImpl();
+
+    LogMessageDAO(LogStore store, LogIndex index) {
+        this.store = store;
+        this.index = index;
+    }
+
+    @Override
+    public boolean save(Message message) {
+        List<Message> single = new ArrayList<>(1);
+        single.add(message);
+        return saveBatch(single) == 1;
+    }
+
+    @Override
+    public int saveBatch(List<Message> messages) {
+        List<JSONObject> records = new ArrayList<>(messages.size());
+        try {
+            synchronized (store) {
+                Set<String> ids = new HashSet<>();
+                index.lock.readLock().lock();
+                try {
+                    for (Message message : messages) {
+                        // Ids are unique, like the messages primary key
+                        if (!index.messages.containsKey(message.getId()) && ids.add(message.getId())) {
+                            records.add(message.toJson());
+                        }
+                    }
+                } finally {
+                    index.lock.readLock().unlock();
+                }
+                if (!records.isEmpty()) {
+                    store.appendAll(LogIndex.MESSAGE, records);
+                }
+            }
+            return records.size();
+        } catch (UncheckedIOException | IllegalArgumentException e) {
+            System.err.println("Log store error saving " + messages.size() + " messages: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    @Override
+    public List<JSONObject> getConversationHistory(String user1, String user2) {
+        String conversationId = user1.compareTo(user2) > 0 ? user2 + "_" + user1 : user1 + "_" + user2;
+        List<JSONObject> messages = new ArrayList<>();
+        for (LogIndex.Entry entry : entries(conversationId, Integer.MAX_VALUE)) {
+            messages.add(select(read(entry), "id", "sender", "conversationId", "content", "type", "timestamp",
+                    "delivered", "read"));
+        }
+        return messages;
+    }
+
+    @Override
+    public boolean updateStatus(String messageId, Message.Status status) {
+        return append(messageId, LogIndex.MESSAGE_STATUS, new JSONObject().put("id", messageId).put("status", status.name()));
+    }
+
+    @Override
+    public List<String> getOfflineMessages(String userEmail) {
+        List<LogIndex.Entry> pending = new ArrayList<>();
+        index.lock.readLock().lock();
+        try {
+            Set<String> conversationIds = index.conversationsByUser.get(userEmail);
+            if (conversationIds != null) {
+                for (String conversationId : conversationIds) {
+                    LogIndex.Cursor cursor = index.cursor(userEmail, conversationId);
+                    collectAfter(index.conversations.get(conversationId), cursor.delivered, cursor.deliveredId,
+                            userEmail, pending);
+                }
+            }
+        } finally {
+            index.lock.readLock().unlock();
+        }
+        pending.sort(Comparator.comparingLong((LogIndex.Entry entry) -> entry.timestamp).thenComparing(entry -> entry.id));
+        List<String> messages = new ArrayList<>();
+        for (LogIndex.Entry entry : pending.subList(0, Math.min(pending.size(), MAX_OFFLINE_MESSAGES))) {
+            messages.add(select(read(entry), "id", "sender", "conversationId", "content", "type", "status",
+                    "timestamp", "delivered", "read").toString());
+        }
+        return messages;
+    }
+
+    @Override
+    public List<String> getBroadcastsAfterCursor(String userEmail) {
+        LogIndex.Cursor cursor;
+        index.lock.readLock().lock();
+        try {
+            cursor = index.cursor(userEmail, "broadcast");
+        } finally {
+            index.lock.readLock().unlock();
+        }
+        long delivered = cursor.delivered;
+        if (delivered == 0) {
+            // No cursor yet: everything since registration
+            delivered = userDAO.getCreatedAt(userEmail);
+            if (delivered < 0) {
+                return new ArrayList<>();
+            }
+        }
+        List<LogIndex.Entry> pending = new ArrayList<>();
+        index.lock.readLock().lock();
+        try {
+            collectAfter(index.conversations.get("broadcast"), delivered, cursor.deliveredId, userEmail, pending);
+        } finally {
+            index.lock.readLock().unlock();
+        }
+        pending.sort(Comparator.comparingLong((LogIndex.Entry entry) -> entry.timestamp).thenComparing(entry -> entry.id));
+        List<String> messages = new ArrayList<>();
+        for (LogIndex.Entry entry : pending.subList(0, Math.min(pending.size(), MAX_OFFLINE_MESSAGES))) {
+            messages.add(select(read(entry), "id", "sender", "conversationId", "content", "type", "status",
+                    "timestamp").toString());
+        }
+        return messages;
+    }
+
+    @Override
+    public boolean addParticipants(String conversationId, List<String> userEmails) {
+        try {
+            synchronized (store) {
+                List<String> missing = new ArrayList<>();
+                boolean known;
+                index.lock.readLock().lock();
+                try {
+                    LogIndex.Conversation conversation = index.conversations.get(conversationId);
+                    known = conversation != null;
+                    for (String email : userEmails) {
+                        if (conversation == null || !conversation.participants.contains(email)) {
+                            missing.add(email);
+                        }
+                    }
+                } finally {
+                    index.lock.readLock().unlock();
+                }
+                if (!missing.isEmpty() || !known) {
+                    store.append(LogIndex.PARTICIPANTS,
+                            new JSONObject().put("conversationId", conversationId).put("emails", new JSONArray(missing)));
+                }
+            }
+            return true;
+        } catch (UncheckedIOException e) {
+            System.err.println("Log store error adding conversation participants: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public List<ConversationSummary> getConversationSummaries(String userEmail) {
+        List<ConversationSummary> summaries = new ArrayList<>();
+        List<LogIndex.Entry> lastEntries = new ArrayList<>();
+        index.lock.readLock().lock();
+        try {
+            Set<String> conversationIds = index.conversationsByUser.get(userEmail);
+            if (conversationIds == null) {
+                return summaries;
+            }
+            for (String conversationId : conversationIds) {
+                LogIndex.Conversation conversation = index.conversations.get(conversationId);
+                if (conversation.entries.isEmpty()) {
+                    continue;
+                }
+                long readTs = index.cursor(userEmail, conversationId).read;
+                int unread = 0;
+                for (int i = conversation.entries.size() - 1; i >= 0 && conversation.entries.get(i).timestamp > readTs; i--) {
+                    if (!userEmail.equals(conversation.entries.get(i).sender)) {
+                        unread++;
+                    }
+                }
+                ConversationSummary summary = new ConversationSummary(conversationId, null, conversation.group);
+                summary.setUnreadCount(unread);
+                summaries.add(summary);
+                lastEntries.add(conversation.entries.get(conversation.entries.size() - 1));
+            }
+        } finally {
+            index.lock.readLock().unlock();
+        }
+        for (int i = 0; i < summaries.size(); i++) {
+            JSONObject last = read(lastEntries.get(i));
+            summaries.get(i).setLastSender(last.getString("sender"));
+            summaries.get(i).setLastPreview(ConversationSummary.preview(last.getString("content")));
+            summaries.get(i).setLastTimestamp(last.getLong("timestamp"));
+        }
+        return summaries;
+    }
+
+    @Override
+    public int countUnread(String userEmail, String conversationId, long after) {
+        index.lock.readLock().lock();
+        try {
+            LogIndex.Conversation conversation = index.conversations.get(conversationId);
+            if (conversation == null) {
+                return 0;
+            }
+            int unread = 0;
+            for (int i = conversation.entries.size() - 1; i >= 0 && conversation.entries.get(i).timestamp > after; i--) {
+                if (!userEmail.equals(conversation.entries.get(i).sender)) {
+                    unread++;
+                }
+            }
+            return unread;
+        } finally {
+            index.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<JSONObject> getGroupMessages(String groupConversationId) {
+        if (!groupConversationId.startsWith("group_")) {
+            groupConversationId = "group_" + groupConversationId;
+        }
+        List<JSONObject> messages = new ArrayList<>();
+        for (LogIndex.Entry entry : entries(groupConversationId, Integer.MAX_VALUE)) {
+            JSONObject message = select(read(entry), "id", "sender", "conversationId", "content", "type", "timestamp",
+                    "delivered", "read");
+            message.put("isGroup", true);
+            message.put("groupName", groupConversationId.substring(6));
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    @Override
+    public List<JSONObject> getRecentMessages(String conversationId, int limit) {
+        List<JSONObject> messages = new ArrayList<>();
+        for (LogIndex.Entry entry : entries(conversationId, limit)) {
+            messages.add(select(read(entry), "id", "sender", "content", "type", "timestamp"));
+        }
+        return messages;
+    }
+
+    @Override
+    public boolean deleteMessage(String messageId) {
+        return append(messageId, LogIndex.MESSAGE_DELETE, new JSONObject().put("id", messageId));
+    }
+
+    /**
+     * Append a record about an existing message
+     *
+     * @return false if there is no such message
+     */
+    private boolean append(String messageId, byte type, JSONObject record) {
+        try {
+            synchronized (store) {
+                index.lock.readLock().lock();
+                try {
+                    if (!index.messages.containsKey(messageId)) {
+                        return false;
+                    }
+                } finally {
+                    index.lock.readLock().unlock();
+                }
+                store.append(type, record);
+                return true;
+            }
+        } catch (UncheckedIOException e) {
+            System.err.println("Log store error updating message " + messageId + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Newest "limit" entries of a conversation, oldest first
+     */
+    private List<LogIndex.Entry> entries(String conversationId, int limit) {
+        index.lock.readLock().lock();
+        try {
+            LogIndex.Conversation conversation = index.conversations.get(conversationId);
+            if (conversation == null) {
+                return new ArrayList<>();
+            }
+            int size = conversation.entries.size();
+            return new ArrayList<>(conversation.entries.subList(Math.max(0, size - limit), size));
+        } finally {
+            index.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Entries after a delivered position (timestamp, id) that the user did not send;
+     * caller holds the read lock
+     */
+    private static void collectAfter(LogIndex.Conversation conversation, long after, String afterId, String userEmail,
+                                     List<LogIndex.Entry> into) {
+        if (conversation == null) {
+            return;
+        }
+        int start = conversation.entries.size();
+        while (start > 0 && conversation.entries.get(start - 1).timestamp >= after) {
+            start--;
+        }
+        for (LogIndex.Entry entry : conversation.entries.subList(start, conversation.entries.size())) {
+            if (!userEmail.equals(entry.sender) && ReadCursor.isAfter(entry.timestamp, entry.id, after, afterId)) {
+                into.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Stored message with its latest status applied
+     */
+    private JSONObject read(LogIndex.Entry entry) {
+        JSONObject message = store.read(entry.position);
+        String status;
+        index.lock.readLock().lock();
+        try {
+            status = entry.status;
+        } finally {
+            index.lock.readLock().unlock();
+        }
+        if (status != null) {
+            message.put("status", status);
+            message.put("delivered", status.equals("DELIVERED") || status.equals("READ"));
+            message.put("read", status.equals("READ"));
+        }
+        return message;
+    }
+
+    private static JSONObject select(JSONObject message, String... keys) {
+        JSONObject selected = new JSONObject();
+        for (String key : keys) {
+            selected.put(key, message.opt(key));
+        }
+        return selected;
+    }
+}
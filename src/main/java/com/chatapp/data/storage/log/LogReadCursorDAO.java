@@ -0,0 +1,84 @@
+package com.chatapp.data.storage.log;
+
+import com.chatapp.common.model.ReadCursor;
+import com.chatapp.data.dao.ReadCursorDAO;
+import org.json.JSONObject;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read cursors in the log store: each move is a small record, folded with max() on replay
+ */
+class LogReadCursorDAO implements ReadCursorDAO {
+    private final LogStore store;
+    private final LogIndex index;
+
+    LogReadCursorDAO(LogStore store, LogIndex index) {
+        this.store = store;
+        this.index = index;
+    }
+
+    @Override
+    public List<ReadCursor> getCursors(String userEmail) {
+        List<ReadCursor> cursors = new ArrayList<>();
+        index.lock.readLock().lock();
+        try {
+            Map<String, LogIndex.Cursor> userCursors = index.cursors.get(userEmail);
+            if (userCursors != null) {
+                userCursors.forEach((conversationId, cursor) -> cursors.add(new ReadCursor(userEmail, conversationId,
+                        cursor.delivered, cursor.deliveredId, cursor.read)));
+            }
+        } finally {
+            index.lock.readLock().unlock();
+        }
+        return cursors;
+    }
+
+    @Override
+    public ReadCursor getCursor(String userEmail, String conversationId) {
+        index.lock.readLock().lock();
+        try {
+            LogIndex.Cursor cursor = index.cursor(userEmail, conversationId);
+            return new ReadCursor(userEmail, conversationId, cursor.delivered, cursor.deliveredId, cursor.read);
+        } finally {
+            index.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean advanceBatch(List<ReadCursor> cursors) {
+        List<JSONObject> records = new ArrayList<>();
+        try {
+            synchronized (store) {
+                index.lock.readLock().lock();
+                try {
+                    for (ReadCursor cursor : cursors) {
+                        LogIndex.Cursor current = index.cursor(cursor.getUserEmail(), cursor.getConversationId());
+                        // Moves that change nothing are not logged
+                        if (ReadCursor.isAfter(cursor.getDeliveredTimestamp(), cursor.getDeliveredId(),
+                                current.delivered, current.deliveredId) || cursor.getReadTimestamp() > current.read) {
+                            records.add(new JSONObject()
+                                    .put("user", cursor.getUserEmail())
+                                    .put("conversationId", cursor.getConversationId())
+                                    .put("delivered", cursor.getDeliveredTimestamp())
+                                    .put("deliveredId", cursor.getDeliveredId())
+                                    .put("read", cursor.getReadTimestamp()));
+                        }
+                    }
+                } finally {
+                    index.lock.readLock().unlock();
+                }
+                if (!records.isEmpty()) {
+                    store.appendAll(LogIndex.CURSOR, records);
+                }
+            }
+            return true;
+        } catch (UncheckedIOException e) {
+            System.err.println("Log store error advancing read cursors: " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.chatapp.data.storage.log;
+
+import com.chatapp.data.dao.FileDAO;
+import com.chatapp.data.dao.GroupDAO;
+import com.chatapp.data.dao.MessageDAO;
+import com.chatapp.data.dao.ReadCursorDAO;
+import com.chatapp.data.db.DatabaseConfig;
+import com.chatapp.data.storage.StorageProvider;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+
+/**
+ * Embedded log-structured engine (storage.engine=log): conversation data is appended to
+ * segment files under storage.log.dir and indexed in memory, with no SQL round trips.
+ * No ad-hoc queries, and superseded records are not compacted away.
+ *
+ * Settings: storage.log.dir (default "logstore"), storage.log.segmentMb (default 64),
+ * storage.log.fsyncMs (default 1000, 0 = fsync every append), storage.log.cacheRecords
+ * (default 10000 parsed records kept in memory).
+ */
+public class LogStorageProvider implements StorageProvider {
+    public static final String NAME = "log";
+
+    private final LogIndex index = new LogIndex();
+    private LogStore store;
+    private MessageDAO messageDAO;
+    private ReadCursorDAO readCursorDAO;
+    private FileDAO fileDAO;
+    private GroupDAO groupDAO;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void open() {
+        store = new LogStore(Paths.get(DatabaseConfig.getStorageSetting("log.dir", "logstore")),
+                Long.parseLong(DatabaseConfig.getStorageSetting("log.segmentMb", "64")) * 1024 * 1024,
+                Long.parseLong(DatabaseConfig.getStorageSetting("log.fsyncMs", "1000")),
+                Integer.parseInt(DatabaseConfig.getStorageSetting("log.cacheRecords", "10000")));
+        try {
+            store.open(index);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open log store", e);
+        }
+        messageDAO = new LogMessageDAO(store, index);
+        readCursorDAO = new LogReadCursorDAO(store, index);
+        fileDAO = new LogFileDAO(store, index);
+        groupDAO = new LogGroupDAO(store, index);
+    }
+
+    @Override
+    public MessageDAO getMessageDAO() {
+        return messageDAO;
+    }
+
+    @Override
+    public ReadCursorDAO getReadCursorDAO() {
+        return readCursorDAO;
+    }
+
+    @Override
+    public FileDAO getFileDAO() {
+        return fileDAO;
+    }
+
+    @Override
+    public GroupDAO getGroupDAO() {
+        return groupDAO;
+    }
+
+    @Override
+    public void close() {
+        store.close();
+    }
+}
@@ -0,0 +1,336 @@
+package com.chatapp.data.storage.log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only record log split into numbered segment files. A record is
+ * [payload length][CRC32 of type and payload][type][JSON payload]; its position is the
+ * segment number and offset packed into a long. Records are never rewritten: updates and
+ * deletes are new records. On open every segment is scanned once to rebuild the indexes,
+ * and a torn or corrupt tail (crash mid-write) is truncated.
+ *
+ * Writes go straight to the OS, so a process crash loses nothing; fsyncMs bounds what a
+ * host crash can lose (0 forces every append to disk).
+ */
+public class LogStore {
+    private static final int HEADER_BYTES = 9;
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+    private static final int READ_AHEAD_BYTES = 1024;
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    /**
+     * Receives every record, in log order, at recovery and after each append
+     */
+    public interface RecordHandler {
+        void apply(byte type, JSONObject record, long position);
+    }
+
+    private static class Segment {
+        final int number;
+        final FileChannel channel;
+        volatile long size;
+
+        Segment(int number, FileChannel channel, long size) {
+            this.number = number;
+            this.channel = channel;
+            this.size = size;
+        }
+    }
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long fsyncMs;
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private RecordHandler handler;
+    private Segment active;
+    private volatile boolean dirty;
+
+    // Recently appended or read records by position, so the hot tail is not re-read and re-parsed
+    private final Map<Long, JSONObject> cache;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong appendedBytes = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private long lastReported;
+
+    public LogStore(Path directory, long segmentBytes, long fsyncMs, int cacheRecords) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsyncMs = fsyncMs;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<Long, JSONObject>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, JSONObject> eldest) {
+                return size() > cacheRecords;
+            }
+        });
+    }
+
+    /**
+     * Open (or create) the log and replay every record into the handler
+     */
+    public synchronized void open(RecordHandler handler) throws IOException {
+        this.handler = handler;
+        Files.createDirectories(directory);
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> listing = Files.list(directory)) {
+            listing.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().forEach(files::add);
+        }
+
+        long started = System.currentTimeMillis();
+        long records = 0;
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            int number = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(number, channel, channel.size());
+            segments.put(number, segment);
+            records += recover(segment, file);
+            active = segment;
+        }
+        if (active == null) {
+            active = createSegment(0);
+        }
+        System.out.println("Log store opened: " + segments.size() + " segments, " + records + " records replayed in "
+                + (System.currentTimeMillis() - started) + " ms");
+
+        ScheduledExecutorService syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "log-store-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (fsyncMs > 0) {
+            syncer.scheduleWithFixedDelay(this::sync, fsyncMs, fsyncMs, TimeUnit.MILLISECONDS);
+        }
+        syncer.scheduleWithFixedDelay(this::report, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Scan one segment, applying valid records and cutting off anything after the first bad one
+     */
+    private long recover(Segment segment, Path file) throws IOException {
+        long position = 0;
+        long records = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            while (position + HEADER_BYTES <= segment.size) {
+                int length = in.readInt();
+                int crc = in.readInt();
+                byte type = in.readByte();
+                if (length < 0 || length > MAX_RECORD_BYTES || position + HEADER_BYTES + length > segment.size) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                if (crc != checksum(type, payload)) {
+                    break;
+                }
+                JSONObject record;
+                try {
+                    record = new JSONObject(new String(payload, StandardCharsets.UTF_8));
+                } catch (JSONException e) {
+                    break;
+                }
+                handler.apply(type, record, (long) segment.number << OFFSET_BITS | position);
+                position += HEADER_BYTES + length;
+                records++;
+            }
+        } catch (EOFException e) {
+            // Size changed under us; treat like a torn tail
+        }
+        if (position < segment.size) {
+            System.err.println("Log store: truncating segment " + segment.number + " from " + segment.size
+                    + " to " + position + " bytes (incomplete or corrupt tail)");
+            segment.channel.truncate(position);
+            segment.size = position;
+        }
+        return records;
+    }
+
+    /**
+     * Append one record and apply it to the indexes
+     *
+     * @return its position
+     */
+    public synchronized long append(byte type, JSONObject record) {
+        List<JSONObject> single = new ArrayList<>(1);
+        single.add(record);
+        return appendAll(type, single)[0];
+    }
+
+    /**
+     * Append several records of one type with a single write, then apply them in order
+     */
+    public synchronized long[] appendAll(byte type, List<JSONObject> records) {
+        List<byte[]> payloads = new ArrayList<>(records.size());
+        int total = 0;
+        for (JSONObject record : records) {
+            byte[] payload = record.toString().getBytes(StandardCharsets.UTF_8);
+            if (payload.length > MAX_RECORD_BYTES) {
+                throw new IllegalArgumentException("Record of " + payload.length + " bytes exceeds the log store limit");
+            }
+            payloads.add(payload);
+            total += HEADER_BYTES + payload.length;
+        }
+        try {
+            if (active.size > 0 && active.size + total > segmentBytes) {
+                roll();
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(total);
+            long[] positions = new long[payloads.size()];
+            for (int i = 0; i < payloads.size(); i++) {
+                byte[] payload = payloads.get(i);
+                positions[i] = (long) active.number << OFFSET_BITS | (active.size + buffer.position());
+                buffer.putInt(payload.length).putInt(checksum(type, payload)).put(type).put(payload);
+            }
+            buffer.flip();
+            long offset = active.size;
+            while (buffer.hasRemaining()) {
+                offset += active.channel.write(buffer, offset);
+            }
+            active.size = offset;
+            if (fsyncMs <= 0) {
+                active.channel.force(false);
+            } else {
+                dirty = true;
+            }
+            appended.addAndGet(records.size());
+            appendedBytes.addAndGet(total);
+            for (int i = 0; i < records.size(); i++) {
+                cache.put(positions[i], records.get(i));
+                handler.apply(type, records.get(i), positions[i]);
+            }
+            return positions;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Log store append failed", e);
+        }
+    }
+
+    /**
+     * Read back the record at a position; the caller gets its own copy
+     */
+    public JSONObject read(long position) {
+        JSONObject cached = cache.get(position);
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+            return new JSONObject(cached, JSONObject.getNames(cached));
+        }
+        Segment segment = segments.get((int) (position >>> OFFSET_BITS));
+        long offset = position & OFFSET_MASK;
+        try {
+            // One read covers the header and a typical payload; larger records need a second
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(READ_AHEAD_BYTES, segment.size - offset));
+            readFully(segment.channel, buffer, offset);
+            int length = buffer.getInt(0);
+            if (HEADER_BYTES + length > buffer.capacity()) {
+                ByteBuffer whole = ByteBuffer.allocate(HEADER_BYTES + length);
+                whole.put(buffer.array());
+                readFully(segment.channel, whole, offset);
+                buffer = whole;
+            }
+            reads.incrementAndGet();
+            JSONObject record = new JSONObject(new String(buffer.array(), HEADER_BYTES, length, StandardCharsets.UTF_8));
+            cache.put(position, new JSONObject(record, JSONObject.getNames(record)));
+            return record;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Log store read failed at " + position, e);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Unexpected end of segment");
+            }
+        }
+    }
+
+    private void roll() throws IOException {
+        active.channel.force(false);
+        active = createSegment(active.number + 1);
+    }
+
+    private Segment createSegment(int number) throws IOException {
+        Path file = directory.resolve(String.format("%010d%s", number, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(number, channel, channel.size());
+        segments.put(number, segment);
+        return segment;
+    }
+
+    private static int checksum(byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private void sync() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        try {
+            Segment segment;
+            synchronized (this) {
+                segment = active;
+            }
+            segment.channel.force(false);
+        } catch (IOException e) {
+            dirty = true;
+            System.err.println("Log store fsync failed: " + e.getMessage());
+        }
+    }
+
+    private void report() {
+        long total = appended.get();
+        if (total != lastReported) {
+            lastReported = total;
+            System.out.println(getStats());
+        }
+    }
+
+    public String getStats() {
+        return "Log store: " + appended.get() + " records (" + appendedBytes.get() / 1024 + " KB) appended, "
+                + reads.get() + " disk reads, " + cacheHits.get() + " cache hits, " + segments.size() + " segments";
+    }
+
+    public synchronized void close() {
+        for (Segment segment : segments.values()) {
+            try {
+                segment.channel.force(false);
+                segment.channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing log segment " + segment.number + ": " + e.getMessage());
+            }
+        }
+        System.out.println("Log store closed");
+    }
+}
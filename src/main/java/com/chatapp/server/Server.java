@@ -8,7 +8,11 @@ import java.util.Collections;
 import java.util.List;
 
 import com.chatapp.data.service.DatabaseStartupService;
+import com.chatapp.data.service.MessageSpool;
+import com.chatapp.data.storage.Storage;
 import com.chatapp.server.handler.ClientHandler;
+import com.chatapp.server.handler.ClientRegistry;
+import com.chatapp.server.service.UserSearchService;
 import com.chatapp.server.service.UserService;
 
 public class Server {
@@ -26,6 +30,9 @@ public class Server {
         }
 
         userService = new UserService();
+        UserSearchService.getInstance().rebuild();
+        // Starts replaying messages spooled while the database was down in a previous run
+        System.out.println(MessageSpool.getInstance().getStats());
 
         try (ServerSocket serverSocket = new ServerSocket(PORT)) {
             System.out.println("Server started on port " + PORT + ". Waiting for clients...");
@@ -33,6 +40,7 @@ public class Server {
             // Shutdown hook for clean database shutdown
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 System.out.println("Server shutting down...");
+                Storage.close();
                 if (dbService != null) {
                     dbService.shutdown();
                 }
@@ -64,16 +72,9 @@ public class Server {
         }
     }
 
-    // Broadcast a message to all clients
+    // Broadcast a message to all connected users except the sender (asynchronous)
     public static void broadcast(String message, ClientHandler sender) {
-        System.out.println("Broadcasting: " + message);
-        synchronized (clients) {
-            for (ClientHandler client : clients) {
-                if (client != sender) { // Don't send back to sender
-                    client.sendMessage(message);
-                }
-            }
-        }
+        ClientRegistry.broadcast(message, sender);
     }
 
     // Remove a client from the list
@@ -2,9 +2,15 @@ package com.chatapp.server.handler;
 
 import java.io.*;
 import java.net.Socket;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.Map;
 
 import org.json.JSONArray;
@@ -12,15 +18,31 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.chatapp.server.service.UserService;
+import com.chatapp.server.service.AuthService;
+import com.chatapp.server.service.BootstrapService;
+import com.chatapp.server.service.ContactService;
+import com.chatapp.server.service.ConversationExecutor;
 import com.chatapp.server.service.FileService;
+import com.chatapp.server.service.GroupFanoutService;
 import com.chatapp.server.service.GroupService;
+import com.chatapp.server.service.InboxService;
 import com.chatapp.server.service.MessageService;
-import com.chatapp.server.service.GroupService;
+import com.chatapp.server.service.ReceiptService;
+import com.chatapp.server.service.PresenceService;
+import com.chatapp.server.service.RateLimitService;
+import com.chatapp.server.service.SessionService;
+import com.chatapp.server.service.SharedLogService;
+import com.chatapp.server.service.TypingService;
+import com.chatapp.server.service.UserSearchService;
+import com.chatapp.common.model.ConversationSummary;
 import com.chatapp.common.model.FileMessage;
 import com.chatapp.common.model.Group;
 import com.chatapp.common.model.Message;
+import com.chatapp.common.model.User;
 import com.chatapp.data.dao.MessageDAO;
-import com.chatapp.data.dao.impl.MessageDAOImpl;
+import com.chatapp.data.storage.Storage;
+import com.chatapp.data.db.DatabaseManager;
+import com.chatapp.data.service.MessageSpool;
 
 public class ClientHandler implements Runnable {
     private Socket clientSocket;
@@ -28,8 +50,38 @@ public class ClientHandler implements Runnable {
     private PrintWriter out;
     private List<ClientHandler> clients;
     private String userEmail; // Authenticated user's email
+    private volatile boolean sequenced; // Frames carry sequence numbers for session resume
+    private long lastThrottleNotice;    // At most one "throttled" frame per second
+
+    // Outbound queue of the session, written to the socket by its own writer thread, so a
+    // slow client only ever holds up itself. Frames are numbered and queued under the same
+    // lock: the queue is in sequence order and every frame is in the replay log first.
+    // Kept well below the replay log size, so an overflowing client can always resume.
+    private static final int MAX_OUTBOUND_QUEUE = 256;
+    private static final long WRITER_DRAIN_MS = 1000;
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private final Condition queueNotEmpty = queueLock.newCondition();
+    private final Deque<Outgoing> outbound = new ArrayDeque<>();
+    private Thread writer;              // Started with the session
+    private boolean writerStopped;
+    private boolean overflowed;         // The connection is being closed for the client to resume
     private UserService userService;
     private MessageService messageService;
+
+    /**
+     * A queued frame, with what to do once it is on the socket or known not to get there
+     */
+    private static final class Outgoing {
+        final String frame;
+        final Runnable onWritten;       // Both optional
+        final Runnable onLost;
+
+        Outgoing(String frame, Runnable onWritten, Runnable onLost) {
+            this.frame = frame;
+            this.onWritten = onWritten;
+            this.onLost = onLost;
+        }
+    }
     
 
     // Map to store groups (group name -> list of member emails)
@@ -68,14 +120,34 @@ public void run() {
             return;   // ← termine le run()
         }
 
-        /* ---------- CAS 2 : LOGIN (déjà présent) ---------- */
+        boolean bootstrap = req.optBoolean("bootstrap", false);
+
+        /* ---------- CAS 2 : RESUME (token, sans mot de passe) ---------- */
+        if ("RESUME".equals(reqType)) {
+            String email = SessionService.getInstance().verifyToken(req.optString("token", null));
+            if (email == null) {
+                out.println("RESUME_FAILED");
+                return;
+            }
+            this.userEmail = email;
+            out.println("AUTH_SUCCESS");
+            resumeChat(req.optLong("lastSeq", -1), bootstrap);
+            return;
+        }
+
+        /* ---------- CAS 3 : LOGIN (déjà présent) ---------- */
         String email    = req.getString("email");
         String password = req.getString("password");
         this.userEmail  = email;
 
-        if (userService.authenticateUser(email, password)) {
+        AuthService.Result auth = AuthService.getInstance().authenticate(email, password);
+        if (auth.status == AuthService.Status.SUCCESS) {
             out.println("AUTH_SUCCESS");
-            handleChat();                               // ↳ boucle message
+            SessionService.getInstance().reset(email);
+            startSession();
+            handleChat(bootstrap);                      // ↳ boucle message
+        } else if (auth.status == AuthService.Status.BUSY) {
+            out.println("AUTH_RETRY|" + auth.retryAfterMs);   // serveur saturé, réessayer plus tard
         } else {
             out.println("AUTH_FAILED");
         }
@@ -91,7 +163,25 @@ public void run() {
     private void cleanup() {
         try {
             clients.remove(this);
+            if (sequenced) {
+                // Before unregistering, so no shared-log message falls between the two
+                SessionService.getInstance().suspend(userEmail);
+            }
+            ClientRegistry.unregister(userEmail, this);
+            if (sequenced) {
+                // Not offline if the user already reconnected on another socket
+                if (!ClientRegistry.isOnline(userEmail)) {
+                    PresenceService.getInstance().offline(userEmail);
+                    PresenceService.getInstance().unsubscribeAll(userEmail);
+                    RateLimitService.getInstance().forget(userEmail);
+                    // Shared logs were delivered live: move their cursors once per session
+                    SharedLogService.getInstance().positionsOf(userEmail).forEach((conversationId, timestamp) ->
+                            ReceiptService.getInstance().acknowledge(userEmail, conversationId, null,
+                                    timestamp, false, false));
+                }
+            }
             System.out.println("Client removed. Active clients: " + clients.size());
+            stopWriter();
             if (clientSocket != null && !clientSocket.isClosed()) {
                 clientSocket.close();
                 System.out.println("Client socket closed");
@@ -101,14 +191,150 @@ public void run() {
         }
     }
 
-    private void handleChat() {
-        sendOfflineMessages();
+    /**
+     * Register the session; from now on every JSON frame is numbered for replay
+     */
+    private void startSession() {
+        writer = new Thread(this::writeOutbound, "outbound-writer-" + userEmail);
+        writer.setDaemon(true);
+        writer.start();
+        // Numbered before any frame can be routed to us
+        sequenced = true;
+        ClientRegistry.register(userEmail, this);
+        PresenceService.getInstance().online(userEmail);
+    }
+
+    /**
+     * Hand the client a fresh resume token. Sent after the initial sync, so the
+     * sequence number of this frame tells the client everything before it arrived.
+     */
+    private void sendSessionToken() {
+        JSONObject session = new JSONObject();
+        session.put("type", "SESSION");
+        session.put("token", SessionService.getInstance().issueToken(userEmail));
+        session.put("expiresIn", SessionService.TOKEN_TTL_MS);
+        sendMessage(session.toString());
+    }
+
+    /**
+     * Reconnect with a resume token: replay the frames the client has not seen and the
+     * messages queued while it was away, all from memory. Falls back to a full resync
+     * when the replay log no longer covers the client's last sequence.
+     */
+    private void resumeChat(long lastSeq, boolean bootstrap) {
+        List<String> missed;
+        // Frames routed to us meanwhile are queued after the replay, so nothing is reordered or lost
+        queueLock.lock();
+        try {
+            startSession();
+            missed = SessionService.getInstance().framesAfter(userEmail, lastSeq);
+            if (missed != null) {
+                for (String frame : missed) {
+                    outbound.addLast(new Outgoing(frame, null, null));  // Already numbered; bounded by the replay log
+                }
+                queueNotEmpty.signal();
+            }
+        } finally {
+            queueLock.unlock();
+        }
+        if (missed == null) {
+            System.out.println("Resume for " + userEmail + " cannot replay from seq " + lastSeq + ", full resync");
+            SessionService.getInstance().reset(userEmail);
+            resubscribePresence();
+            handleChat(bootstrap);
+            return;
+        }
+        System.out.println("Session resumed for " + userEmail + ", replayed " + missed.size() + " frames");
+        for (String message : messageService.drainQueuedMessages(userEmail)) {
+            sendMessage(message);
+        }
+        // Large groups and broadcasts queue nothing per user: read their shared logs
+        List<String> shared = SharedLogService.getInstance()
+                .messagesSince(userEmail, SessionService.getInstance().suspendedAt(userEmail));
+        if (shared == null) {
+            sendOfflineMessages();
+        } else {
+            for (String message : shared) {
+                sendMessage(message);
+            }
+        }
+        resubscribePresence();
+        sendSessionToken();
+        chatLoop();
+    }
+
+    /**
+     * Subscriptions ended with the previous socket; a resuming client keeps its contact list
+     * and does not subscribe again, so do it for it
+     */
+    private void resubscribePresence() {
+        JSONObject presence = new JSONObject();
+        presence.put("type", "presence");
+        presence.put("updates", PresenceService.getInstance().subscribe(userEmail,
+                ContactService.getInstance().getContacts(userEmail)));
+        sendMessage(presence.toString());
+    }
+
+    private void handleChat(boolean bootstrap) {
+        JSONObject bootstrapFrame = null;
+        if (bootstrap) {
+            // Everything the client needs after login in one frame
+            try {
+                bootstrapFrame = new BootstrapService(groupService).build(userEmail);
+            } catch (CompletionException | JSONException e) {
+                System.err.println("Bootstrap failed for " + userEmail + ", falling back to offline delivery: "
+                        + e.getMessage());
+                // The client then asks for contacts, groups and inbox one by one
+                sendMessage(new JSONObject().put("type", "BOOTSTRAP_FAILED").toString());
+            }
+        }
+        if (bootstrapFrame != null) {
+            // Taken only now the rest is built, and acknowledged once the frame is written
+            MessageService.OfflineBatch offline = messageService.takeOfflineMessages(userEmail);
+            JSONArray offlineJson = new JSONArray();
+            for (String message : offline.messages) {
+                offlineJson.put(new JSONObject(message));
+            }
+            bootstrapFrame.put("offline", offlineJson);
+            enqueue(bootstrapFrame.toString(), () -> messageService.confirmDelivered(userEmail, offline),
+                    () -> messageService.restoreOfflineMessages(userEmail, offline));
+        } else {
+            sendOfflineMessages();
+        }
+        sendSessionToken();
+        chatLoop();
+    }
+
+    private void chatLoop() {
         try {
             String input;
             while ((input = in.readLine()) != null) {
+                // Rate limit before parsing or any database work
+                String frameType = RateLimitService.peekType(input);
+                if (!"disconnect".equals(frameType)) {
+                    RateLimitService.Decision decision = RateLimitService.getInstance().check(userEmail, frameType);
+                    if (!decision.allowed) {
+                        sendThrottled(frameType, decision.retryAfterMs);
+                        continue;
+                    }
+                }
+                // Private messages are decoded, validated, persisted and routed by pipeline stages
+                if ("private".equals(frameType)) {
+                    if (!InboundPipeline.getInstance().publish(this, userEmail, input)) {
+                        sendError("Server busy, message not sent");
+                    }
+                    continue;
+                }
                 try {
                     JSONObject messageJson = new JSONObject(input);
                     String messageType = messageJson.getString("type");
+                    if (!messageType.equals(frameType)) {
+                        // Throttled as another type than it is: never act on it
+                        sendError("Malformed frame rejected");
+                        continue;
+                    }
+                    // Replica reads made for this frame must include the user's own writes
+                    DatabaseManager.setReadToken(SessionService.getInstance().readToken(userEmail));
 
                     switch (messageType) {
                         case "GET_HISTORY":
@@ -120,7 +346,8 @@ public void run() {
                             break;
 
                         case "private":
-                            handlePrivateMessage(messageJson);
+                            dispatch(conversationOf(messageJson.getString("to"), messageJson),
+                                    () -> handlePrivateMessage(messageJson));
                             break;
 
                         case "broadcast":
@@ -128,7 +355,49 @@ public void run() {
                             break;
 
                         case "read_receipt":
-                            handleReadReceipt(messageJson);
+                            dispatch(messageService.generateConversationId(userEmail, messageJson.getString("sender")),
+                                    () -> handleReadReceipt(messageJson));
+                            break;
+
+                        case "ack":
+                            dispatch(conversationOf(messageJson.getString("to"), messageJson),
+                                    () -> handleAck(messageJson));
+                            break;
+
+                        case "inbox":
+                            handleInboxRequest(messageJson);
+                            break;
+
+                        case "get_contacts":
+                            handleGetContacts(messageJson);
+                            break;
+
+                        case "add_contact":
+                        case "remove_contact":
+                            handleContactChange(messageType, messageJson);
+                            break;
+
+                        case "search_users":
+                            handleSearchUsers(messageJson);
+                            break;
+
+                        case "get_profile":
+                            handleGetProfile(messageJson);
+                            break;
+
+                        case "update_profile":
+                            handleUpdateProfile(messageJson);
+                            break;
+
+                        case "typing":
+                            // Ephemeral: never persisted, throttled and batched by TypingService
+                            TypingService.getInstance().typing(userEmail, messageJson.getString("to"),
+                                    messageJson.optBoolean("isGroup", false));
+                            break;
+
+                        case "presence_subscribe":
+                        case "presence_unsubscribe":
+                            handlePresenceSubscription(messageType, messageJson);
                             break;
 
                         case "create_group":
@@ -136,10 +405,11 @@ public void run() {
                             break;
                         
                         case "get_groups":
-                            handleGetGroups();
+                            handleGetGroups(messageJson);
                             break;
 
                             case "file_upload":
+                            // Stored on the file I/O pool, then announced on the conversation shard
                             handleFileUpload(messageJson);
                             break;
                             
@@ -168,6 +438,39 @@ public void run() {
         }
     }
 
+    /**
+     * Frame handler run on a conversation shard
+     */
+    private interface ConversationTask {
+        void run() throws JSONException;
+    }
+
+    /**
+     * Process a frame on the shard of its conversation, in order with every other
+     * frame of that conversation from any connection
+     */
+    private void dispatch(String conversationId, ConversationTask task) {
+        boolean accepted = ConversationExecutor.getInstance().submit(conversationId, () -> {
+            try {
+                task.run();
+            } catch (JSONException e) {
+                System.err.println("Invalid frame from " + userEmail + ": " + e.getMessage());
+            }
+        });
+        if (!accepted) {
+            sendError("Server busy, request not processed");
+        }
+    }
+
+    /**
+     * Conversation id of a frame addressed to "to": a group (flagged, or a name without "@")
+     * or a private chat with that user
+     */
+    private String conversationOf(String to, JSONObject frame) {
+        boolean isGroup = frame.optBoolean("isGroup", false) || !to.contains("@");
+        return isGroup ? "group_" + to : messageService.generateConversationId(userEmail, to);
+    }
+
     private void handlePrivateMessage(JSONObject messageJson) throws JSONException {
         String recipient = messageJson.getString("to");
         String content = messageJson.getString("content");
@@ -182,18 +485,44 @@ public void run() {
 
     private void handleDirectMessage(String recipient, String content) throws JSONException {
         JSONObject routingMessage = messageService.createPrivateMessage(userEmail, recipient, content);
-        String messageId = routingMessage.getString("id");
+        InboxService.getInstance().onMessage(routingMessage.getString("conversationId"), false, null,
+                List.of(userEmail, recipient), userEmail, content, routingMessage.getLong("timestamp"));
+        routeDirectMessage(recipient, routingMessage);
+    }
 
+    /**
+     * Deliver a private message that is saved (or being saved) and tell the sender
+     */
+    void routeDirectMessage(String recipient, JSONObject routingMessage) throws JSONException {
+        String messageId = routingMessage.getString("id");
         ClientHandler recipientHandler = findClientByEmail(recipient);
         if (recipientHandler != null) {
-            recipientHandler.sendMessage(routingMessage.toString());
+            // Only queued, never written here: callers include the single pipeline route thread.
+            // An overflowed recipient gets the frame from its replay log on resume.
+            if (recipientHandler.enqueue(routingMessage.toString())) {
+                messageService.markDelivered(recipient, routingMessage);
+            }
             sendDeliveryReceipt(messageId, "delivered");
         } else {
-            messageService.storeOfflineMessage(recipient, routingMessage);
+            messageService.queueOfflineCopy(recipient, routingMessage);
             sendDeliveryReceipt(messageId, "pending");
         }
     }
 
+    /**
+     * A "private" frame addressed to a group, handed over by the inbound pipeline
+     */
+    void dispatchGroupFrame(JSONObject messageJson) throws JSONException {
+        dispatch(conversationOf(messageJson.getString("to"), messageJson), () -> handlePrivateMessage(messageJson));
+    }
+
+    void sendError(String content) {
+        JSONObject error = new JSONObject();
+        error.put("type", "error");
+        error.put("content", content);
+        sendMessage(error.toString());
+    }
+
     private void handleGroupMessage(String groupName, String content) throws JSONException {
         Group group = groupService.findGroupByName(groupName);
         
@@ -216,13 +545,20 @@ public void run() {
         messageObj.setConversationId("group_" + groupName);
         messageObj.setTimestamp(System.currentTimeMillis());
         
-        // Use the direct save method instead of the regular one
-        boolean saved = groupService.ultraDirectSaveGroupMessage(messageObj, groupName);
-        System.out.println("DIRECT SAVE RESULT: " + (saved ? "SUCCESS" : "FAILED"));
+        boolean saved = groupService.saveGroupMessage(messageObj, groupName);
 
         if (!saved) {
-            System.out.println("Message failed to save - running diagnostic:");
-            groupService.debugGroupMessageSaving(groupName);
+            if (DatabaseManager.isAvailable()) {
+                System.out.println("Message failed to save - running diagnostic:");
+                groupService.debugGroupMessageSaving(groupName);
+            }
+            // Delivery goes on, the spool writes the message later (and skips it if it was stored)
+            saved = MessageSpool.getInstance().append(messageObj);
+        }
+        if (saved) {
+            SessionService.getInstance().recordWrite(userEmail);
+            InboxService.getInstance().onMessage(messageObj.getConversationId(), true, groupName, members,
+                    userEmail, content, messageObj.getTimestamp());
         }
         
         // Create JSON message for delivery
@@ -233,78 +569,56 @@ public void run() {
         routingMessage.put("sender", userEmail);
         routingMessage.put("content", content);
         routingMessage.put("groupName", groupName);
-        routingMessage.put("timestamp", System.currentTimeMillis());
+        routingMessage.put("conversationId", messageObj.getConversationId());
+        routingMessage.put("timestamp", messageObj.getTimestamp());
         
-        // Send to ALL members, INCLUDING sender (for consistency)
-        for (String member : members) {
-            ClientHandler memberHandler = findClientByEmail(member);
-            if (memberHandler != null) {
-                // Whether it's the sender or not, deliver the message
-                System.out.println("Delivering group message to online member: " + member);
-                memberHandler.sendMessage(routingMessage.toString());
-            } else if (!member.equals(userEmail)) {
-                // For offline users (except self), store as offline message
-                System.out.println("Storing offline message for: " + member);
-                messageService.storeOfflineMessage(member, routingMessage);
-            }
+        // Large groups are read from one shared log: no per-member copies or cursor moves
+        boolean fanoutOnRead = SharedLogService.isFanoutOnRead(members.size());
+        if (fanoutOnRead && saved) {
+            SharedLogService.getInstance().append(messageObj.getConversationId(), members, routingMessage);
         }
+
+        // Send to ALL members, INCLUDING sender (for consistency); large groups in parallel shards
+        GroupFanoutService.getInstance()
+                .deliver(messageObj.getConversationId(), members, userEmail, routingMessage, fanoutOnRead)
+                .thenAccept(result -> System.out.println("Group message " + messageId + " to " + groupName
+                        + " delivered to " + result.online + " online members (" + result.offline
+                        + " offline) in " + result.elapsedMs + " ms"));
     }
     private void handleGroupHistoryRequest(JSONObject request) throws JSONException {
         String groupName = request.getString("groupName");
         System.out.println("History requested for group: " + groupName);
-        
-        try {
-            // Get group messages from database - use the specialized group conversation ID format
-            MessageDAO messageDAO = new MessageDAOImpl();
-            String groupConversationId = "group_" + groupName;
-            List<JSONObject> messages = messageDAO.getGroupMessages(groupConversationId);
-            System.out.println("Found " + messages.size() + " text messages for group: " + groupName);
-            
-            // Get group files from database
-            List<FileMessage> files = fileService.getFilesByConversation(groupConversationId);
-            if (files != null && !files.isEmpty()) {
-                System.out.println("Found " + files.size() + " files for group: " + groupName);
-                
-                for (FileMessage file : files) {
-                    JSONObject fileJson = file.toJson();
-                    fileJson.put("type", "file");
-                    fileJson.put("groupName", groupName);
-                    messages.add(fileJson);
-                }
-            }
-            
-            // Sort all messages by timestamp
-            messages.sort((msg1, msg2) -> {
-                long time1 = msg1.optLong("timestamp", 0);
-                long time2 = msg2.optLong("timestamp", 0);
-                return Long.compare(time1, time2);
-            });
-            
-            // Prepare and send response
-            JSONObject response = new JSONObject();
-            response.put("type", "GROUP_HISTORY_RESPONSE");
-            response.put("groupName", groupName);
-            
-            JSONArray messagesArray = new JSONArray();
-            for (JSONObject message : messages) {
-                messagesArray.put(message);
-            }
-            
-            response.put("messages", messagesArray);
-            sendMessage(response.toString());
-            
-        } catch (Exception e) {
-            System.err.println("Error handling group history request: " + e.getMessage());
-            e.printStackTrace();
-            
-            // Send empty response
-            JSONObject errorResponse = new JSONObject();
-            errorResponse.put("type", "GROUP_HISTORY_RESPONSE");
-            errorResponse.put("groupName", groupName);
-            errorResponse.put("messages", new JSONArray());
-            errorResponse.put("error", "Failed to retrieve history: " + e.getMessage());
-            sendMessage(errorResponse.toString());
-        }
+
+        // Get group messages and files from database in parallel - use the specialized group conversation ID format
+        MessageDAO messageDAO = Storage.messages();
+        String groupConversationId = "group_" + groupName;
+        messageDAO.getGroupMessagesAsync(groupConversationId)
+                .thenCombine(filesOf(groupConversationId), (messages, files) -> {
+                    for (FileMessage file : files) {
+                        JSONObject fileJson = file.toJson();
+                        fileJson.put("type", "file");
+                        fileJson.put("groupName", groupName);
+                        messages.add(fileJson);
+                    }
+                    // Sort all messages by timestamp
+                    messages.sort((msg1, msg2) -> Long.compare(msg1.optLong("timestamp", 0), msg2.optLong("timestamp", 0)));
+                    return messages;
+                })
+                .whenComplete((messages, error) -> {
+                    JSONObject response = replyTo(request, new JSONObject());
+                    response.put("type", "GROUP_HISTORY_RESPONSE");
+                    response.put("groupName", groupName);
+                    if (error != null) {
+                        System.err.println("Error handling group history request: " + causeOf(error).getMessage());
+                        // Send empty response
+                        response.put("messages", new JSONArray());
+                        response.put("error", "Failed to retrieve history: " + causeOf(error).getMessage());
+                    } else {
+                        System.out.println("Found " + messages.size() + " messages for group: " + groupName);
+                        response.put("messages", new JSONArray(messages));
+                    }
+                    reply(response);
+                });
     }
 
     // Add these methods to ClientHandler
@@ -313,14 +627,22 @@ private void handleFileUpload(JSONObject messageJson) throws JSONException {
     String filename = messageJson.getString("filename");
     String mimeType = messageJson.getString("mimeType");
     String base64Data = messageJson.getString("data");
-    
-    // Decode base64 data
-    byte[] fileData = java.util.Base64.getDecoder().decode(base64Data);
-    
-    // Save file
-    FileMessage file = fileService.saveFile(userEmail, recipient, filename, fileData, mimeType);
-    
+    String conversationId = messageService.generateConversationId(userEmail, recipient);
+
+    // Decode and save off the shards; the notification keeps conversation order
+    fileService.saveFileAsync(userEmail, recipient, filename, base64Data, mimeType).whenComplete((file, error) -> {
+        if (error != null) {
+            System.err.println("Error saving file from " + userEmail + ": " + causeOf(error).getMessage());
+        }
+        dispatch(conversationId, () -> announceFile(recipient, filename, mimeType, error == null ? file : null));
+    });
+}
+
+private void announceFile(String recipient, String filename, String mimeType, FileMessage file) throws JSONException {
     if (file != null) {
+        InboxService.getInstance().onMessage(file.getConversationId(), false, null, List.of(userEmail, recipient),
+                userEmail, "📎 " + filename, file.getTimestamp());
+
         // Notify recipient if online
         ClientHandler recipientHandler = findClientByEmail(recipient);
         JSONObject fileNotification = file.toJson();
@@ -345,7 +667,7 @@ private void handleFileUpload(JSONObject messageJson) throws JSONException {
             offlineMsg.put("sender", userEmail);
             offlineMsg.put("filename", filename);
             offlineMsg.put("mimeType", mimeType);
-            offlineMsg.put("fileSize", fileData.length);
+            offlineMsg.put("fileSize", file.getFileSize());
             messageService.storeOfflineMessage(recipient, offlineMsg);
             
             // Send pending receipt to sender
@@ -369,46 +691,49 @@ private void handleFileUpload(JSONObject messageJson) throws JSONException {
     
 private void handleFileDownload(JSONObject messageJson) throws JSONException {
     String fileId = messageJson.getString("fileId");
-    
-    // Get file data
-    byte[] fileData = fileService.getFileData(fileId);
-    
-    if (fileData != null) {
-        // Base64 encode for transmission
-        String base64Data = java.util.Base64.getEncoder().encodeToString(fileData);
-        
-        // Send file data to requester
-        JSONObject fileResponse = new JSONObject();
-        fileResponse.put("type", "file_data");
-        fileResponse.put("fileId", fileId);
-        fileResponse.put("data", base64Data);
-        sendMessage(fileResponse.toString());
-        
-        // Mark file as viewed
-        fileService.updateFileStatus(fileId, true, true);
-    } else {
-        // Send error
-        JSONObject error = new JSONObject();
-        error.put("type", "error");
-        error.put("content", "File not found: " + fileId);
-        sendMessage(error.toString());
-    }
+
+    // Get file data without holding up the reader: several downloads can be in flight
+    fileService.getFileDataAsync(fileId).whenComplete((fileData, error) -> {
+        if (error == null && fileData != null) {
+            // Base64 encode for transmission
+            String base64Data = java.util.Base64.getEncoder().encodeToString(fileData);
+
+            // Send file data to requester
+            JSONObject fileResponse = replyTo(messageJson, new JSONObject());
+            fileResponse.put("type", "file_data");
+            fileResponse.put("fileId", fileId);
+            fileResponse.put("data", base64Data);
+            reply(fileResponse);
+
+            // Mark file as viewed
+            fileService.updateFileStatusAsync(fileId, true, true);
+        } else {
+            replyError(messageJson, "File not found: " + fileId);
+        }
+    });
 }
 private void handleGroupFileUpload(JSONObject fileUpload) throws JSONException {
     String groupName = fileUpload.getString("groupName");
     String filename = fileUpload.getString("filename");
     String mimeType = fileUpload.getString("mimeType");
     String base64Data = fileUpload.getString("data");
-    
-    // Decode file data
-    byte[] fileData = java.util.Base64.getDecoder().decode(base64Data);
-    
-    // Save file and metadata
-    FileMessage fileMessage = fileService.saveGroupFile(userEmail, groupName, filename, fileData, mimeType);
-    
+
+    // Decode and save off the shards; the notification keeps conversation order
+    fileService.saveGroupFileAsync(userEmail, groupName, filename, base64Data, mimeType).whenComplete((file, error) -> {
+        if (error != null) {
+            System.err.println("Error saving group file from " + userEmail + ": " + causeOf(error).getMessage());
+        }
+        dispatch("group_" + groupName, () -> announceGroupFile(groupName, filename, error == null ? file : null));
+    });
+}
+
+private void announceGroupFile(String groupName, String filename, FileMessage fileMessage) throws JSONException {
     if (fileMessage != null) {
         Group group = groupService.findGroupByName(groupName);
         if (group != null) {
+            InboxService.getInstance().onMessage(fileMessage.getConversationId(), true, groupName,
+                    group.getMembersEmails(), userEmail, "📎 " + filename, fileMessage.getTimestamp());
+
             // Create notification message for all group members
             JSONObject fileNotification = fileMessage.toJson();
             fileNotification.put("type", "file");
@@ -463,6 +788,147 @@ private void handleGroupFileUpload(JSONObject fileUpload) throws JSONException {
             readReceipt.put("timestamp", System.currentTimeMillis());
             senderHandler.sendMessage(readReceipt.toString());
         }
+
+        // Legacy per-message receipt: still move the cursor, without a second relay
+        long upTo = Message.timestampFromId(messageId);
+        if (upTo > 0) {
+            String conversationId = messageService.generateConversationId(userEmail, sender);
+            ReceiptService.getInstance().acknowledge(userEmail, conversationId, sender, upTo, true, false);
+        }
+    }
+
+    /**
+     * Cumulative acknowledgement: everything up to "upTo" in the conversation with "to"
+     * has been delivered or read. Persisted and relayed in batches by ReceiptService.
+     */
+    private void handleAck(JSONObject messageJson) throws JSONException {
+        String to = messageJson.getString("to");
+        long upTo = messageJson.getLong("upTo");
+        boolean read = "read".equals(messageJson.optString("status", "read"));
+        boolean isGroup = messageJson.optBoolean("isGroup", false);
+
+        String conversationId = isGroup ? "group_" + to : messageService.generateConversationId(userEmail, to);
+        ReceiptService.getInstance().acknowledge(userEmail, conversationId, isGroup ? null : to, upTo, read, true);
+    }
+
+    private void handleInboxRequest(JSONObject request) throws JSONException {
+        int limit = request.optInt("limit", 0);
+        JSONArray conversations = new JSONArray();
+        for (ConversationSummary summary : InboxService.getInstance().getInbox(userEmail, limit)) {
+            conversations.put(summary.toJson());
+        }
+
+        JSONObject response = replyTo(request, new JSONObject());
+        response.put("type", "INBOX_RESPONSE");
+        response.put("conversations", conversations);
+        sendMessage(response.toString());
+    }
+
+    private void handleGetContacts(JSONObject request) throws JSONException {
+        long sinceVersion = request.optLong("sinceVersion", 0);
+        ContactService.ContactsSnapshot snapshot = ContactService.getInstance().getContactsSince(userEmail, sinceVersion);
+
+        JSONObject response = replyTo(request, new JSONObject());
+        response.put("type", "CONTACTS_RESPONSE");
+        response.put("version", snapshot.version);
+        response.put("full", snapshot.full);
+        if (snapshot.full) {
+            response.put("contacts", new JSONArray(snapshot.contacts));
+        } else {
+            response.put("added", new JSONArray(snapshot.contacts));
+            response.put("removed", new JSONArray(snapshot.removed));
+        }
+        sendMessage(response.toString());
+    }
+
+    private void handleContactChange(String messageType, JSONObject request) throws JSONException {
+        String contactEmail = request.getString("email");
+        boolean add = "add_contact".equals(messageType);
+
+        long version = -1;
+        if (!contactEmail.equals(userEmail)) {
+            version = add
+                    ? ContactService.getInstance().addContact(userEmail, contactEmail)
+                    : ContactService.getInstance().removeContact(userEmail, contactEmail);
+        }
+
+        JSONObject response = replyTo(request, new JSONObject());
+        response.put("type", "CONTACT_UPDATED");
+        response.put("action", add ? "added" : "removed");
+        response.put("email", contactEmail);
+        response.put("success", version >= 0);
+        if (version >= 0) {
+            response.put("version", version);
+        }
+        sendMessage(response.toString());
+    }
+
+    private void handlePresenceSubscription(String messageType, JSONObject request) throws JSONException {
+        JSONArray emails = request.getJSONArray("emails");
+        List<String> users = new ArrayList<>();
+        for (int i = 0; i < emails.length(); i++) {
+            users.add(emails.getString(i));
+        }
+
+        if ("presence_unsubscribe".equals(messageType)) {
+            PresenceService.getInstance().unsubscribe(userEmail, users);
+            return;
+        }
+        JSONObject response = replyTo(request, new JSONObject());
+        response.put("type", "presence");
+        response.put("updates", PresenceService.getInstance().subscribe(userEmail, users));
+        sendMessage(response.toString());
+    }
+
+    private void handleSearchUsers(JSONObject request) throws JSONException {
+        String query = request.optString("query", "");
+        int offset = request.optInt("offset", 0);
+        int limit = request.optInt("limit", 20);
+        UserSearchService.SearchPage page = UserSearchService.getInstance().search(query, offset, limit, userEmail);
+
+        JSONArray results = new JSONArray();
+        for (User user : page.users) {
+            JSONObject result = new JSONObject();
+            result.put("email", user.getEmail());
+            result.put("username", user.getUsername());
+            results.put(result);
+        }
+
+        JSONObject response = replyTo(request, new JSONObject());
+        response.put("type", "SEARCH_USERS_RESPONSE");
+        response.put("query", query);
+        response.put("offset", offset);
+        response.put("hasMore", page.hasMore);
+        response.put("results", results);
+        sendMessage(response.toString());
+    }
+
+    private void handleGetProfile(JSONObject request) throws JSONException {
+        User user = userService.findUserByEmail(userEmail);
+        if (user == null) {
+            replyError(request, "User not found");
+            return;
+        }
+        // Never the password: the client only sends a new one
+        JSONObject response = replyTo(request, new JSONObject());
+        response.put("type", "PROFILE_RESPONSE");
+        response.put("email", user.getEmail());
+        response.put("username", user.getUsername());
+        reply(response);
+    }
+
+    private void handleUpdateProfile(JSONObject request) throws JSONException {
+        boolean updated = userService.updateCredentials(userEmail, request.getString("username"),
+                request.optString("password", null));
+
+        JSONObject response = replyTo(request, new JSONObject());
+        response.put("type", "PROFILE_UPDATED");
+        response.put("success", updated);
+        sendMessage(response.toString());
+        if (updated) {
+            // The update revoked the old tokens, this connection still needs one to resume
+            sendSessionToken();
+        }
     }
 
     private void handleCreateGroup(JSONObject messageJson) throws JSONException {
@@ -485,6 +951,8 @@ private void handleGroupFileUpload(JSONObject fileUpload) throws JSONException {
         Group createdGroup = groupService.createGroup(groupName, groupMembers);
         
         if (createdGroup != null) {
+            // Members list their groups right after the notification: make them read it from the primary
+            groupMembers.forEach(SessionService.getInstance()::recordWrite);
             for (String member : groupMembers) {
                 ClientHandler memberHandler = findClientByEmail(member);
                 if (memberHandler != null) {
@@ -504,12 +972,12 @@ private void handleGroupFileUpload(JSONObject fileUpload) throws JSONException {
                 }
             }
 
-            JSONObject ack = new JSONObject();
+            JSONObject ack = replyTo(messageJson, new JSONObject());
             ack.put("type", "system");
             ack.put("content", "Group '" + groupName + "' created successfully!");
             sendMessage(ack.toString());
         } else {
-            JSONObject error = new JSONObject();
+            JSONObject error = replyTo(messageJson, new JSONObject());
             error.put("type", "error");
             error.put("content", "Failed to create group '" + groupName + "'");
             sendMessage(error.toString());
@@ -519,63 +987,113 @@ private void handleGroupFileUpload(JSONObject fileUpload) throws JSONException {
     private void handleHistoryRequest(JSONObject request) throws JSONException {
         String otherUser = request.getString("otherUser");
         System.out.println("History requested between " + userEmail + " and " + otherUser);
-        
-        try {
-            List<JSONObject> history = messageService.getMessageHistory(userEmail, otherUser);
-            System.out.println("Found " + history.size() + " total messages in history");
-            
-            // Check if this is a group chat request
-            boolean isGroup = !otherUser.contains("@");
-            if (isGroup) {
-                try {
-                    // Add group files to history
-                    List<FileMessage> groupFiles = fileService.getFilesByConversation("group_" + otherUser);
-                    if (groupFiles != null) {
-                        for (FileMessage file : groupFiles) {
-                            JSONObject fileJson = file.toJson();
-                            fileJson.put("type", "file");
-                            fileJson.put("groupName", otherUser);
-                            history.add(fileJson);
-                        }
-                        
-                        // Re-sort by timestamp
-                        history.sort((msg1, msg2) -> {
-                            long time1 = msg1.optLong("timestamp", 0);
-                            long time2 = msg2.optLong("timestamp", 0);
-                            return Long.compare(time1, time2);
-                        });
-                    }
-                } catch (Exception e) {
-                    System.err.println("Error adding group files to history: " + e.getMessage());
+
+        // Composed on the DB executor; the reader goes on with the next frame meanwhile
+        CompletableFuture<List<JSONObject>> history = messageService.getMessageHistoryAsync(userEmail, otherUser);
+        // Check if this is a group chat request
+        if (!otherUser.contains("@")) {
+            history = history.thenCombine(filesOf("group_" + otherUser), (messages, groupFiles) -> {
+                for (FileMessage file : groupFiles) {
+                    JSONObject fileJson = file.toJson();
+                    fileJson.put("type", "file");
+                    fileJson.put("groupName", otherUser);
+                    messages.add(fileJson);
                 }
-            }
-            
-            JSONObject response = new JSONObject();
+                messages.sort((msg1, msg2) -> Long.compare(msg1.optLong("timestamp", 0), msg2.optLong("timestamp", 0)));
+                return messages;
+            });
+        }
+
+        history.whenComplete((messages, error) -> {
+            JSONObject response = replyTo(request, new JSONObject());
             response.put("type", "HISTORY_RESPONSE");
-            JSONArray messagesArray = new JSONArray();
-            for (JSONObject message : history) {
-                messagesArray.put(message);
+            if (error != null) {
+                System.err.println("Error handling history request: " + causeOf(error).getMessage());
+                // Send empty response to avoid client waiting indefinitely
+                response.put("messages", new JSONArray());
+                response.put("error", "Failed to retrieve history: " + causeOf(error).getMessage());
+            } else {
+                System.out.println("Found " + messages.size() + " total messages in history");
+                response.put("messages", new JSONArray(messages));
             }
-            response.put("messages", messagesArray);
-            sendMessage(response.toString());
-        } catch (Exception e) {
-            System.err.println("Error handling history request: " + e.getMessage());
-            e.printStackTrace();
-            
-            // Send empty response to avoid client waiting indefinitely
-            JSONObject errorResponse = new JSONObject();
-            errorResponse.put("type", "HISTORY_RESPONSE");
-            errorResponse.put("messages", new JSONArray());
-            errorResponse.put("error", "Failed to retrieve history: " + e.getMessage());
-            sendMessage(errorResponse.toString());
+            reply(response);
+        });
+    }
+
+    /**
+     * Files of a conversation, or none if they cannot be read
+     */
+    private CompletableFuture<List<FileMessage>> filesOf(String conversationId) {
+        return fileService.getFilesByConversationAsync(conversationId).exceptionally(e -> {
+            System.err.println("Error retrieving files of " + conversationId + ": " + e.getMessage());
+            return new ArrayList<>();
+        });
+    }
+
+    /**
+     * Echo the optional "requestId" of a request in its response, so a client can match
+     * responses that arrive out of order
+     */
+    private static JSONObject replyTo(JSONObject request, JSONObject response) {
+        Object requestId = request.opt("requestId");
+        if (requestId != null) {
+            response.put("requestId", requestId);
         }
+        return response;
+    }
+
+    /**
+     * Send the response to a request. Never lost silently: when the connection overflowed
+     * the numbered frame reaches the client with the resume replay.
+     */
+    private void reply(JSONObject response) {
+        if (!enqueue(response.toString())) {
+            System.err.println(response.optString("type") + " reply to " + userEmail + " left to the resume replay");
+        }
+    }
+
+    /**
+     * Error frame answering a request, carrying its requestId so the client can drop it
+     */
+    private void replyError(JSONObject request, String content) {
+        JSONObject error = replyTo(request, new JSONObject());
+        error.put("type", "error");
+        error.put("content", content);
+        reply(error);
+    }
+
+    private static Throwable causeOf(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
     }
 
+    /**
+     * Send what the user has not received yet; cursors move once the last frame is written
+     */
     private void sendOfflineMessages() {
-        List<String> pendingMessages = messageService.getOfflineMessages(userEmail);
-        for (String messageJson : pendingMessages) {
-            sendMessage(messageJson);
+        MessageService.OfflineBatch offline = messageService.takeOfflineMessages(userEmail);
+        if (offline.messages.isEmpty()) {
+            messageService.confirmDelivered(userEmail, offline);
+            return;
+        }
+        for (int i = 0; i < offline.messages.size() - 1; i++) {
+            sendMessage(offline.messages.get(i));
+        }
+        enqueue(offline.messages.get(offline.messages.size() - 1),
+                () -> messageService.confirmDelivered(userEmail, offline),
+                () -> messageService.restoreOfflineMessages(userEmail, offline));
+    }
+
+    private void sendThrottled(String messageType, long retryAfterMs) {
+        long now = System.currentTimeMillis();
+        if (now - lastThrottleNotice < 1000) {
+            return;
         }
+        lastThrottleNotice = now;
+        JSONObject notice = new JSONObject();
+        notice.put("type", "throttled");
+        notice.put("messageType", messageType);
+        notice.put("retryAfterMs", retryAfterMs);
+        sendMessage(notice.toString());
     }
 
     private void sendDeliveryReceipt(String messageId, String status) throws JSONException {
@@ -587,48 +1105,196 @@ private void handleGroupFileUpload(JSONObject fileUpload) throws JSONException {
     }
 
     private ClientHandler findClientByEmail(String email) {
-        for (ClientHandler client : clients) {
-            if (email.equals(client.userEmail)) {
-                return client;
-            }
-        }
-        return null;
+        return ClientRegistry.find(email);
     }
 
     private void broadcastMessage(String message) {
-        synchronized (clients) {
-            for (ClientHandler client : clients) {
-                client.sendMessage(message);
+        ClientRegistry.broadcast(message, null);
+    }
+
+    /**
+     * Queue a frame for delivery; never touches the socket. A frame that does not fit
+     * is still numbered into the replay log, and the connection is closed so the client
+     * resumes from its last sequence and gets it from there.
+     *
+     * @return false if the frame could not be queued on this connection
+     */
+    public boolean enqueue(String message) {
+        return enqueue(message, null, null);
+    }
+
+    /**
+     * Queue a frame and learn whether it reached the socket: onWritten runs on the writer
+     * thread once it is written, onLost when it is rejected here or the write fails.
+     * Either callback may be null.
+     */
+    public boolean enqueue(String message, Runnable onWritten, Runnable onLost) {
+        if (out == null) {
+            runIfSet(onLost);
+            return false;
+        }
+        boolean queued = false;
+        boolean written = false;
+        queueLock.lock();
+        try {
+            if (writer == null) {
+                out.println(message);       // Before the session: the connection thread is the only writer
+                queued = true;
+                written = !out.checkError();
+            } else {
+                if (sequenced && message.startsWith("{")) {
+                    message = SessionService.getInstance().sequence(userEmail, message);
+                }
+                if (outbound.size() >= MAX_OUTBOUND_QUEUE && !overflowed && !writerStopped) {
+                    overflow();
+                } else if (!overflowed && !writerStopped) {
+                    outbound.addLast(new Outgoing(message, onWritten, onLost));
+                    queueNotEmpty.signal();
+                    return true;
+                }
             }
+        } finally {
+            queueLock.unlock();
+        }
+        runIfSet(written ? onWritten : onLost);
+        return queued;
+    }
+
+    private static void runIfSet(Runnable callback) {
+        if (callback != null) {
+            callback.run();
         }
     }
 
     public void sendMessage(String message) {
-        if (out != null) {
-            out.println(message);
+        enqueue(message);
+    }
+
+    /**
+     * Queue a frame that is only useful right now (typing...): not numbered for replay,
+     * and dropped when the client is already behind.
+     */
+    public void sendEphemeral(String message) {
+        queueLock.lock();
+        try {
+            if (writer != null && !overflowed && !writerStopped && outbound.size() < MAX_OUTBOUND_QUEUE / 2) {
+                outbound.addLast(new Outgoing(message, null, null));
+                queueNotEmpty.signal();
+            }
+        } finally {
+            queueLock.unlock();
         }
     }
 
-    private void handleGetGroups() throws JSONException {
-        List<Group> userGroups = groupService.getGroupsByUser(userEmail);
-        
-        JSONObject response = new JSONObject();
-        response.put("type", "groups_list");
-        
-        JSONArray groupsArray = new JSONArray();
-        for (Group group : userGroups) {
-            JSONObject groupJson = new JSONObject();
-            groupJson.put("name", group.getGroupName());
-            
-            JSONArray membersArray = new JSONArray();
-            for (String member : group.getMembersEmails()) {
-                membersArray.put(member);
+    /**
+     * Called with queueLock held. Closing the socket ends the read loop and the session;
+     * the frames already numbered stay in the replay log for the resume.
+     */
+    private void overflow() {
+        overflowed = true;
+        System.err.println("Outbound queue full for " + userEmail + ", closing the connection for a resume");
+        try {
+            clientSocket.close();
+        } catch (IOException e) {
+            System.err.println("Error closing overflowed connection: " + e.getMessage());
+        }
+    }
+
+    private void writeOutbound() {
+        List<Outgoing> batch = new ArrayList<>();
+        while (true) {
+            queueLock.lock();
+            try {
+                while (outbound.isEmpty() && !writerStopped) {
+                    queueNotEmpty.awaitUninterruptibly();
+                }
+                batch.addAll(outbound);
+                outbound.clear();
+                if (batch.isEmpty() || overflowed) {
+                    break;
+                }
+            } finally {
+                queueLock.unlock();
             }
-            groupJson.put("members", membersArray);
-            groupsArray.put(groupJson);
+            for (Outgoing outgoing : batch) {
+                out.println(outgoing.frame);
+            }
+            if (out.checkError()) {
+                break;                      // Socket gone: the read loop ends the session
+            }
+            for (Outgoing outgoing : batch) {
+                runIfSet(outgoing.onWritten);
+            }
+            batch.clear();
         }
-        
-        response.put("groups", groupsArray);
-        sendMessage(response.toString());
+        // Not known to be written: left to the resume replay, or to whoever queued them
+        for (Outgoing outgoing : batch) {
+            runIfSet(outgoing.onLost);
+        }
+    }
+
+    /**
+     * Let the writer flush what is queued (briefly), then stop it
+     */
+    private void stopWriter() {
+        Thread current;
+        queueLock.lock();
+        try {
+            writerStopped = true;
+            queueNotEmpty.signal();
+            current = writer;
+        } finally {
+            queueLock.unlock();
+        }
+        if (current != null && current != Thread.currentThread()) {
+            try {
+                current.join(WRITER_DRAIN_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Queued after the writer gave up on a broken socket
+        List<Outgoing> unwritten;
+        queueLock.lock();
+        try {
+            if (current != null && current.isAlive()) {
+                return;
+            }
+            unwritten = new ArrayList<>(outbound);
+            outbound.clear();
+        } finally {
+            queueLock.unlock();
+        }
+        for (Outgoing outgoing : unwritten) {
+            runIfSet(outgoing.onLost);
+        }
+    }
+
+    private void handleGetGroups(JSONObject request) throws JSONException {
+        groupService.getGroupsByUserAsync(userEmail).whenComplete((userGroups, error) -> {
+            if (error != null) {
+                System.err.println("Error loading groups of " + userEmail + ": " + causeOf(error).getMessage());
+                replyError(request, "Failed to load groups");
+                return;
+            }
+            JSONObject response = replyTo(request, new JSONObject());
+            response.put("type", "groups_list");
+
+            JSONArray groupsArray = new JSONArray();
+            for (Group group : userGroups) {
+                JSONObject groupJson = new JSONObject();
+                groupJson.put("name", group.getGroupName());
+
+                JSONArray membersArray = new JSONArray();
+                for (String member : group.getMembersEmails()) {
+                    membersArray.put(member);
+                }
+                groupJson.put("members", membersArray);
+                groupsArray.put(groupJson);
+            }
+
+            response.put("groups", groupsArray);
+            reply(response);
+        });
     }
 }
\ No newline at end of file
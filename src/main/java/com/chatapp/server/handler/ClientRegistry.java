@@ -0,0 +1,87 @@
+package com.chatapp.server.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Authenticated sessions indexed by user email, shared by all handlers and services.
+ */
+public class ClientRegistry {
+    private static final int BROADCAST_CHUNK_SIZE = 256;
+    private static final Map<String, ClientHandler> sessions = new ConcurrentHashMap<>();
+    private static final ExecutorService broadcastPool =
+            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+                Thread thread = new Thread(r, "broadcast-fanout");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    public static void register(String email, ClientHandler handler) {
+        sessions.put(email, handler);
+    }
+
+    /**
+     * Remove a session, unless the user has already reconnected with a newer handler
+     */
+    public static void unregister(String email, ClientHandler handler) {
+        if (email != null) {
+            sessions.remove(email, handler);
+        }
+    }
+
+    public static ClientHandler find(String email) {
+        return email != null ? sessions.get(email) : null;
+    }
+
+    public static boolean isOnline(String email) {
+        return find(email) != null;
+    }
+
+    /**
+     * Send a frame to a user if connected
+     *
+     * @return true if the user had an active session
+     */
+    public static boolean sendTo(String email, String message) {
+        ClientHandler handler = find(email);
+        if (handler == null) {
+            return false;
+        }
+        handler.sendMessage(message);
+        return true;
+    }
+
+    /**
+     * Point-in-time copy of the connected sessions, safe to iterate without locking
+     */
+    public static List<ClientHandler> snapshot() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    /**
+     * Send an already encoded frame to every connected user, except "exclude".
+     * Works on a snapshot of the sessions and only enqueues onto each connection's
+     * outbound queue, in parallel chunks, so the caller returns immediately.
+     */
+    public static void broadcast(String message, ClientHandler exclude) {
+        List<ClientHandler> targets = snapshot();
+        for (int start = 0; start < targets.size(); start += BROADCAST_CHUNK_SIZE) {
+            List<ClientHandler> chunk = targets.subList(start, Math.min(start + BROADCAST_CHUNK_SIZE, targets.size()));
+            broadcastPool.execute(() -> {
+                for (ClientHandler handler : chunk) {
+                    if (handler != exclude) {
+                        handler.enqueue(message);
+                    }
+                }
+            });
+        }
+    }
+
+    public static int size() {
+        return sessions.size();
+    }
+}
@@ -0,0 +1,331 @@
+package com.chatapp.server.handler;
+
+import com.chatapp.common.model.Message;
+import com.chatapp.common.util.RingBuffer;
+import com.chatapp.data.service.MessageSpool;
+import com.chatapp.data.service.UserDirectory;
+import com.chatapp.server.service.ConversationService;
+import com.chatapp.server.service.InboxService;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Private messages go through a staged pipeline instead of the connection thread:
+ * decode → validate → (persist ∥ route), each stage on its own thread, all sharing one
+ * pre-allocated ring. Persist and route both follow validate, so delivery never waits
+ * for the database, and persist saves whatever accumulated since its last write in one
+ * batch. When the ring is full the connection thread waits (TCP backpressure), and
+ * gives up with a "busy" error after PUBLISH_TIMEOUT_MS. An idle stage spins briefly,
+ * then blocks until the publisher or the stage it follows wakes it.
+ */
+public class InboundPipeline {
+    private static final int RING_SIZE = 4096;
+    private static final int MAX_BATCH = 256;
+    private static final int MAX_CONTENT_LENGTH = 16384;
+    private static final long PUBLISH_TIMEOUT_MS = 5000;
+    private static final long IDLE_PARK_NS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final int IDLE_SPINS = 100;     // Short parks before an idle stage blocks
+    private static final long REPORT_INTERVAL_S = 60;
+    private static final InboundPipeline instance = new InboundPipeline();
+
+    private final RingBuffer<Event> ring = new RingBuffer<>(RING_SIZE, Event::new);
+    private final ConversationService conversationService = new ConversationService();
+    private final Stage decode;
+    private final Stage validate;
+    private final Stage persist;
+    private final Stage route;
+    private final AtomicLong fullWaits = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private long lastReported;
+
+    /**
+     * One slot of the ring, reset by the producer each time it is reused
+     */
+    private static class Event {
+        ClientHandler source;
+        String sender;
+        String frame;
+        String recipient;
+        String content;
+        Message message;
+        JSONObject routingMessage;
+        boolean skip;       // Handled elsewhere or rejected by an earlier stage
+
+        void reset(ClientHandler source, String sender, String frame) {
+            this.source = source;
+            this.sender = sender;
+            this.frame = frame;
+            recipient = null;
+            content = null;
+            message = null;
+            routingMessage = null;
+            skip = false;
+        }
+    }
+
+    private interface BatchHandler {
+        void onBatch(long from, long to);
+    }
+
+    /**
+     * A consumer thread with its own sequence, following the publisher or other stages
+     */
+    private class Stage implements Runnable {
+        final String name;
+        final AtomicLong sequence = new AtomicLong(-1);
+        final AtomicLong processed = new AtomicLong();
+        final AtomicLong batches = new AtomicLong();
+        final Stage[] dependencies;     // Empty: follows the publisher
+        final List<Stage> dependents = new ArrayList<>();
+        final BatchHandler handler;
+        volatile Thread thread;
+        volatile boolean sleeping;
+
+        Stage(String name, BatchHandler handler, Stage... dependencies) {
+            this.name = name;
+            this.handler = handler;
+            this.dependencies = dependencies;
+            for (Stage dependency : dependencies) {
+                dependency.dependents.add(this);
+            }
+        }
+
+        /**
+         * Called after the publisher or a dependency advanced. The sleeping flag is set
+         * before the stage re-checks its input, so either it sees the new events or we see it.
+         */
+        void wake() {
+            if (sleeping) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        private long available(long next) {
+            if (dependencies.length == 0) {
+                return ring.highestPublished(next);
+            }
+            long minimum = Long.MAX_VALUE;
+            for (Stage dependency : dependencies) {
+                minimum = Math.min(minimum, dependency.sequence.get());
+            }
+            return minimum;
+        }
+
+        @Override
+        public void run() {
+            long next = 0;
+            int idleSpins = 0;
+            while (true) {
+                long available = available(next);
+                if (available < next) {
+                    // Spin briefly under load, then block until woken
+                    if (++idleSpins < IDLE_SPINS) {
+                        LockSupport.parkNanos(IDLE_PARK_NS);
+                        continue;
+                    }
+                    sleeping = true;
+                    if (available(next) < next) {
+                        LockSupport.park(this);
+                    }
+                    sleeping = false;
+                    continue;
+                }
+                idleSpins = 0;
+                long upTo = Math.min(available, next + MAX_BATCH - 1);
+                try {
+                    handler.onBatch(next, upTo);
+                } catch (RuntimeException e) {
+                    System.err.println("Error in pipeline stage " + name + ": " + e.getMessage());
+                    e.printStackTrace();
+                }
+                processed.addAndGet(upTo - next + 1);
+                batches.incrementAndGet();
+                sequence.set(upTo);
+                for (Stage dependent : dependents) {
+                    dependent.wake();
+                }
+                next = upTo + 1;
+            }
+        }
+
+        void start() {
+            thread = new Thread(this, "pipeline-" + name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private InboundPipeline() {
+        decode = new Stage("decode", this::decode);
+        validate = new Stage("validate", this::validate, decode);
+        persist = new Stage("persist", this::persist, validate);
+        route = new Stage("route", this::route, validate);
+        ring.setGatingSequences(persist.sequence, route.sequence);
+        decode.start();
+        validate.start();
+        persist.start();
+        route.start();
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "pipeline-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleWithFixedDelay(this::report, REPORT_INTERVAL_S, REPORT_INTERVAL_S, TimeUnit.SECONDS);
+    }
+
+    public static InboundPipeline getInstance() {
+        return instance;
+    }
+
+    /**
+     * Hand a raw "private" frame to the pipeline, waiting while the ring is full
+     *
+     * @return false if the ring stayed full for PUBLISH_TIMEOUT_MS
+     */
+    public boolean publish(ClientHandler source, String sender, String frame) {
+        long sequence = ring.tryClaim();
+        if (sequence < 0) {
+            fullWaits.incrementAndGet();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PUBLISH_TIMEOUT_MS);
+            while ((sequence = ring.tryClaim()) < 0) {
+                if (System.nanoTime() > deadline) {
+                    rejected.incrementAndGet();
+                    return false;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NS);
+            }
+        }
+        ring.get(sequence).reset(source, sender, frame);
+        ring.publish(sequence);
+        decode.wake();
+        return true;
+    }
+
+    /**
+     * Parse the frame; group messages leave the pipeline for their conversation shard
+     */
+    private void decode(long from, long to) {
+        for (long sequence = from; sequence <= to; sequence++) {
+            Event event = ring.get(sequence);
+            try {
+                JSONObject json = new JSONObject(event.frame);
+                if (!"private".equals(json.getString("type"))) {
+                    // Routed here by the raw type scan only; another type must not pass as a message
+                    event.skip = true;
+                    event.source.sendError("Malformed frame rejected");
+                    continue;
+                }
+                event.recipient = json.getString("to");
+                event.content = json.getString("content");
+                if (json.optBoolean("isGroup", false) || !event.recipient.contains("@")) {
+                    event.skip = true;
+                    event.source.dispatchGroupFrame(json);
+                }
+            } catch (JSONException e) {
+                event.skip = true;
+                System.err.println("Invalid private message from " + event.sender + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void validate(long from, long to) {
+        for (long sequence = from; sequence <= to; sequence++) {
+            Event event = ring.get(sequence);
+            if (event.skip) {
+                continue;
+            }
+            String error = null;
+            if (event.content.isEmpty()) {
+                error = "Empty message";
+            } else if (event.content.length() > MAX_CONTENT_LENGTH) {
+                error = "Message too long (max " + MAX_CONTENT_LENGTH + " characters)";
+            } else if (!UserDirectory.getInstance().mightExist(event.recipient)) {
+                error = "User '" + event.recipient + "' not found";
+            }
+            if (error != null) {
+                event.skip = true;
+                event.source.sendError(error);
+                continue;
+            }
+            Message message = new Message(event.sender, event.content, "private");
+            message.setConversationParticipants(event.sender, event.recipient);
+            event.message = message;
+            event.routingMessage = message.toJson();
+        }
+    }
+
+    /**
+     * Everything validated since the last write goes to the database in one batch
+     */
+    private void persist(long from, long to) {
+        List<Event> events = new ArrayList<>();
+        List<Message> messages = new ArrayList<>();
+        for (long sequence = from; sequence <= to; sequence++) {
+            Event event = ring.get(sequence);
+            if (!event.skip) {
+                events.add(event);
+                messages.add(event.message);
+            }
+        }
+        if (messages.isEmpty()) {
+            return;
+        }
+        int saved = conversationService.saveMessages(messages);
+        if (saved == 0) {
+            // Batch failed (database down or not): routing goes on, the spool writes the batch later
+            for (Event event : events) {
+                MessageSpool.getInstance().append(event.message, event.sender, event.recipient);
+            }
+            return;
+        }
+        if (saved < messages.size()) {
+            System.err.println("Pipeline persisted " + saved + " of " + messages.size() + " messages");
+        }
+        // Both sides must be participants for cursor-based offline catch-up
+        for (Event event : events) {
+            conversationService.ensureParticipants(event.message.getConversationId(), event.sender, event.recipient);
+        }
+    }
+
+    private void route(long from, long to) {
+        for (long sequence = from; sequence <= to; sequence++) {
+            Event event = ring.get(sequence);
+            if (event.skip) {
+                continue;
+            }
+            try {
+                Message message = event.message;
+                InboxService.getInstance().onMessage(message.getConversationId(), false, null,
+                        List.of(event.sender, event.recipient), event.sender, event.content, message.getTimestamp());
+                event.source.routeDirectMessage(event.recipient, event.routingMessage);
+            } catch (RuntimeException e) {
+                System.err.println("Error routing message from " + event.sender + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void report() {
+        long total = decode.processed.get();
+        if (total == lastReported) {
+            return;
+        }
+        lastReported = total;
+        System.out.println("Inbound pipeline: depth " + ring.depth() + "/" + ring.capacity()
+                + ", ring full " + fullWaits.get() + " times, " + rejected.get() + " rejected");
+        for (Stage stage : new Stage[]{decode, validate, persist, route}) {
+            long batches = stage.batches.get();
+            System.out.println("  " + stage.name + ": " + stage.processed.get() + " events, "
+                    + (batches > 0 ? stage.processed.get() / batches : 0) + " per batch, "
+                    + (decode.sequence.get() - stage.sequence.get()) + " behind decode");
+        }
+    }
+}
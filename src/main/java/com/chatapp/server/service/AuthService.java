@@ -0,0 +1,156 @@
+package com.chatapp.server.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dedicated authentication stage. Password checks run on a small bounded pool so a
+ * login storm cannot take every database connection; when the queue is full the
+ * login is refused at once with a retry delay. Recently verified credentials are
+ * kept as salted digests for a few minutes and accepted without a database query.
+ */
+public class AuthService {
+    private static final int AUTH_THREADS = 4;
+    private static final int MAX_QUEUED = 200;
+    private static final long AUTH_TIMEOUT_MS = 5000;
+    private static final long CACHE_TTL_MS = 5 * 60 * 1000;
+    private static final int MAX_CACHED = 50000;
+    private static final long MIN_RETRY_AFTER_MS = 500;
+    private static final AuthService instance = new AuthService();
+
+    public enum Status { SUCCESS, FAILED, BUSY }
+
+    /**
+     * Outcome of a login attempt; retryAfterMs is only set when BUSY
+     */
+    public static class Result {
+        public final Status status;
+        public final long retryAfterMs;
+
+        Result(Status status, long retryAfterMs) {
+            this.status = status;
+            this.retryAfterMs = retryAfterMs;
+        }
+    }
+
+    private static class CachedCredential {
+        final byte[] digest;
+        final long expiresAt;
+
+        CachedCredential(byte[] digest, long expiresAt) {
+            this.digest = digest;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final UserService userService = new UserService();
+    private final ThreadPoolExecutor executor;
+    private final Map<String, CachedCredential> verified = new ConcurrentHashMap<>();
+    private final byte[] salt = new byte[16];
+    // Moving average of a database check, used to estimate the retry delay
+    private final AtomicLong averageAuthMs = new AtomicLong(20);
+
+    private AuthService() {
+        new SecureRandom().nextBytes(salt);
+        executor = new ThreadPoolExecutor(AUTH_THREADS, AUTH_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED), r -> {
+                    Thread thread = new Thread(r, "auth-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public static AuthService getInstance() {
+        return instance;
+    }
+
+    public Result authenticate(String email, String password) {
+        byte[] digest = digest(email, password);
+        CachedCredential cached = verified.get(email);
+        if (cached != null && cached.expiresAt > System.currentTimeMillis()
+                && MessageDigest.isEqual(cached.digest, digest)) {
+            return new Result(Status.SUCCESS, 0);
+        }
+
+        Future<Boolean> check;
+        try {
+            check = executor.submit(() -> {
+                long start = System.currentTimeMillis();
+                boolean ok = userService.authenticateUser(email, password);
+                long elapsed = System.currentTimeMillis() - start;
+                averageAuthMs.updateAndGet(avg -> (avg * 7 + elapsed) / 8);
+                return ok;
+            });
+        } catch (RejectedExecutionException e) {
+            System.out.println("Auth queue full, rejecting login for " + email);
+            return new Result(Status.BUSY, retryAfter());
+        }
+
+        try {
+            if (!check.get(AUTH_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                verified.remove(email);
+                return new Result(Status.FAILED, 0);
+            }
+        } catch (TimeoutException e) {
+            check.cancel(true);
+            return new Result(Status.BUSY, retryAfter());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Result(Status.BUSY, retryAfter());
+        } catch (ExecutionException e) {
+            System.err.println("Error during authentication: " + e.getCause().getMessage());
+            return new Result(Status.FAILED, 0);
+        }
+
+        if (verified.size() >= MAX_CACHED) {
+            long now = System.currentTimeMillis();
+            verified.values().removeIf(entry -> entry.expiresAt <= now);
+            if (verified.size() >= MAX_CACHED) {
+                verified.clear();
+            }
+        }
+        verified.put(email, new CachedCredential(digest, System.currentTimeMillis() + CACHE_TTL_MS));
+        return new Result(Status.SUCCESS, 0);
+    }
+
+    /**
+     * Forget the cached credential of a user, e.g. after a password change
+     */
+    public void invalidate(String email) {
+        verified.remove(email);
+    }
+
+    /**
+     * Time for the current queue to drain, with some jitter so rejected clients spread out
+     */
+    private long retryAfter() {
+        long drainMs = (executor.getQueue().size() + AUTH_THREADS) * averageAuthMs.get() / AUTH_THREADS;
+        long base = Math.max(MIN_RETRY_AFTER_MS, drainMs);
+        return base + (long) (Math.random() * base);
+    }
+
+    private byte[] digest(String email, String password) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(salt);
+            sha.update(email.getBytes(StandardCharsets.UTF_8));
+            sha.update((byte) 0);
+            sha.update(password.getBytes(StandardCharsets.UTF_8));
+            return sha.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
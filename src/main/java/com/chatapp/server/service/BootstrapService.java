@@ -0,0 +1,92 @@
+package com.chatapp.server.service;
+
+import com.chatapp.common.model.ConversationSummary;
+import com.chatapp.common.model.Group;
+import com.chatapp.data.dao.MessageDAO;
+import com.chatapp.data.db.DatabaseExecutor;
+import com.chatapp.data.db.DatabaseManager.Workload;
+import com.chatapp.data.storage.Storage;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Builds the single frame sent right after login when the client asks for a bootstrap:
+ * groups, contacts, inbox and the first page of the most recent conversations. Independent
+ * reads run in parallel on the history executor, so a login storm waits in its bounded
+ * queue. Pending messages are added by the caller once this has succeeded: taking them
+ * drains the offline queue, which must not happen for a frame that is never sent.
+ */
+public class BootstrapService {
+    private static final int TOP_CONVERSATIONS = 5;
+    private static final int PAGE_SIZE = 30;
+
+    private final GroupService groupService;
+    private final MessageDAO messageDAO = Storage.messages();
+
+    public BootstrapService(GroupService groupService) {
+        this.groupService = groupService;
+    }
+
+    public JSONObject build(String userEmail) {
+        long start = System.currentTimeMillis();
+
+        CompletableFuture<List<Group>> groups =
+                DatabaseExecutor.supplyAsync(Workload.HISTORY, () -> groupService.getGroupsByUser(userEmail));
+        CompletableFuture<ContactService.ContactsSnapshot> contacts =
+                DatabaseExecutor.supplyAsync(Workload.HISTORY, () -> ContactService.getInstance().getContactsSince(userEmail, 0));
+        CompletableFuture<List<ConversationSummary>> inbox =
+                DatabaseExecutor.supplyAsync(Workload.HISTORY, () -> InboxService.getInstance().getInbox(userEmail, 0));
+
+        // First page of the most active conversations, fetched as soon as the inbox is known
+        CompletableFuture<JSONArray> pages = inbox.thenCompose(summaries -> {
+            List<ConversationSummary> top = summaries.subList(0, Math.min(TOP_CONVERSATIONS, summaries.size()));
+            List<CompletableFuture<JSONObject>> pageFutures = new ArrayList<>();
+            for (ConversationSummary summary : top) {
+                pageFutures.add(messageDAO.getRecentMessagesAsync(summary.getConversationId(), PAGE_SIZE).thenApply(messages -> {
+                    JSONObject page = new JSONObject();
+                    page.put("conversationId", summary.getConversationId());
+                    page.put("title", summary.getTitle());
+                    page.put("isGroup", summary.isGroup());
+                    page.put("messages", new JSONArray(messages));
+                    return page;
+                }));
+            }
+            return CompletableFuture.allOf(pageFutures.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+                JSONArray array = new JSONArray();
+                pageFutures.forEach(future -> array.put(future.join()));
+                return array;
+            });
+        });
+
+        JSONObject frame = new JSONObject();
+        frame.put("type", "BOOTSTRAP");
+        frame.put("groups", toGroupsJson(groups.join()));
+        ContactService.ContactsSnapshot contactList = contacts.join();
+        frame.put("contacts", new JSONArray(contactList.contacts));
+        frame.put("contactsVersion", contactList.version);
+        JSONArray inboxJson = new JSONArray();
+        for (ConversationSummary summary : inbox.join()) {
+            inboxJson.put(summary.toJson());
+        }
+        frame.put("inbox", inboxJson);
+        frame.put("conversations", pages.join());
+
+        System.out.println("Bootstrap for " + userEmail + " built in " + (System.currentTimeMillis() - start) + " ms");
+        return frame;
+    }
+
+    private JSONArray toGroupsJson(List<Group> groups) {
+        JSONArray groupsArray = new JSONArray();
+        for (Group group : groups) {
+            JSONObject groupJson = new JSONObject();
+            groupJson.put("name", group.getGroupName());
+            groupJson.put("members", new JSONArray(group.getMembersEmails()));
+            groupsArray.put(groupJson);
+        }
+        return groupsArray;
+    }
+}
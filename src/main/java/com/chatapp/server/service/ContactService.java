@@ -0,0 +1,158 @@
+package com.chatapp.server.service;
+
+import com.chatapp.data.dao.ContactDAO;
+import com.chatapp.data.dao.impl.ContactDAOImpl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Server-side contact lists with a per-user cache and version numbers.
+ * Versions only grow (seeded from the clock, so they survive restarts) and a short
+ * change log lets clients fetch only what changed since the version they hold.
+ */
+public class ContactService {
+    private static final int MAX_CHANGES = 50;
+    private static final ContactService instance = new ContactService();
+
+    private final ContactDAO contactDAO = new ContactDAOImpl();
+    private final Map<String, ContactList> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Result of a contacts request: either the full list or the changes since a version
+     */
+    public static class ContactsSnapshot {
+        public final long version;
+        public final boolean full;
+        public final List<String> contacts;   // Full list when full, otherwise added contacts
+        public final List<String> removed;
+
+        ContactsSnapshot(long version, boolean full, List<String> contacts, List<String> removed) {
+            this.version = version;
+            this.full = full;
+            this.contacts = contacts;
+            this.removed = removed;
+        }
+    }
+
+    private static class Change {
+        final long version;
+        final String email;
+        final boolean added;
+
+        Change(long version, String email, boolean added) {
+            this.version = version;
+            this.email = email;
+            this.added = added;
+        }
+    }
+
+    private static class ContactList {
+        final Set<String> contacts;
+        final Deque<Change> changes = new ArrayDeque<>();
+        long version;
+        long baseVersion;   // Oldest version the change log can produce a delta from
+
+        ContactList(List<String> contacts) {
+            this.contacts = new LinkedHashSet<>(contacts);
+            this.version = System.currentTimeMillis();
+            this.baseVersion = version;
+        }
+
+        void record(String email, boolean added) {
+            version = Math.max(version + 1, System.currentTimeMillis());
+            changes.addLast(new Change(version, email, added));
+            if (changes.size() > MAX_CHANGES) {
+                baseVersion = changes.removeFirst().version;
+            }
+        }
+    }
+
+    private ContactService() {
+    }
+
+    public static ContactService getInstance() {
+        return instance;
+    }
+
+    public List<String> getContacts(String userEmail) {
+        ContactList list = load(userEmail);
+        synchronized (list) {
+            return new ArrayList<>(list.contacts);
+        }
+    }
+
+    /**
+     * Contacts as seen by a client holding "sinceVersion" (0 for none):
+     * nothing, the delta, or the full list when the change log does not reach back that far.
+     */
+    public ContactsSnapshot getContactsSince(String userEmail, long sinceVersion) {
+        ContactList list = load(userEmail);
+        synchronized (list) {
+            if (sinceVersion == list.version) {
+                return new ContactsSnapshot(list.version, false, new ArrayList<>(), new ArrayList<>());
+            }
+            if (sinceVersion < list.baseVersion || sinceVersion > list.version) {
+                return new ContactsSnapshot(list.version, true, new ArrayList<>(list.contacts), new ArrayList<>());
+            }
+            Set<String> added = new LinkedHashSet<>();
+            Set<String> removed = new LinkedHashSet<>();
+            for (Change change : list.changes) {
+                if (change.version <= sinceVersion) {
+                    continue;
+                }
+                if (change.added) {
+                    removed.remove(change.email);
+                    added.add(change.email);
+                } else {
+                    added.remove(change.email);
+                    removed.add(change.email);
+                }
+            }
+            return new ContactsSnapshot(list.version, false, new ArrayList<>(added), new ArrayList<>(removed));
+        }
+    }
+
+    /**
+     * @return the new list version, or -1 if the contact could not be added
+     */
+    public long addContact(String userEmail, String contactEmail) {
+        ContactList list = load(userEmail);
+        synchronized (list) {
+            if (list.contacts.contains(contactEmail)) {
+                return list.version;
+            }
+            if (!contactDAO.addContact(userEmail, contactEmail)) {
+                return -1;
+            }
+            list.contacts.add(contactEmail);
+            list.record(contactEmail, true);
+            return list.version;
+        }
+    }
+
+    /**
+     * @return the new list version, or -1 if the contact could not be removed
+     */
+    public long removeContact(String userEmail, String contactEmail) {
+        ContactList list = load(userEmail);
+        synchronized (list) {
+            if (!contactDAO.removeContact(userEmail, contactEmail)) {
+                return -1;
+            }
+            list.contacts.remove(contactEmail);
+            list.record(contactEmail, false);
+            return list.version;
+        }
+    }
+
+    private ContactList load(String userEmail) {
+        return cache.computeIfAbsent(userEmail, email -> new ContactList(contactDAO.getContacts(email)));
+    }
+}
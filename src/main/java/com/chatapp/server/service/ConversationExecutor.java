@@ -0,0 +1,144 @@
+package com.chatapp.server.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Inbound conversation work (messages, files, receipts) runs on a fixed set of
+ * single-threaded shards, one per core, chosen by conversation id. Everything about a
+ * conversation is therefore handled in arrival order by one thread, whichever
+ * connection it came from. Queue depth and latency (queue wait plus run time) are
+ * tracked per shard and logged every minute when there was activity. Shard queues are
+ * bounded: when one is full the task is refused and the caller answers "busy".
+ * Tasks should not block on I/O; file storage runs on FileService's pool.
+ */
+public class ConversationExecutor {
+    private static final int SHARD_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final int MAX_QUEUED_PER_SHARD = 10000;
+    private static final long REPORT_INTERVAL_S = 60;
+    private static final ConversationExecutor instance = new ConversationExecutor();
+
+    private final Shard[] shards = new Shard[SHARD_COUNT];
+    private final AtomicLong rejected = new AtomicLong();
+
+    private static class Shard {
+        final ThreadPoolExecutor executor;
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong totalLatencyMs = new AtomicLong();
+        final AtomicLong maxLatencyMs = new AtomicLong();
+        final AtomicLong maxDepth = new AtomicLong();
+
+        Shard(int index) {
+            executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(MAX_QUEUED_PER_SHARD), r -> {
+                Thread thread = new Thread(r, "conversation-shard-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Counters of one shard since the previous report
+     */
+    public static class ShardStats {
+        public final int shard;
+        public final int queueDepth;
+        public final long maxDepth;
+        public final long completed;
+        public final long avgLatencyMs;
+        public final long maxLatencyMs;
+
+        ShardStats(int shard, int queueDepth, long maxDepth, long completed, long avgLatencyMs, long maxLatencyMs) {
+            this.shard = shard;
+            this.queueDepth = queueDepth;
+            this.maxDepth = maxDepth;
+            this.completed = completed;
+            this.avgLatencyMs = avgLatencyMs;
+            this.maxLatencyMs = maxLatencyMs;
+        }
+
+        @Override
+        public String toString() {
+            return "shard " + shard + ": depth " + queueDepth + " (max " + maxDepth + "), " + completed
+                    + " tasks, latency avg " + avgLatencyMs + " ms, max " + maxLatencyMs + " ms";
+        }
+    }
+
+    private ConversationExecutor() {
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            shards[i] = new Shard(i);
+        }
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "conversation-shard-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleWithFixedDelay(this::report, REPORT_INTERVAL_S, REPORT_INTERVAL_S, TimeUnit.SECONDS);
+    }
+
+    public static ConversationExecutor getInstance() {
+        return instance;
+    }
+
+    /**
+     * Run a task on the shard owning the conversation, after the tasks already queued for it
+     *
+     * @return false if the shard queue is full and the task was not accepted
+     */
+    public boolean submit(String conversationId, Runnable task) {
+        Shard shard = shards[Math.floorMod(conversationId.hashCode(), SHARD_COUNT)];
+        long queuedAt = System.nanoTime();
+        try {
+            shard.executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Error processing conversation " + conversationId + ": " + e.getMessage());
+                    e.printStackTrace();
+                } finally {
+                    long latency = (System.nanoTime() - queuedAt) / 1_000_000;
+                    shard.completed.incrementAndGet();
+                    shard.totalLatencyMs.addAndGet(latency);
+                    shard.maxLatencyMs.accumulateAndGet(latency, Math::max);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        shard.maxDepth.accumulateAndGet(shard.executor.getQueue().size(), Math::max);
+        return true;
+    }
+
+    /**
+     * Current counters of every shard, resetting them for the next interval
+     */
+    public List<ShardStats> drainStats() {
+        List<ShardStats> stats = new ArrayList<>(SHARD_COUNT);
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            Shard shard = shards[i];
+            long completed = shard.completed.getAndSet(0);
+            long totalLatency = shard.totalLatencyMs.getAndSet(0);
+            stats.add(new ShardStats(i, shard.executor.getQueue().size(), shard.maxDepth.getAndSet(0), completed,
+                    completed > 0 ? totalLatency / completed : 0, shard.maxLatencyMs.getAndSet(0)));
+        }
+        return stats;
+    }
+
+    private void report() {
+        List<ShardStats> stats = drainStats();
+        if (stats.stream().allMatch(s -> s.completed == 0 && s.queueDepth == 0)) {
+            return;
+        }
+        System.out.println("Conversation shards (" + rejected.getAndSet(0) + " tasks rejected):");
+        stats.forEach(s -> System.out.println("  " + s));
+    }
+}
@@ -3,12 +3,15 @@ package com.chatapp.server.service;
 import java.io.*;
 import java.util.*;
 import java.nio.file.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import com.chatapp.common.model.Message;
 import com.chatapp.data.dao.MessageDAO;
-import com.chatapp.data.dao.impl.MessageDAOImpl;
+import com.chatapp.data.storage.Storage;
+import com.chatapp.data.service.MessageSpool;
 
 /**
  * Service to handle conversation persistence and retrieval using Database Storage.
@@ -18,6 +21,9 @@ public class ConversationService {
     // Note: Les méthodes relatives au stockage sur fichier (loadHistory, saveToFile) 
     // sont conservées ici pour référence, mais ne seront plus utilisées dans la nouvelle version.
     // La méthode generateConversationId reste inchangée.
+
+    // Conversations whose participants are already registered, shared by all handlers
+    private static final Set<String> knownConversations = ConcurrentHashMap.newKeySet();
     
     /**
      * Constructor that initializes the ConversationService.
@@ -30,22 +36,76 @@ public class ConversationService {
     /**
      * Save a message to conversation history directly in the database.
      * (Ancienne version basée sur les fichiers JSON remplacée par un appel direct au DAO.)
+     * When the save fails the message goes to the local spool instead.
+     *
+     * @param participants Participants to register for offline catch-up, if any
      */
-    public void saveMessage(Message message) {
-        MessageDAO messageDAO = new MessageDAOImpl();
+    public void saveMessage(Message message, String... participants) {
+        MessageDAO messageDAO = Storage.messages();
         if (messageDAO.save(message)) {
             System.out.println("Message saved into DB for conversation " + message.getConversationId());
+            SessionService.getInstance().recordWrite(message.getSender());
+            if (participants.length > 0) {
+                ensureParticipants(message.getConversationId(), participants);
+            }
+        } else {
+            // Failed, whatever the circuit state: keep it locally, the replay skips it if it was stored
+            MessageSpool.getInstance().append(message, participants);
         }
     }
     
+    /**
+     * Save several messages in one database round trip
+     *
+     * @return how many were stored
+     */
+    public int saveMessages(List<Message> messages) {
+        MessageDAO messageDAO = Storage.messages();
+        int saved = messageDAO.saveBatch(messages);
+        if (saved > 0) {
+            messages.forEach(message -> SessionService.getInstance().recordWrite(message.getSender()));
+        }
+        return saved;
+    }
+
+    /**
+     * Register the participants of a conversation so offline catch-up can find it.
+     * Only the first call per conversation reaches the database.
+     */
+    public void ensureParticipants(String conversationId, String... userEmails) {
+        if (knownConversations.contains(conversationId)) {
+            return;
+        }
+        MessageDAO messageDAO = Storage.messages();
+        if (messageDAO.addParticipants(conversationId, Arrays.asList(userEmails))) {
+            knownConversations.add(conversationId);
+        }
+    }
+
+    /**
+     * Messages stored after the user's delivered cursor, oldest first:
+     * conversations the user takes part in, then the shared broadcast log.
+     */
+    public List<String> getMessagesAfterCursor(String userEmail) {
+        MessageDAO messageDAO = Storage.messages();
+        List<String> messages = messageDAO.getOfflineMessages(userEmail);
+        messages.addAll(messageDAO.getBroadcastsAfterCursor(userEmail));
+        return messages;
+    }
+
     /**
      * Load conversation history between two users from the database.
      * (Remplace l’ancienne lecture des fichiers JSON.)
      */
     public List<JSONObject> getConversationHistory(String user1, String user2) {
-        MessageDAO messageDAO = new MessageDAOImpl();
+        MessageDAO messageDAO = Storage.messages();
         return messageDAO.getConversationHistory(user1, user2);
     }
+
+    public CompletableFuture<List<JSONObject>> getConversationHistoryAsync(String user1, String user2) {
+        MessageDAO messageDAO = Storage.messages();
+        return messageDAO.getConversationHistoryAsync(user1, user2);
+    }
     
     /**
      * Generate a conversation ID from two user emails.
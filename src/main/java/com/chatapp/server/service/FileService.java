@@ -2,20 +2,37 @@ package com.chatapp.server.service;
 
 import com.chatapp.common.model.FileMessage;
 import com.chatapp.data.dao.FileDAO;
-import com.chatapp.data.dao.impl.FileDAOImpl;
+import com.chatapp.data.storage.Storage;
 import org.json.JSONObject;
 
 import java.io.*;
 import java.nio.file.*;
+import java.util.Base64;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public class FileService {
     private static final String UPLOAD_DIR = "uploads";
+    private static final int FILE_IO_THREADS = 4;
+    private static final int MAX_QUEUED_FILE_IO = 200;
+    // Upload decoding and disk I/O, kept off the conversation shards; a full queue rejects the call
+    private static final ThreadPoolExecutor fileIo = new ThreadPoolExecutor(
+            FILE_IO_THREADS, FILE_IO_THREADS, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(MAX_QUEUED_FILE_IO), r -> {
+                Thread thread = new Thread(r, "file-io");
+                thread.setDaemon(true);
+                return thread;
+            });
     private final FileDAO fileDAO;
     
     public FileService() {
-        this.fileDAO = new FileDAOImpl();
+        this.fileDAO = Storage.files();
         // Create uploads directory if it doesn't exist
         File uploadDir = new File(UPLOAD_DIR);
         if (!uploadDir.exists()) {
@@ -49,6 +66,7 @@ public class FileService {
             
             // Save metadata to database
             if (fileDAO.saveFileMetadata(fileMessage)) {
+                SessionService.getInstance().recordWrite(senderEmail);
                 return fileMessage;
             } else {
                 // Cleanup file if database insertion fails
@@ -63,6 +81,18 @@ public class FileService {
         }
     }
     
+    /**
+     * Decode and store a private upload on the file I/O pool
+     *
+     * @return completes with the stored file, or null if it could not be saved;
+     *         exceptionally when the data is not base64 or the pool is saturated
+     */
+    public CompletableFuture<FileMessage> saveFileAsync(String senderEmail, String recipientEmail,
+                                                        String filename, String base64Data, String mimeType) {
+        return supplyFileIo(() -> saveFile(senderEmail, recipientEmail, filename,
+                Base64.getDecoder().decode(base64Data), mimeType));
+    }
+
     public byte[] getFileData(String fileId) {
         FileMessage file = fileDAO.getFileById(fileId);
         if (file == null) {
@@ -78,13 +108,39 @@ public class FileService {
         }
     }
     
+    /**
+     * File contents, or null if unknown or unreadable. The metadata lookup runs on the
+     * database executor, the disk read off it.
+     */
+    public CompletableFuture<byte[]> getFileDataAsync(String fileId) {
+        return fileDAO.getFileByIdAsync(fileId).thenApplyAsync(file -> {
+            if (file == null) {
+                return null;
+            }
+            try {
+                return Files.readAllBytes(Paths.get(file.getStoredPath()));
+            } catch (IOException e) {
+                System.err.println("Error reading file: " + e.getMessage());
+                return null;
+            }
+        }, fileIo);
+    }
+
     public List<FileMessage> getFilesByConversation(String conversationId) {
         return fileDAO.getFilesByConversation(conversationId);
     }
+
+    public CompletableFuture<List<FileMessage>> getFilesByConversationAsync(String conversationId) {
+        return fileDAO.getFilesByConversationAsync(conversationId);
+    }
     
     public boolean updateFileStatus(String fileId, boolean delivered, boolean viewed) {
         return fileDAO.updateFileStatus(fileId, delivered, viewed);
     }
+
+    public CompletableFuture<Boolean> updateFileStatusAsync(String fileId, boolean delivered, boolean viewed) {
+        return fileDAO.updateFileStatusAsync(fileId, delivered, viewed);
+    }
     
     public boolean deleteFile(String fileId) {
         FileMessage file = fileDAO.getFileById(fileId);
@@ -116,6 +172,23 @@ public class FileService {
 
     // Add to FileService.java
 
+    /**
+     * Decode and store a group upload on the file I/O pool, see saveFileAsync
+     */
+    public CompletableFuture<FileMessage> saveGroupFileAsync(String senderEmail, String groupName, String filename,
+                                                             String base64Data, String mimeType) {
+        return supplyFileIo(() -> saveGroupFile(senderEmail, groupName, filename,
+                Base64.getDecoder().decode(base64Data), mimeType));
+    }
+
+    private static <T> CompletableFuture<T> supplyFileIo(Supplier<T> call) {
+        try {
+            return CompletableFuture.supplyAsync(call, fileIo);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     public FileMessage saveGroupFile(String senderEmail, String groupName, String filename, byte[] fileData, String mimeType) {
         try {
             // Generate a unique filename
@@ -141,6 +214,7 @@ public class FileService {
     
             // Save metadata to database
             if (fileDAO.saveFileMetadata(fileMessage)) {
+                SessionService.getInstance().recordWrite(senderEmail);
                 return fileMessage;
             } else {
                 // Cleanup file if database insertion fails
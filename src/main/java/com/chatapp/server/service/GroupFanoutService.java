@@ -0,0 +1,213 @@
+package com.chatapp.server.service;
+
+import com.chatapp.server.handler.ClientHandler;
+import com.chatapp.server.handler.ClientRegistry;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Delivery of group messages to members. Small groups are handled on the caller's
+ * thread. Larger groups are split into member shards (by email hash) delivered in
+ * parallel on a shared pool: each group has a fixed number of shard lanes, a lane runs
+ * on at most one thread at a time and handles its messages in order, so a group never
+ * uses more than SHARDS_PER_GROUP threads and every member receives messages in order.
+ */
+public class GroupFanoutService {
+    public static final int PARALLEL_FANOUT_THRESHOLD = 256;
+    private static final int SHARDS_PER_GROUP = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final int LANE_BATCH = 16;   // Tasks run before a lane yields its thread
+    private static final GroupFanoutService instance = new GroupFanoutService();
+
+    private final MessageService messageService = new MessageService();
+    private final ExecutorService pool;
+    // Conversation id -> shard lanes of the group, removed once the group has nothing in flight
+    private final Map<String, GroupLanes> lanes = new ConcurrentHashMap<>();
+
+    /**
+     * Outcome of one message, once every shard finished
+     */
+    public static class Result {
+        public final int online;
+        public final int offline;
+        public final long elapsedMs;
+
+        Result(int online, int offline, long elapsedMs) {
+            this.online = online;
+            this.offline = offline;
+            this.elapsedMs = elapsedMs;
+        }
+    }
+
+    private static class Lane {
+        final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+    }
+
+    /**
+     * Lanes of one group and the number of shard tasks submitted to them and not yet run
+     */
+    private static class GroupLanes {
+        final Lane[] lanes = new Lane[SHARDS_PER_GROUP];
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        GroupLanes() {
+            for (int i = 0; i < lanes.length; i++) {
+                lanes[i] = new Lane();
+            }
+        }
+    }
+
+    /**
+     * Completion tracking of one message across its shards
+     */
+    private static class Delivery {
+        final CompletableFuture<Result> done = new CompletableFuture<>();
+        final AtomicInteger remainingShards;
+        final AtomicInteger online = new AtomicInteger();
+        final AtomicInteger offline = new AtomicInteger();
+        final long start = System.nanoTime();
+
+        Delivery(int shards) {
+            remainingShards = new AtomicInteger(shards);
+        }
+
+        void shardDone() {
+            if (remainingShards.decrementAndGet() == 0) {
+                done.complete(new Result(online.get(), offline.get(), (System.nanoTime() - start) / 1_000_000));
+            }
+        }
+    }
+
+    private GroupFanoutService() {
+        pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+            Thread thread = new Thread(r, "group-fanout");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static GroupFanoutService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Deliver a persisted group message to every member, the sender included
+     *
+     * @param fanoutOnRead Members read the group from its shared log: online delivery only,
+     *                     no offline copies or per-member cursor moves
+     * @return completes when the last member has been handled
+     */
+    public CompletableFuture<Result> deliver(String conversationId, List<String> members, String sender,
+                                             JSONObject message, boolean fanoutOnRead) {
+        String frame = message.toString();
+        if (members.size() < PARALLEL_FANOUT_THRESHOLD) {
+            Delivery delivery = new Delivery(1);
+            deliverTo(members, sender, message, frame, fanoutOnRead, delivery);
+            delivery.shardDone();
+            return delivery.done;
+        }
+
+        List<List<String>> shards = new ArrayList<>(SHARDS_PER_GROUP);
+        for (int i = 0; i < SHARDS_PER_GROUP; i++) {
+            shards.add(new ArrayList<>(members.size() / SHARDS_PER_GROUP + 1));
+        }
+        for (String member : members) {
+            shards.get(Math.floorMod(member.hashCode(), SHARDS_PER_GROUP)).add(member);
+        }
+
+        // Counted in the same atomic step that finds the lanes, so they cannot be removed meanwhile
+        GroupLanes group = lanes.compute(conversationId, (id, existing) -> {
+            GroupLanes found = existing != null ? existing : new GroupLanes();
+            found.inFlight.addAndGet(SHARDS_PER_GROUP);
+            return found;
+        });
+        Delivery delivery = new Delivery(SHARDS_PER_GROUP);
+        for (int i = 0; i < SHARDS_PER_GROUP; i++) {
+            List<String> shard = shards.get(i);
+            submit(group.lanes[i], () -> {
+                try {
+                    deliverTo(shard, sender, message, frame, fanoutOnRead, delivery);
+                } finally {
+                    delivery.shardDone();
+                    release(conversationId, group);
+                }
+            });
+        }
+        return delivery.done;
+    }
+
+    private void deliverTo(List<String> members, String sender, JSONObject message, String frame,
+                           boolean fanoutOnRead, Delivery delivery) {
+        for (String member : members) {
+            try {
+                ClientHandler handler = ClientRegistry.find(member);
+                boolean self = member.equals(sender);
+                if (handler != null) {
+                    // Only queued: a slow member never holds up the shard. A member whose
+                    // connection overflowed resumes from its replay log, so its cursor stays put.
+                    boolean queued = handler.enqueue(frame);
+                    delivery.online.incrementAndGet();
+                    if (queued && !fanoutOnRead && !self) {
+                        messageService.markDelivered(member, message);
+                    }
+                } else if (!self) {
+                    delivery.offline.incrementAndGet();
+                    if (!fanoutOnRead) {
+                        messageService.queueOfflineCopy(member, message);
+                    }
+                }
+            } catch (Exception e) {
+                System.err.println("Error delivering group message to " + member + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Drop the lanes of a group once its last submitted task has run. A later message
+     * creates new lanes; none of the old ones still has work, so order is kept.
+     */
+    private void release(String conversationId, GroupLanes group) {
+        if (group.inFlight.decrementAndGet() == 0) {
+            lanes.computeIfPresent(conversationId, (id, current) ->
+                    current == group && current.inFlight.get() == 0 ? null : current);
+        }
+    }
+
+    private void submit(Lane lane, Runnable task) {
+        lane.tasks.add(task);
+        if (lane.scheduled.compareAndSet(false, true)) {
+            pool.execute(() -> run(lane));
+        }
+    }
+
+    private void run(Lane lane) {
+        for (int i = 0; i < LANE_BATCH; i++) {
+            Runnable task = lane.tasks.poll();
+            if (task == null) {
+                break;
+            }
+            task.run();
+        }
+        if (!lane.tasks.isEmpty()) {
+            // Yield to lanes of other groups, stay scheduled
+            pool.execute(() -> run(lane));
+            return;
+        }
+        lane.scheduled.set(false);
+        // A task added after the last poll but before the flag was cleared
+        if (!lane.tasks.isEmpty() && lane.scheduled.compareAndSet(false, true)) {
+            pool.execute(() -> run(lane));
+        }
+    }
+}
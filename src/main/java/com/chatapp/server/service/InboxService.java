@@ -0,0 +1,189 @@
+package com.chatapp.server.service;
+
+import com.chatapp.common.model.ConversationSummary;
+import com.chatapp.data.dao.MessageDAO;
+import com.chatapp.data.storage.Storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory conversation lists ("inbox") per user.
+ * A user's inbox is loaded from the database once, then kept up to date by the
+ * message write path and read acks, so listing conversations never aggregates in SQL.
+ */
+public class InboxService {
+    private static final int MAX_CACHED_INBOXES = 10000;
+    private static final InboxService instance = new InboxService();
+
+    private final MessageDAO messageDAO = Storage.messages();
+    // user -> (conversation id -> summary), least recently used inboxes are dropped first
+    private final Map<String, Map<String, ConversationSummary>> inboxes =
+            Collections.synchronizedMap(new LinkedHashMap<String, Map<String, ConversationSummary>>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Map<String, ConversationSummary>> eldest) {
+                    return size() > MAX_CACHED_INBOXES;
+                }
+            });
+
+    // user -> messages that arrived while the user's inbox was loading, merged once it is loaded
+    private final Map<String, List<Update>> loading = new ConcurrentHashMap<>();
+
+    private static class Update {
+        final String conversationId;
+        final boolean group;
+        final String title;
+        final String sender;
+        final String content;
+        final long timestamp;
+
+        Update(String conversationId, boolean group, String title, String sender, String content, long timestamp) {
+            this.conversationId = conversationId;
+            this.group = group;
+            this.title = title;
+            this.sender = sender;
+            this.content = content;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private InboxService() {
+    }
+
+    public static InboxService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Conversations of a user, most recent activity first
+     *
+     * @param limit Maximum number of conversations, 0 for all
+     */
+    public List<ConversationSummary> getInbox(String userEmail, int limit) {
+        Map<String, ConversationSummary> inbox = loadInbox(userEmail);
+        List<ConversationSummary> result;
+        synchronized (inbox) {
+            result = new ArrayList<>(inbox.values());
+        }
+        result.sort(Comparator.comparingLong(ConversationSummary::getLastTimestamp).reversed());
+        return limit > 0 && result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * Apply a new message to the inboxes of the participants that are cached, or buffer it
+     * for those being loaded. Other inboxes pick the message up when they are loaded.
+     */
+    public void onMessage(String conversationId, boolean group, String title, Collection<String> participants,
+                          String sender, String content, long timestamp) {
+        Update update = new Update(conversationId, group, title, sender, content, timestamp);
+        for (String participant : participants) {
+            Map<String, ConversationSummary> inbox = inboxes.get(participant);
+            if (inbox == null) {
+                loading.computeIfPresent(participant, (key, buffered) -> {
+                    buffered.add(update);
+                    return buffered;
+                });
+                continue;
+            }
+            synchronized (inbox) {
+                apply(inbox, participant, update);
+            }
+        }
+    }
+
+    private static void apply(Map<String, ConversationSummary> inbox, String participant, Update update) {
+        ConversationSummary summary = inbox.computeIfAbsent(update.conversationId, id ->
+                new ConversationSummary(id, update.group ? update.title : otherParticipant(id, participant), update.group));
+        if (update.timestamp >= summary.getLastTimestamp()) {
+            summary.setLastSender(update.sender);
+            summary.setLastPreview(ConversationSummary.preview(update.content));
+            summary.setLastTimestamp(update.timestamp);
+        }
+        if (!participant.equals(update.sender)) {
+            summary.setUnreadCount(summary.getUnreadCount() + 1);
+        }
+    }
+
+    /**
+     * Update the unread counter after a read ack: cleared once the user has read up to the
+     * last message, otherwise recounted from the messages after the read position
+     */
+    public void onRead(String userEmail, String conversationId, long upTo) {
+        Map<String, ConversationSummary> inbox = inboxes.get(userEmail);
+        if (inbox == null) {
+            return;
+        }
+        synchronized (inbox) {
+            ConversationSummary summary = inbox.get(conversationId);
+            if (summary == null || summary.getUnreadCount() == 0) {
+                return;
+            }
+            if (upTo >= summary.getLastTimestamp()) {
+                summary.setUnreadCount(0);
+                return;
+            }
+        }
+        // Partial read: count outside the inbox lock, then only ever lower the counter
+        int unread = messageDAO.countUnread(userEmail, conversationId, upTo);
+        synchronized (inbox) {
+            ConversationSummary summary = inbox.get(conversationId);
+            if (summary != null && unread < summary.getUnreadCount()) {
+                summary.setUnreadCount(unread);
+            }
+        }
+    }
+
+    private Map<String, ConversationSummary> loadInbox(String userEmail) {
+        Map<String, ConversationSummary> inbox = inboxes.get(userEmail);
+        if (inbox != null) {
+            return inbox;
+        }
+        // Messages from now on are buffered until the inbox is published
+        loading.putIfAbsent(userEmail, new ArrayList<>());
+        Map<String, ConversationSummary> loaded = new ConcurrentHashMap<>();
+        // Last message time per conversation as queried, before live updates change it
+        Map<String, Long> queriedUpTo = new HashMap<>();
+        for (ConversationSummary summary : messageDAO.getConversationSummaries(userEmail)) {
+            String id = summary.getConversationId();
+            summary.setTitle(summary.isGroup() && id.startsWith("group_") ? id.substring(6) : otherParticipant(id, userEmail));
+            loaded.putIfAbsent(id, summary);
+            queriedUpTo.putIfAbsent(id, summary.getLastTimestamp());
+        }
+        // Another thread may have loaded it meanwhile; keep the first one, it already has live updates
+        Map<String, ConversationSummary> existing = inboxes.putIfAbsent(userEmail, loaded);
+        Map<String, ConversationSummary> published = existing != null ? existing : loaded;
+        List<Update> buffered = loading.remove(userEmail);
+        if (buffered != null) {
+            synchronized (published) {
+                for (Update update : buffered) {
+                    // Newer than the last message the query saw: not counted in its result
+                    Long queried = queriedUpTo.get(update.conversationId);
+                    if (queried == null || update.timestamp > queried) {
+                        apply(published, userEmail, update);
+                    }
+                }
+            }
+        }
+        return published;
+    }
+
+    /**
+     * Other user of a private conversation id built as "<a>_<b>" with sorted emails
+     */
+    private static String otherParticipant(String conversationId, String userEmail) {
+        if (conversationId.startsWith(userEmail + "_")) {
+            return conversationId.substring(userEmail.length() + 1);
+        }
+        if (conversationId.endsWith("_" + userEmail)) {
+            return conversationId.substring(0, conversationId.length() - userEmail.length() - 1);
+        }
+        return conversationId;
+    }
+}
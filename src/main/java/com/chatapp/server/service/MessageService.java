@@ -5,6 +5,9 @@ import org.json.JSONObject;
 import com.chatapp.common.model.FileMessage;
 import com.chatapp.common.model.Message;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.io.*;
 
 /**
@@ -12,7 +15,8 @@ import java.io.*;
  */
 public class MessageService {
 
-    private Map<String, List<String>> offlineMessages = new HashMap<>();
+    // Notifications that are not stored in the messages table (files...), shared by all handlers
+    private static final Map<String, Queue<String>> offlineMessages = new ConcurrentHashMap<>();
     private ConversationService conversationService;
     private final FileService fileService;
 
@@ -37,8 +41,8 @@ public class MessageService {
         Message message = new Message(sender, content, "private");
         message.setConversationParticipants(sender, recipient);
 
-        // Store in conversation history via DB
-        conversationService.saveMessage(message);
+        // Store in conversation history via DB; both sides must be participants for cursor-based offline catch-up
+        conversationService.saveMessage(message, sender, recipient);
 
         return message.toJson();
     }
@@ -53,15 +57,24 @@ public class MessageService {
         // Store in conversation history via DB
         conversationService.saveMessage(message);
 
-        return message.toJson();
+        // One shared log for everyone: offline users catch up from it, no per-user copies
+        JSONObject json = message.toJson();
+        SharedLogService.getInstance().append(SharedLogService.BROADCAST, null, json);
+        return json;
+    }
+
+    /**
+     * Queue a message that is already persisted for a recipient who is offline
+     */
+    public void queueOfflineCopy(String recipient, JSONObject message) {
+        offlineMessages.computeIfAbsent(recipient, k -> new ConcurrentLinkedQueue<>()).add(message.toString());
     }
 
     /**
-     * Store a message for offline delivery
+     * Store a message that is not persisted yet for offline delivery
      */
     public void storeOfflineMessage(String recipient, JSONObject message) {
-        offlineMessages.computeIfAbsent(recipient, k -> new ArrayList<>());
-        offlineMessages.get(recipient).add(message.toString());
+        offlineMessages.computeIfAbsent(recipient, k -> new ConcurrentLinkedQueue<>()).add(message.toString());
 
         // Also save to conversation history via DB
         try {
@@ -73,87 +86,164 @@ public class MessageService {
     }
 
     /**
-     * Get and remove all offline messages for a user
+     * Messages the user has not received yet, taken for one delivery attempt
+     */
+    public static class OfflineBatch {
+        public final List<String> messages = new ArrayList<>();
+        // Drained from the in-memory queue, put back if the attempt fails
+        private final List<String> queued = new ArrayList<>();
+        // Conversation id -> newest message of the batch in it
+        private final Map<String, JSONObject> deliveredUpTo = new HashMap<>();
+    }
+
+    /**
+     * Take everything the user has not received yet: the messages after the delivered
+     * cursors plus queued notifications. A message both stored and queued is sent once,
+     * as the queued live frame. The cursors only move on confirmDelivered, once the
+     * messages are on the socket; restoreOfflineMessages undoes the take.
+     */
+    public OfflineBatch takeOfflineMessages(String userEmail) {
+        OfflineBatch batch = new OfflineBatch();
+        Map<String, String> queuedById = new LinkedHashMap<>();
+
+        Queue<String> pending = offlineMessages.remove(userEmail);
+        if (pending != null) {
+            for (String messageJson : pending) {
+                batch.queued.add(messageJson);
+                queuedById.put(new JSONObject(messageJson).optString("id"), messageJson);
+            }
+        }
+
+        try {
+            // Oldest first by (timestamp, id), so the last one of a conversation is its newest
+            for (String messageJson : conversationService.getMessagesAfterCursor(userEmail)) {
+                JSONObject json = new JSONObject(messageJson);
+                batch.deliveredUpTo.put(json.getString("conversationId"), json);
+                String queued = queuedById.remove(json.optString("id"));
+                batch.messages.add(queued != null ? queued : toLiveFrame(json, messageJson));
+            }
+        } catch (RuntimeException e) {
+            restoreOfflineMessages(userEmail, batch);
+            throw e;
+        }
+        batch.messages.addAll(queuedById.values());
+        return batch;
+    }
+
+    /**
+     * The messages of a batch reached the client: advance its delivered cursors
+     */
+    public void confirmDelivered(String userEmail, OfflineBatch batch) {
+        batch.deliveredUpTo.forEach((conversationId, newest) -> ReceiptService.getInstance().acknowledgeDelivered(
+                userEmail, conversationId, newest.getLong("timestamp"), newest.getString("id")));
+    }
+
+    /**
+     * The messages of a batch did not reach the client: queue the drained ones again.
+     * Stored ones are still after the cursors.
+     */
+    public void restoreOfflineMessages(String userEmail, OfflineBatch batch) {
+        if (!batch.queued.isEmpty()) {
+            // Added to the live queue, never swapped for a new one a concurrent add would miss
+            offlineMessages.computeIfAbsent(userEmail, k -> new ConcurrentLinkedQueue<>()).addAll(batch.queued);
+        }
+    }
+
+    /**
+     * A stored message in the shape it has when delivered live. Group messages are stored
+     * as type "group"; clients only render them as "private" frames flagged isGroup.
+     * Large groups queue no copies, so this is the only way their messages arrive offline.
+     */
+    private static String toLiveFrame(JSONObject stored, String storedJson) {
+        String conversationId = stored.getString("conversationId");
+        if (!conversationId.startsWith("group_")) {
+            return storedJson;
+        }
+        stored.put("type", "private");
+        stored.put("isGroup", true);
+        stored.put("groupName", conversationId.substring(6));
+        return stored.toString();
+    }
+
+    /**
+     * Messages queued in memory while the user was away, without touching the database.
+     * Only complete when the server has not restarted since the user disconnected
+     * (i.e. for resumed sessions). Delivered cursors are advanced right away.
      */
-    public List<String> getOfflineMessages(String userEmail) {
-        List<String> messages = offlineMessages.getOrDefault(userEmail, new ArrayList<>());
-        offlineMessages.remove(userEmail);
+    public List<String> drainQueuedMessages(String userEmail) {
+        List<String> messages = new ArrayList<>();
+        Queue<String> pending = offlineMessages.remove(userEmail);
+        if (pending == null) {
+            return messages;
+        }
+        for (String messageJson : pending) {
+            messages.add(messageJson);
+            markDelivered(userEmail, new JSONObject(messageJson));
+        }
         return messages;
     }
-    
+
     /**
-     * Get message history between users from the DB
+     * Record that a message was handed to an online recipient.
+     * The cursor move is coalesced with other acks of the same conversation.
      */
+    public void markDelivered(String recipient, JSONObject message) {
+        String conversationId = message.optString("conversationId", null);
+        if (conversationId != null) {
+            ReceiptService.getInstance().acknowledgeDelivered(recipient, conversationId,
+                    message.optLong("timestamp"), message.optString("id", null));
+        }
+    }
+    
     /**
- * Get message history between users from the DB
- */
-public List<JSONObject> getMessageHistory(String user1, String user2) {
-    try {
-        // Get text messages from conversation
-        List<JSONObject> messages = conversationService.getConversationHistory(user1, user2);
-        System.out.println("Retrieved " + messages.size() + " text messages from DB");
-        
-        // Get files from the same conversation
+     * Message history between two users, text messages and files, oldest first.
+     * Both reads run in parallel on the database executor.
+     */
+    public CompletableFuture<List<JSONObject>> getMessageHistoryAsync(String user1, String user2) {
         String conversationId = conversationService.generateConversationId(user1, user2);
-        System.out.println("Looking for files with conversation ID: " + conversationId);
-        
-        try {
-            List<FileMessage> files = fileService.getFilesByConversation(conversationId);
-            if (files != null && !files.isEmpty()) {
-                System.out.println("Found " + files.size() + " files for conversation");
-                
-                // Convert files to JSONObjects and add to messages list
-                for (FileMessage file : files) {
-                    try {
-                        JSONObject fileJson = file.toJson();
-                        // Add required fields for client processing
-                        fileJson.put("type", "file");
-                        fileJson.put("sender", file.getSenderEmail());
-                        fileJson.put("conversationId", file.getConversationId());
-                        fileJson.put("timestamp", file.getTimestamp());
-                        
-                        // Add these fields for compatibility with message display
-                        if (!fileJson.has("originalFilename")) {
-                            fileJson.put("originalFilename", file.getOriginalFilename());
-                        }
-                        if (!fileJson.has("mimeType")) {
-                            fileJson.put("mimeType", file.getMimeType());
-                        }
-                        if (!fileJson.has("fileSize")) {
-                            fileJson.put("fileSize", file.getFileSize());
-                        }
-                        
-                        // Add to message list
-                        messages.add(fileJson);
-                        System.out.println("Added file to history: " + file.getOriginalFilename());
-                    } catch (Exception e) {
-                        System.err.println("Error converting file to JSON: " + e.getMessage());
+        CompletableFuture<List<FileMessage>> files = fileService.getFilesByConversationAsync(conversationId)
+                .exceptionally(e -> {
+                    // History without attachments is better than no history
+                    System.err.println("Error retrieving files for conversation: " + e.getMessage());
+                    return new ArrayList<>();
+                });
+        return conversationService.getConversationHistoryAsync(user1, user2)
+                .thenCombine(files, this::mergeFiles);
+    }
+
+    private List<JSONObject> mergeFiles(List<JSONObject> messages, List<FileMessage> files) {
+        if (files != null) {
+            for (FileMessage file : files) {
+                try {
+                    JSONObject fileJson = file.toJson();
+                    // Add required fields for client processing
+                    fileJson.put("type", "file");
+                    fileJson.put("sender", file.getSenderEmail());
+                    fileJson.put("conversationId", file.getConversationId());
+                    fileJson.put("timestamp", file.getTimestamp());
+
+                    // Add these fields for compatibility with message display
+                    if (!fileJson.has("originalFilename")) {
+                        fileJson.put("originalFilename", file.getOriginalFilename());
                     }
+                    if (!fileJson.has("mimeType")) {
+                        fileJson.put("mimeType", file.getMimeType());
+                    }
+                    if (!fileJson.has("fileSize")) {
+                        fileJson.put("fileSize", file.getFileSize());
+                    }
+                    messages.add(fileJson);
+                } catch (Exception e) {
+                    System.err.println("Error converting file to JSON: " + e.getMessage());
                 }
-            } else {
-                System.out.println("No files found for conversation: " + conversationId);
             }
-        } catch (Exception e) {
-            System.err.println("Error retrieving files for conversation: " + e.getMessage());
-            e.printStackTrace();
         }
-        
+
         // Sort messages by timestamp to maintain chronological order
-        messages.sort((msg1, msg2) -> {
-            long time1 = msg1.optLong("timestamp", 0);
-            long time2 = msg2.optLong("timestamp", 0);
-            return Long.compare(time1, time2);
-        });
-        
-        System.out.println("Returning " + messages.size() + " total history items (messages + files)");
+        messages.sort((msg1, msg2) -> Long.compare(msg1.optLong("timestamp", 0), msg2.optLong("timestamp", 0)));
         return messages;
-    } catch (Exception e) {
-        System.err.println("Error in getMessageHistory: " + e.getMessage());
-        e.printStackTrace();
-        return new ArrayList<>();
     }
-}
-    
+
     /**
      * Update message status (delivered/read)
      */
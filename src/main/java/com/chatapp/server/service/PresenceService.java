@@ -0,0 +1,178 @@
+package com.chatapp.server.service;
+
+import com.chatapp.server.handler.ClientRegistry;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Online/offline notifications for users who subscribed to them (usually their contacts).
+ * Changes are collected for a short window: a user who flaps back to the state last
+ * published causes no event, and each subscriber receives one "presence" frame per
+ * window with every change it cares about. Frames are written in batches on a small
+ * pool, so a popular user coming online does not block the publisher.
+ */
+public class PresenceService {
+    private static final long FLUSH_INTERVAL_MS = 500;
+    private static final int FANOUT_BATCH_SIZE = 500;
+    private static final PresenceService instance = new PresenceService();
+
+    // user -> users subscribed to its presence
+    private final Map<String, Set<String>> subscribers = new ConcurrentHashMap<>();
+    // subscriber -> users it watches, to drop its entries when its session ends
+    private final Map<String, Set<String>> subscriptions = new ConcurrentHashMap<>();
+    // Latest state per user within the current window
+    private final Map<String, Boolean> pending = new ConcurrentHashMap<>();
+    // State last sent to subscribers
+    private final Map<String, Boolean> published = new ConcurrentHashMap<>();
+    private final ExecutorService fanout;
+
+    private PresenceService() {
+        ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "presence-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        fanout = Executors.newFixedThreadPool(2, r -> {
+            Thread thread = new Thread(r, "presence-fanout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public static PresenceService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Subscribe to the presence of some users; only contacts of the subscriber are accepted
+     *
+     * @return the current presence of each accepted user, as sent in "presence" frames
+     */
+    public JSONArray subscribe(String subscriber, List<String> users) {
+        Set<String> contacts = new HashSet<>(ContactService.getInstance().getContacts(subscriber));
+        JSONArray snapshot = new JSONArray();
+        for (String user : users) {
+            if (user.equals(subscriber) || !contacts.contains(user)) {
+                continue;
+            }
+            // Atomic per key, as an empty set may be removed concurrently
+            subscribers.compute(user, (k, watchers) -> {
+                Set<String> set = watchers != null ? watchers : ConcurrentHashMap.newKeySet();
+                set.add(subscriber);
+                return set;
+            });
+            subscriptions.computeIfAbsent(subscriber, k -> ConcurrentHashMap.newKeySet()).add(user);
+            snapshot.put(update(user, ClientRegistry.isOnline(user)));
+        }
+        return snapshot;
+    }
+
+    public void unsubscribe(String subscriber, List<String> users) {
+        Set<String> watched = subscriptions.get(subscriber);
+        for (String user : users) {
+            removeWatcher(user, subscriber);
+            if (watched != null) {
+                watched.remove(user);
+            }
+        }
+    }
+
+    /**
+     * Drop every subscription of a user whose session has ended
+     */
+    public void unsubscribeAll(String subscriber) {
+        Set<String> watched = subscriptions.remove(subscriber);
+        if (watched != null) {
+            for (String user : watched) {
+                removeWatcher(user, subscriber);
+            }
+        }
+    }
+
+    private void removeWatcher(String user, String subscriber) {
+        subscribers.computeIfPresent(user, (k, watchers) -> {
+            watchers.remove(subscriber);
+            return watchers.isEmpty() ? null : watchers;
+        });
+    }
+
+    public void online(String userEmail) {
+        pending.put(userEmail, true);
+    }
+
+    /**
+     * Subscriptions made by the user are dropped separately (unsubscribeAll); a resumed
+     * session subscribes to its contacts again
+     */
+    public void offline(String userEmail) {
+        pending.put(userEmail, false);
+    }
+
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            Map<String, JSONArray> updatesBySubscriber = new HashMap<>();
+            for (String user : pending.keySet()) {
+                Boolean state = pending.remove(user);
+                if (state == null || state.equals(published.get(user))) {
+                    continue;   // Flapped back within the window
+                }
+                if (state) {
+                    published.put(user, true);
+                } else {
+                    published.remove(user);
+                }
+                Set<String> watchers = subscribers.get(user);
+                if (watchers == null) {
+                    continue;
+                }
+                JSONObject update = update(user, state);
+                for (String watcher : watchers) {
+                    updatesBySubscriber.computeIfAbsent(watcher, k -> new JSONArray()).put(update);
+                }
+            }
+            dispatch(updatesBySubscriber);
+        } catch (Exception e) {
+            System.err.println("Error flushing presence updates: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void dispatch(Map<String, JSONArray> updatesBySubscriber) {
+        List<Map.Entry<String, JSONArray>> entries = new ArrayList<>(updatesBySubscriber.entrySet());
+        for (int start = 0; start < entries.size(); start += FANOUT_BATCH_SIZE) {
+            List<Map.Entry<String, JSONArray>> batch =
+                    entries.subList(start, Math.min(start + FANOUT_BATCH_SIZE, entries.size()));
+            fanout.execute(() -> {
+                for (Map.Entry<String, JSONArray> entry : batch) {
+                    JSONObject frame = new JSONObject();
+                    frame.put("type", "presence");
+                    frame.put("updates", entry.getValue());
+                    ClientRegistry.sendTo(entry.getKey(), frame.toString());
+                }
+            });
+        }
+    }
+
+    private static JSONObject update(String user, boolean online) {
+        JSONObject update = new JSONObject();
+        update.put("email", user);
+        update.put("online", online);
+        return update;
+    }
+}
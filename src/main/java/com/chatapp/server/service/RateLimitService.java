@@ -0,0 +1,135 @@
+package com.chatapp.server.service;
+
+import com.chatapp.common.util.TokenBucket;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user token buckets for inbound frames, one shared "total" bucket plus one per
+ * message type, configured in ratelimit.properties. Checked before a frame is parsed,
+ * so a flooding client costs almost nothing. Counts how often each type was throttled.
+ */
+public class RateLimitService {
+    private static final String CONFIG_FILE = "/ratelimit.properties";
+    private static final String TOTAL = "total";
+    private static final String DEFAULT = "default";
+    private static final RateLimitService instance = new RateLimitService();
+
+    private final Properties limits = new Properties();
+    // user -> (message type -> bucket)
+    private final Map<String, Map<String, TokenBucket>> buckets = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> throttled = new ConcurrentHashMap<>();
+
+    /**
+     * Outcome of a check; retryAfterMs is only meaningful when not allowed
+     */
+    public static class Decision {
+        public final boolean allowed;
+        public final long retryAfterMs;
+
+        Decision(boolean allowed, long retryAfterMs) {
+            this.allowed = allowed;
+            this.retryAfterMs = retryAfterMs;
+        }
+    }
+
+    private static final Decision ALLOWED = new Decision(true, 0);
+
+    private RateLimitService() {
+        try (InputStream input = RateLimitService.class.getResourceAsStream(CONFIG_FILE)) {
+            if (input != null) {
+                limits.load(input);
+            } else {
+                System.err.println("Rate limit config file not found: " + CONFIG_FILE + ", using defaults");
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading rate limit configuration: " + e.getMessage());
+        }
+    }
+
+    public static RateLimitService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Take a token from the user's total bucket and from the bucket of the frame type
+     */
+    public Decision check(String userEmail, String messageType) {
+        Map<String, TokenBucket> userBuckets = buckets.computeIfAbsent(userEmail, k -> new ConcurrentHashMap<>());
+        String type = limits.containsKey(messageType + ".rate") ? messageType : DEFAULT;
+
+        TokenBucket total = userBuckets.computeIfAbsent(TOTAL, this::newBucket);
+        TokenBucket perType = userBuckets.computeIfAbsent(type, this::newBucket);
+        // Counted under the resolved type: the raw one comes from the client and is unbounded
+        if (!total.tryAcquire()) {
+            return throttle(type, total);
+        }
+        if (!perType.tryAcquire()) {
+            return throttle(type, perType);
+        }
+        return ALLOWED;
+    }
+
+    /**
+     * Drop the buckets of a user that disconnected
+     */
+    public void forget(String userEmail) {
+        buckets.remove(userEmail);
+    }
+
+    /**
+     * Number of frames throttled per configured message type (unconfigured ones count as
+     * the default type) since startup
+     */
+    public Map<String, Long> getThrottleCounts() {
+        Map<String, Long> counts = new ConcurrentHashMap<>();
+        throttled.forEach((type, count) -> counts.put(type, count.get()));
+        return counts;
+    }
+
+    /**
+     * Message type of a raw frame without parsing it; "unknown" if there is none.
+     * Only an unescaped "type" followed by a colon counts as the key, but a nested object
+     * can still fool this scan: callers must check it against the parsed type before acting on it.
+     */
+    public static String peekType(String frame) {
+        int key = frame.indexOf("\"type\"");
+        while (key >= 0) {
+            int colon = key + 6;
+            while (colon < frame.length() && Character.isWhitespace(frame.charAt(colon))) {
+                colon++;
+            }
+            // An escaped \"type\" is text inside a string value
+            boolean escaped = key > 0 && frame.charAt(key - 1) == '\\';
+            if (!escaped && colon < frame.length() && frame.charAt(colon) == ':') {
+                int start = frame.indexOf('"', colon + 1);
+                int end = start < 0 ? -1 : frame.indexOf('"', start + 1);
+                return end < 0 ? "unknown" : frame.substring(start + 1, end);
+            }
+            key = frame.indexOf("\"type\"", key + 1);
+        }
+        return "unknown";
+    }
+
+    /**
+     * @param type A configured message type or the default one
+     */
+    private Decision throttle(String type, TokenBucket bucket) {
+        long count = throttled.computeIfAbsent(type, k -> new AtomicLong()).incrementAndGet();
+        if (count == 1 || count % 1000 == 0) {
+            System.out.println("Rate limiter fired " + count + " times for '" + type + "' frames");
+        }
+        return new Decision(false, bucket.millisUntilNextToken());
+    }
+
+    private TokenBucket newBucket(String type) {
+        double rate = Double.parseDouble(limits.getProperty(type + ".rate", "10"));
+        double burst = Double.parseDouble(limits.getProperty(type + ".burst", "20"));
+        return new TokenBucket(rate, burst);
+    }
+}
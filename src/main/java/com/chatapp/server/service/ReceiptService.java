@@ -0,0 +1,184 @@
+package com.chatapp.server.service;
+
+import com.chatapp.common.model.Group;
+import com.chatapp.common.model.ReadCursor;
+import com.chatapp.data.dao.ReadCursorDAO;
+import com.chatapp.data.storage.Storage;
+import com.chatapp.server.handler.ClientRegistry;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces cumulative delivery/read acknowledgements ("read up to X in conversation C").
+ * Acks collected during one flush window are persisted with a single upsert and relayed
+ * to the other participants as one aggregated frame per recipient.
+ */
+public class ReceiptService {
+    private static final long FLUSH_INTERVAL_MS = 250;
+    private static final ReceiptService instance = new ReceiptService();
+
+    private final ReadCursorDAO readCursorDAO = Storage.readCursors();
+    private final GroupService groupService = new GroupService();
+    // (reader, conversation) -> pending ack, replaced by the newest one within a window
+    private final Map<String, PendingAck> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+
+    private static class PendingAck {
+        final String reader;
+        final String conversationId;
+        String peer;                // Other user of a private conversation, null for groups
+        long deliveredUpTo;
+        String deliveredId;         // Message at deliveredUpTo, null for its whole millisecond
+        long readUpTo;
+        boolean relay;
+
+        PendingAck(String reader, String conversationId, String peer) {
+            this.reader = reader;
+            this.conversationId = conversationId;
+            this.peer = peer;
+        }
+    }
+
+    private ReceiptService() {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "receipt-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public static ReceiptService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Queue a cumulative acknowledgement
+     *
+     * @param reader         User acknowledging the messages
+     * @param conversationId Conversation the ack applies to
+     * @param peer           Other participant of a private conversation, null for groups
+     * @param upTo           Timestamp of the newest acknowledged message
+     * @param read           true for a read ack, false for delivered only
+     * @param relay          Whether the other participants should be notified
+     */
+    public void acknowledge(String reader, String conversationId, String peer, long upTo, boolean read, boolean relay) {
+        if (read) {
+            InboxService.getInstance().onRead(reader, conversationId, upTo);
+        }
+        pending.compute(reader + "|" + conversationId, (key, ack) -> {
+            if (ack == null) {
+                ack = new PendingAck(reader, conversationId, peer);
+            } else if (ack.peer == null) {
+                // A server-side delivered ack queued first carries no peer
+                ack.peer = peer;
+            }
+            advanceDelivered(ack, upTo, null);
+            if (read) {
+                ack.readUpTo = Math.max(ack.readUpTo, upTo);
+            }
+            ack.relay |= relay;
+            return ack;
+        });
+    }
+
+    /**
+     * Queue a delivered position set by the server: the exact message handed to the user,
+     * so later messages of the same millisecond are still delivered
+     */
+    public void acknowledgeDelivered(String recipient, String conversationId, long timestamp, String messageId) {
+        pending.compute(recipient + "|" + conversationId, (key, ack) -> {
+            if (ack == null) {
+                ack = new PendingAck(recipient, conversationId, null);
+            }
+            advanceDelivered(ack, timestamp, messageId);
+            return ack;
+        });
+    }
+
+    private static void advanceDelivered(PendingAck ack, long timestamp, String messageId) {
+        if (ReadCursor.isAfter(timestamp, messageId, ack.deliveredUpTo, ack.deliveredId)) {
+            ack.deliveredUpTo = timestamp;
+            ack.deliveredId = messageId;
+        }
+    }
+
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<PendingAck> batch = new ArrayList<>();
+        for (String key : pending.keySet()) {
+            PendingAck ack = pending.remove(key);
+            if (ack != null) {
+                batch.add(ack);
+            }
+        }
+
+        try {
+            List<ReadCursor> cursors = new ArrayList<>();
+            for (PendingAck ack : batch) {
+                cursors.add(new ReadCursor(ack.reader, ack.conversationId, ack.deliveredUpTo, ack.deliveredId,
+                        ack.readUpTo));
+            }
+            if (!readCursorDAO.advanceBatch(cursors)) {
+                System.err.println("Failed to persist " + cursors.size() + " read cursors");
+            }
+            relay(batch);
+        } catch (Exception e) {
+            System.err.println("Error flushing receipts: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void relay(List<PendingAck> batch) {
+        Map<String, JSONArray> framesByRecipient = new HashMap<>();
+        Map<String, List<String>> groupMembers = new HashMap<>();
+
+        for (PendingAck ack : batch) {
+            if (!ack.relay) {
+                continue;
+            }
+            JSONObject receipt = new JSONObject();
+            receipt.put("conversationId", ack.conversationId);
+            receipt.put("reader", ack.reader);
+            receipt.put("status", ack.readUpTo > 0 ? "read" : "delivered");
+            receipt.put("upTo", ack.readUpTo > 0 ? ack.readUpTo : ack.deliveredUpTo);
+
+            for (String recipient : recipientsOf(ack, groupMembers)) {
+                if (!recipient.equals(ack.reader)) {
+                    framesByRecipient.computeIfAbsent(recipient, k -> new JSONArray()).put(receipt);
+                }
+            }
+        }
+
+        framesByRecipient.forEach((recipient, receipts) -> {
+            JSONObject frame = new JSONObject();
+            frame.put("type", "receipts");
+            frame.put("receipts", receipts);
+            ClientRegistry.sendTo(recipient, frame.toString());
+        });
+    }
+
+    private List<String> recipientsOf(PendingAck ack, Map<String, List<String>> groupMembers) {
+        if (ack.peer != null) {
+            return List.of(ack.peer);
+        }
+        if (ack.conversationId.startsWith("group_")) {
+            return groupMembers.computeIfAbsent(ack.conversationId, id -> {
+                Group group = groupService.findGroupByName(id.substring(6));
+                return group != null ? group.getMembersEmails() : new ArrayList<>();
+            });
+        }
+        return new ArrayList<>();
+    }
+}
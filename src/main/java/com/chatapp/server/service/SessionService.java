@@ -0,0 +1,241 @@
+package com.chatapp.server.service;
+
+import com.chatapp.server.handler.ClientRegistry;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resume tokens and per-user replay logs.
+ * A token is "<base64(email|generation|expiresAt)>.<base64(hmac)>", signed with a server
+ * secret (system property chat.session.secret, or random per run). Bumping a user's
+ * generation revokes every token issued to them before. Every JSON frame sent to a
+ * user gets a sequence number and is kept in a bounded log, so a client reconnecting
+ * with a valid token and its last seen sequence only receives what it missed.
+ * Sessions also carry a read-your-writes token: the time of the user's last database
+ * write, which replica reads made for the user must have caught up with.
+ */
+public class SessionService {
+    public static final long TOKEN_TTL_MS = 10 * 60 * 1000;
+    private static final int REPLAY_LOG_SIZE = 500;
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final SessionService instance = new SessionService();
+
+    private final byte[] secret;
+    private final Map<String, ReplayLog> logs = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+    private final Map<String, Long> generations = new ConcurrentHashMap<>();
+
+    private static class Frame {
+        final long seq;
+        final String message;
+
+        Frame(long seq, String message) {
+            this.seq = seq;
+            this.message = message;
+        }
+    }
+
+    private static class ReplayLog {
+        final Deque<Frame> frames = new ArrayDeque<>();
+        long lastSeq;
+        long lastActive = System.currentTimeMillis();
+        long suspendedAt;
+    }
+
+    private SessionService() {
+        String configured = System.getProperty("chat.session.secret");
+        if (configured != null && !configured.isEmpty()) {
+            secret = configured.getBytes(StandardCharsets.UTF_8);
+        } else {
+            secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+        }
+
+        ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "session-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        cleaner.scheduleWithFixedDelay(this::expireLogs, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public static SessionService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Issue a resume token for an authenticated user
+     */
+    public String issueToken(String userEmail) {
+        String payload = userEmail + "|" + generations.getOrDefault(userEmail, 0L) + "|"
+                + (System.currentTimeMillis() + TOKEN_TTL_MS);
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8)) + "." + encoder.encodeToString(sign(payload));
+    }
+
+    /**
+     * @return the email the token was issued to, or null if it is forged, malformed, expired or revoked
+     */
+    public String verifyToken(String token) {
+        if (token == null) {
+            return null;
+        }
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        try {
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+            String payload = new String(decoder.decode(token.substring(0, dot)), StandardCharsets.UTF_8);
+            if (!MessageDigest.isEqual(sign(payload), decoder.decode(token.substring(dot + 1)))) {
+                return null;
+            }
+            int expirySeparator = payload.lastIndexOf('|');
+            int generationSeparator = payload.lastIndexOf('|', expirySeparator - 1);
+            long expiresAt = Long.parseLong(payload.substring(expirySeparator + 1));
+            long generation = Long.parseLong(payload.substring(generationSeparator + 1, expirySeparator));
+            String email = payload.substring(0, generationSeparator);
+            if (expiresAt <= System.currentTimeMillis() || generation != generations.getOrDefault(email, 0L)) {
+                return null;
+            }
+            return email;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Revoke every resume token issued to the user so far, after its credentials
+     * changed or the account was deleted. Tokens issued afterwards are valid again.
+     */
+    public void revokeTokens(String userEmail) {
+        generations.merge(userEmail, 1L, Long::sum);
+    }
+
+    /**
+     * Start a new replay log for a user logging in with a password
+     */
+    public void reset(String userEmail) {
+        logs.put(userEmail, new ReplayLog());
+    }
+
+    /**
+     * Keep the log of a user that just disconnected for a full token lifetime
+     */
+    public void suspend(String userEmail) {
+        ReplayLog log = logs.get(userEmail);
+        if (log != null) {
+            synchronized (log) {
+                log.lastActive = System.currentTimeMillis();
+                log.suspendedAt = log.lastActive;
+            }
+        }
+    }
+
+    /**
+     * When the user's previous connection went away, or 0 if unknown
+     */
+    public long suspendedAt(String userEmail) {
+        ReplayLog log = logs.get(userEmail);
+        if (log == null) {
+            return 0;
+        }
+        synchronized (log) {
+            return log.suspendedAt;
+        }
+    }
+
+    /**
+     * Assign the next sequence number to a JSON frame and remember it for replay
+     *
+     * @return the frame with its "seq" field
+     */
+    public String sequence(String userEmail, String message) {
+        ReplayLog log = logs.computeIfAbsent(userEmail, email -> new ReplayLog());
+        synchronized (log) {
+            long seq = ++log.lastSeq;
+            String framed = message.length() > 2
+                    ? "{\"seq\":" + seq + "," + message.substring(1)
+                    : "{\"seq\":" + seq + "}";
+            log.frames.addLast(new Frame(seq, framed));
+            if (log.frames.size() > REPLAY_LOG_SIZE) {
+                log.frames.removeFirst();
+            }
+            log.lastActive = System.currentTimeMillis();
+            return framed;
+        }
+    }
+
+    /**
+     * Frames sent after "lastSeq", or null if the log is gone or no longer reaches back that far
+     */
+    public List<String> framesAfter(String userEmail, long lastSeq) {
+        ReplayLog log = logs.get(userEmail);
+        if (log == null) {
+            return null;
+        }
+        synchronized (log) {
+            long oldest = log.frames.isEmpty() ? log.lastSeq + 1 : log.frames.peekFirst().seq;
+            if (lastSeq < oldest - 1 || lastSeq > log.lastSeq) {
+                return null;
+            }
+            List<String> missed = new ArrayList<>();
+            for (Frame frame : log.frames) {
+                if (frame.seq > lastSeq) {
+                    missed.add(frame.message);
+                }
+            }
+            log.lastActive = System.currentTimeMillis();
+            return missed;
+        }
+    }
+
+    /**
+     * Note that a write made for the user has been committed
+     */
+    public void recordWrite(String userEmail) {
+        lastWrites.put(userEmail, System.currentTimeMillis());
+    }
+
+    /**
+     * Read-your-writes token of the user: time of the last write, 0 if none recently
+     */
+    public long readToken(String userEmail) {
+        return lastWrites.getOrDefault(userEmail, 0L);
+    }
+
+    private byte[] sign(String payload) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret, HMAC_ALGORITHM));
+            return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot sign session token", e);
+        }
+    }
+
+    private void expireLogs() {
+        long cutoff = System.currentTimeMillis() - TOKEN_TTL_MS;
+        logs.entrySet().removeIf(entry -> {
+            synchronized (entry.getValue()) {
+                return entry.getValue().lastActive < cutoff && !ClientRegistry.isOnline(entry.getKey());
+            }
+        });
+        // Any replica within its lag bound is past writes this old
+        lastWrites.values().removeIf(writtenAt -> writtenAt < cutoff);
+    }
+}
@@ -0,0 +1,112 @@
+package com.chatapp.server.service;
+
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fan-out-on-read conversations: broadcasts and groups with at least
+ * FANOUT_ON_READ_THRESHOLD members. Their messages are stored once (messages table)
+ * and never copied per member; members catch up from the shared log after their
+ * delivered cursor. The most recent messages of each log are also kept in memory,
+ * so a resumed session can catch up without the database.
+ */
+public class SharedLogService {
+    public static final int FANOUT_ON_READ_THRESHOLD = 100;
+    public static final String BROADCAST = "broadcast";
+    private static final int MAX_RECENT = 1000;
+    private static final SharedLogService instance = new SharedLogService();
+
+    private final Map<String, SharedLog> logs = new ConcurrentHashMap<>();
+
+    private static class SharedLog {
+        final Deque<JSONObject> recent = new ArrayDeque<>();
+        Set<String> members;        // null: everyone (broadcast)
+        long lastTimestamp;
+        boolean truncated;          // Older messages were dropped from memory
+    }
+
+    private SharedLogService() {
+    }
+
+    public static SharedLogService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Whether a conversation with this many recipients is served fan-out-on-read
+     */
+    public static boolean isFanoutOnRead(int audienceSize) {
+        return audienceSize >= FANOUT_ON_READ_THRESHOLD;
+    }
+
+    /**
+     * Record a message already persisted in the conversation's log
+     *
+     * @param members Current members, or null when everyone receives it
+     */
+    public void append(String conversationId, Collection<String> members, JSONObject message) {
+        SharedLog log = logs.computeIfAbsent(conversationId, id -> new SharedLog());
+        synchronized (log) {
+            log.members = members != null ? new HashSet<>(members) : null;
+            log.recent.addLast(message);
+            if (log.recent.size() > MAX_RECENT) {
+                log.recent.removeFirst();
+                log.truncated = true;
+            }
+            log.lastTimestamp = Math.max(log.lastTimestamp, message.optLong("timestamp"));
+        }
+    }
+
+    /**
+     * Newest message timestamp of every shared log the user reads, by conversation id
+     */
+    public Map<String, Long> positionsOf(String userEmail) {
+        Map<String, Long> positions = new ConcurrentHashMap<>();
+        logs.forEach((conversationId, log) -> {
+            synchronized (log) {
+                if (log.members == null || log.members.contains(userEmail)) {
+                    positions.put(conversationId, log.lastTimestamp);
+                }
+            }
+        });
+        return positions;
+    }
+
+    /**
+     * Messages of the user's shared logs sent by others after "since", from memory
+     *
+     * @return the messages oldest first, or null if a log no longer reaches back that far
+     */
+    public List<String> messagesSince(String userEmail, long since) {
+        List<JSONObject> found = new ArrayList<>();
+        for (SharedLog log : logs.values()) {
+            synchronized (log) {
+                if (log.members != null && !log.members.contains(userEmail) || log.lastTimestamp <= since) {
+                    continue;
+                }
+                JSONObject oldest = log.recent.peekFirst();
+                if (log.truncated && oldest != null && oldest.optLong("timestamp") > since) {
+                    return null;
+                }
+                for (JSONObject message : log.recent) {
+                    if (message.optLong("timestamp") > since && !userEmail.equals(message.optString("sender"))) {
+                        found.add(message);
+                    }
+                }
+            }
+        }
+        found.sort((a, b) -> Long.compare(a.optLong("timestamp"), b.optLong("timestamp")));
+        List<String> messages = new ArrayList<>();
+        found.forEach(message -> messages.add(message.toString()));
+        return messages;
+    }
+}
@@ -0,0 +1,152 @@
+package com.chatapp.server.service;
+
+import com.chatapp.common.model.Group;
+import com.chatapp.server.handler.ClientHandler;
+import com.chatapp.server.handler.ClientRegistry;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * "User is typing" events. Never persisted: accepted at most once per
+ * (user, conversation) per throttle interval, gathered for a short window so group
+ * members get one frame listing everyone typing, and dropped for recipients whose
+ * outbound queue is already half full. The flusher only queues frames, it never
+ * writes to a socket.
+ */
+public class TypingService {
+    private static final long THROTTLE_MS = 2000;
+    private static final long FLUSH_INTERVAL_MS = 300;
+    private static final TypingService instance = new TypingService();
+
+    private final GroupService groupService = new GroupService();
+    // "user|conversation" -> time of the last accepted event
+    private final Map<String, Long> lastAccepted = new ConcurrentHashMap<>();
+    // Conversation key -> users typing in it during the current window
+    private final Map<Target, Set<String>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Conversation an event applies to: a group name, or the other user of a private chat
+     */
+    private static class Target {
+        final String name;
+        final boolean group;
+
+        Target(String name, boolean group) {
+            this.name = name;
+            this.group = group;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Target)) {
+                return false;
+            }
+            Target other = (Target) o;
+            return group == other.group && name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode() * 31 + (group ? 1 : 0);
+        }
+    }
+
+    private TypingService() {
+        ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "typing-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        // Throttle entries only matter for one interval
+        flusher.scheduleWithFixedDelay(() -> {
+            long cutoff = System.currentTimeMillis() - THROTTLE_MS;
+            lastAccepted.values().removeIf(time -> time < cutoff);
+        }, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public static TypingService getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param to    Recipient email, or group name when group is true
+     * @return false if the event was throttled
+     */
+    public boolean typing(String sender, String to, boolean group) {
+        long now = System.currentTimeMillis();
+        String key = sender + "|" + (group ? "group_" : "") + to;
+        Long previous = lastAccepted.get(key);
+        if (previous != null && now - previous < THROTTLE_MS) {
+            return false;
+        }
+        lastAccepted.put(key, now);
+        // Private chats are keyed by recipient, so two users typing to each other stay separate
+        pending.computeIfAbsent(new Target(to, group), k -> ConcurrentHashMap.newKeySet()).add(sender);
+        return true;
+    }
+
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            for (Target target : new ArrayList<>(pending.keySet())) {
+                Set<String> typists = pending.remove(target);
+                if (typists == null || typists.isEmpty()) {
+                    continue;
+                }
+                if (target.group) {
+                    Group group = groupService.findGroupByName(target.name);
+                    if (group == null) {
+                        continue;
+                    }
+                    List<String> members = group.getMembersEmails();
+                    typists.retainAll(members);
+                    for (String member : members) {
+                        List<String> others = new ArrayList<>(typists);
+                        others.remove(member);
+                        if (!others.isEmpty()) {
+                            deliver(member, frame(target.name, true, others));
+                        }
+                    }
+                } else {
+                    for (String typist : typists) {
+                        deliver(target.name, frame(typist, false, List.of(typist)));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Error flushing typing events: " + e.getMessage());
+        }
+    }
+
+    private void deliver(String recipient, String frame) {
+        ClientHandler handler = ClientRegistry.find(recipient);
+        if (handler != null) {
+            // Queued for the connection's writer; never blocks on a slow client
+            handler.sendEphemeral(frame);
+        }
+    }
+
+    /**
+     * @param conversation Group name, or the typing user for a private chat
+     */
+    private static String frame(String conversation, boolean group, List<String> users) {
+        JSONObject frame = new JSONObject();
+        frame.put("type", "typing");
+        frame.put("conversation", conversation);
+        frame.put("isGroup", group);
+        frame.put("users", new JSONArray(users));
+        return frame.toString();
+    }
+}
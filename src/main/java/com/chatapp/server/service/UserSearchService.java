@@ -0,0 +1,175 @@
+package com.chatapp.server.service;
+
+import com.chatapp.common.model.User;
+import com.chatapp.data.dao.UserDAO;
+import com.chatapp.data.dao.impl.UserDAOImpl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory prefix index over user emails and usernames for contact discovery.
+ * Terms (whole email, its domain and local-part words, username and its words) are
+ * kept in a sorted map, so a prefix query is a range scan. Built once at startup,
+ * then maintained on registration and profile updates.
+ */
+public class UserSearchService {
+    public static final int MAX_PAGE_SIZE = 50;
+    private static final int MAX_CANDIDATES = 1000;   // Bounds the work for very short prefixes
+    private static final UserSearchService instance = new UserSearchService();
+
+    private final UserDAO userDAO = new UserDAOImpl();
+    // term -> emails of the users it belongs to
+    private final NavigableMap<String, Set<String>> index = new ConcurrentSkipListMap<>();
+    // email -> indexed username, to remove stale terms on update
+    private final Map<String, String> usernames = new ConcurrentHashMap<>();
+
+    /**
+     * One ranked search result page
+     */
+    public static class SearchPage {
+        public final List<User> users;
+        public final boolean hasMore;
+
+        SearchPage(List<User> users, boolean hasMore) {
+            this.users = users;
+            this.hasMore = hasMore;
+        }
+    }
+
+    private UserSearchService() {
+    }
+
+    public static UserSearchService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Index every registered user (startup)
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        List<User> users = userDAO.findAll();
+        for (User user : users) {
+            index(user.getEmail(), user.getUsername());
+        }
+        System.out.println("User search index built with " + users.size() + " users in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Add a user or refresh its terms after a username change
+     */
+    public synchronized void index(String email, String username) {
+        String previous = usernames.put(email, username != null ? username : "");
+        if (previous != null) {
+            for (String term : termsOf(email, previous)) {
+                Set<String> emails = index.get(term);
+                if (emails != null) {
+                    emails.remove(email);
+                    if (emails.isEmpty()) {
+                        index.remove(term);
+                    }
+                }
+            }
+        }
+        for (String term : termsOf(email, username)) {
+            index.computeIfAbsent(term, t -> ConcurrentHashMap.newKeySet()).add(email);
+        }
+    }
+
+    /**
+     * Users whose email or username starts with the query, best matches first
+     *
+     * @param exclude Email left out of the results (the requester)
+     */
+    public SearchPage search(String query, int offset, int limit, String exclude) {
+        String prefix = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+        limit = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        offset = Math.max(0, offset);
+        if (prefix.isEmpty()) {
+            return new SearchPage(new ArrayList<>(), false);
+        }
+
+        Set<String> candidates = new LinkedHashSet<>();
+        // Exact term matches first: the candidate cap below must never cut them off
+        Set<String> exact = index.get(prefix);
+        if (exact != null) {
+            for (String email : exact) {
+                if (!email.equals(exclude)) {
+                    candidates.add(email);
+                }
+            }
+        }
+        for (Set<String> emails : index.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+            for (String email : emails) {
+                if (!email.equals(exclude)) {
+                    candidates.add(email);
+                }
+            }
+            if (candidates.size() >= MAX_CANDIDATES) {
+                break;
+            }
+        }
+
+        List<String> ranked = new ArrayList<>(candidates);
+        ranked.sort(Comparator.comparingInt((String email) -> rank(email, prefix))
+                .thenComparingInt(String::length)
+                .thenComparing(Comparator.naturalOrder()));
+
+        List<User> page = new ArrayList<>();
+        for (int i = offset; i < ranked.size() && page.size() < limit; i++) {
+            String email = ranked.get(i);
+            page.add(new User(usernames.getOrDefault(email, ""), null, email));
+        }
+        return new SearchPage(page, offset + page.size() < ranked.size());
+    }
+
+    /**
+     * 0 exact email, 1 email prefix, 2 username prefix, 3 any other term
+     */
+    private int rank(String email, String prefix) {
+        String lowerEmail = email.toLowerCase(Locale.ROOT);
+        if (lowerEmail.equals(prefix)) {
+            return 0;
+        }
+        if (lowerEmail.startsWith(prefix)) {
+            return 1;
+        }
+        String username = usernames.getOrDefault(email, "").toLowerCase(Locale.ROOT);
+        return username.startsWith(prefix) ? 2 : 3;
+    }
+
+    private static Set<String> termsOf(String email, String username) {
+        Set<String> terms = new LinkedHashSet<>();
+        String lowerEmail = email.toLowerCase(Locale.ROOT);
+        terms.add(lowerEmail);
+        int at = lowerEmail.indexOf('@');
+        if (at > 0) {
+            terms.add(lowerEmail.substring(at + 1));
+            for (String word : lowerEmail.substring(0, at).split("[._+-]+")) {
+                if (!word.isEmpty()) {
+                    terms.add(word);
+                }
+            }
+        }
+        if (username != null && !username.isEmpty()) {
+            String lowerName = username.toLowerCase(Locale.ROOT);
+            terms.add(lowerName);
+            for (String word : lowerName.split("[\\s._-]+")) {
+                if (!word.isEmpty()) {
+                    terms.add(word);
+                }
+            }
+        }
+        return terms;
+    }
+}
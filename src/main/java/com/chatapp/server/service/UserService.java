@@ -17,7 +17,11 @@ public class UserService {
     
     public boolean registerUser(String username, String password, String email) {
         User newUser = new User(username, password, email);
-        return userDAO.create(newUser);
+        boolean created = userDAO.create(newUser);
+        if (created) {
+            UserSearchService.getInstance().index(email, username);
+        }
+        return created;
     }
     
     public User findUserByEmail(String email) {
@@ -28,6 +32,43 @@ public class UserService {
         return findUserByEmail(email) != null;
     }
     
+    /**
+     * Change the username and password of a user. Goes through the server so the
+     * cached credential, the resume tokens and the search index never keep the old values.
+     *
+     * @param newPassword New password, null or empty to keep the current one
+     */
+    public boolean updateCredentials(String email, String newUsername, String newPassword) {
+        User user = findUserByEmail(email);
+        if (user == null) {
+            return false;
+        }
+        user.setUsername(newUsername);
+        if (newPassword != null && !newPassword.isEmpty()) {
+            user.setPassword(newPassword);
+        }
+        boolean updated = userDAO.update(user);
+        if (updated) {
+            AuthService.getInstance().invalidate(email);
+            SessionService.getInstance().revokeTokens(email);
+            UserSearchService.getInstance().index(email, newUsername);
+        }
+        return updated;
+    }
+
+    /**
+     * Delete an account and everything keyed on it. Its cached credential and resume
+     * tokens go too, so the account cannot keep logging in until they expire.
+     */
+    public boolean deleteUser(String email) {
+        boolean deleted = userDAO.delete(email);
+        if (deleted) {
+            AuthService.getInstance().invalidate(email);
+            SessionService.getInstance().revokeTokens(email);
+        }
+        return deleted;
+    }
+
     /**
      * Met à jour le profil utilisateur en base.
      * Ici, nous supposons que pour la mise à jour de profil, on souhaite actualiser
@@ -43,6 +84,12 @@ public class UserService {
         user.setUsername(newUsername);    // On considère displayName = username, pour cet exemple
         user.setPassword(newPassword);      // Vous pouvez modifier selon vos besoins
         user.setProfilePhoto(profilePhoto); // Affecte la nouvelle photo de profil
-        return userDAO.updateUserProfile(user);
+        boolean updated = userDAO.updateUserProfile(user);
+        if (updated) {
+            AuthService.getInstance().invalidate(email);
+            SessionService.getInstance().revokeTokens(email);
+            UserSearchService.getInstance().index(email, newUsername);
+        }
+        return updated;
     }
 }
@@ -2,7 +2,8 @@ package com.chatapp.util;
 
 import com.chatapp.common.model.Message;
 import com.chatapp.data.dao.MessageDAO;
-import com.chatapp.data.dao.impl.MessageDAOImpl;
+import com.chatapp.data.storage.Storage;
+import com.chatapp.data.db.DatabaseManager;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -13,9 +14,14 @@ import java.util.List;
 
 public class MigrationTool {
     
-    private static final MessageDAO messageDAO = new MessageDAOImpl();
+    private static final MessageDAO messageDAO = Storage.messages();
     
     public static void migrateConversationsToDatabase(String userEmail) {
+        // Bulk inserts go through the admin pool, never competing with live chat writes
+        DatabaseManager.runAs(DatabaseManager.Workload.ADMIN, () -> migrateAll(userEmail));
+    }
+
+    private static void migrateAll(String userEmail) {
         try {
             File conversationsDir = new File("data/conversations");
             if (!conversationsDir.exists()) {